@@ -0,0 +1,225 @@
+package todolist.bench;
+
+import todolist.data.Database;
+import todolist.data.Priority;
+import todolist.data.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Drives one {@link Database} from many threads and checks that no update is lost.
+ *
+ * Every thread adds its own tasks, removes half of them again, toggles a set of
+ * shared tasks and reads snapshots while the others do the same. Afterwards the
+ * task count, the completion of every shared task (toggled an odd or even number
+ * of times) and the uniqueness of the IDs are checked in memory, after replaying
+ * the change log and after loading a saved snapshot. Then a few tasks are
+ * edited across several compactions of the log and reloaded.
+ *
+ * Usage: ConcurrencyStress [threads] [operations per thread]
+ * Exits with status 1 if a check fails.
+ */
+public class ConcurrencyStress
+{
+    private static final int SHARED_TASKS = 64;
+
+    public static void main(String[] args) throws Exception
+    {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        File dir = Files.createTempDirectory("todolist-stress").toFile();
+        Database dataBase = new Database(dir.getPath());
+
+        long[] shared = new long[SHARED_TASKS];
+        for (int i = 0; i < SHARED_TASKS; i++)
+        {
+            shared[i] = dataBase.add(new Task("shared " + i, Priority.MEDIUM, null)).getId();
+        }
+        AtomicIntegerArray toggles = new AtomicIntegerArray(SHARED_TASKS);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        int[] kept = new int[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            int worker = t;
+            Thread thread = new Thread(() ->
+            {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Long> own = new ArrayList<>();
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    return;
+                }
+
+                for (int i = 0; i < operations; i++)
+                {
+                    switch (random.nextInt(4))
+                    {
+                        case 0 -> own.add(dataBase.add(new Task("worker " + worker + " task " + i, Priority.LOW, null)).getId());
+                        case 1 ->
+                        {
+                            if (!own.isEmpty() && random.nextBoolean())
+                                dataBase.remove(own.remove(own.size() - 1));
+                        }
+                        case 2 ->
+                        {
+                            int index = random.nextInt(SHARED_TASKS);
+                            dataBase.toggle(shared[index]);
+                            toggles.incrementAndGet(index);
+                        }
+                        default -> dataBase.getTasks().size();
+                    }
+                }
+                kept[worker] = own.size();
+            }, "stress-" + t);
+            workers.add(thread);
+            thread.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : workers)
+        {
+            thread.join();
+        }
+        long millis = (System.nanoTime() - begin) / 1_000_000;
+
+        int expected = SHARED_TASKS;
+        for (int count : kept)
+        {
+            expected += count;
+        }
+
+        boolean ok = check("in memory", dataBase.getTasks(), expected, toggles);
+        dataBase.flushTasks();
+        ok &= check("replayed from the change log", new Database(dir.getPath()).getTasks(), expected, toggles);
+        dataBase.saveTasks();
+        ok &= check("reloaded from the snapshot", new Database(dir.getPath()).getTasks(), expected, toggles);
+        ok &= editsAcrossCompaction(new File(dir, "edits"));
+
+        System.out.println(threads + " threads x " + operations + " operations in " + millis + " ms: "
+                + (ok ? "PASS" : "FAIL"));
+        deleteAll(dir);
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Edits the descriptions and deadlines of a few tasks until the log has
+     * been compacted several times. The descriptions change in length, so
+     * some compactions start between the removal and the addition an edit is
+     * logged as. Then reloads and checks that every task is there once, as
+     * last edited.
+     *
+     * @return whether the reloaded tasks are the edited ones.
+     */
+    static boolean editsAcrossCompaction(File dir)
+    {
+        dir.mkdirs();
+        Database dataBase = new Database(dir.getPath());
+        int count = 100;
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            ids[i] = dataBase.add(new Task("edited " + i, Priority.LOW, null)).getId();
+        }
+        LocalDateTime deadline = LocalDateTime.of(2030, 1, 1, 9, 0);
+        for (int i = 0; i < 60_000; i++)
+        {
+            long id = ids[i % count];
+            if (i % 2 == 0)
+                dataBase.setDescription(id, "edited " + id + " again".repeat(i % 7));
+            else
+                dataBase.setDeadline(id, deadline.plusMinutes(i));
+        }
+        List<Task> edited = dataBase.getTasks();
+        dataBase.close();
+
+        List<Task> reloaded = new Database(dir.getPath()).getTasks();
+        Map<Long, Task> byId = new HashMap<>();
+        for (Task task : reloaded)
+        {
+            if (byId.put(task.getId(), task) != null)
+            {
+                System.out.println("edited across compactions: duplicate ID " + task.getId());
+                return false;
+            }
+        }
+        for (Task task : edited)
+        {
+            Task loaded = byId.get(task.getId());
+            if (loaded == null || !loaded.AsCsvLine().equals(task.AsCsvLine()))
+            {
+                System.out.println("edited across compactions: task " + task.getId() + " reloaded as "
+                        + (loaded == null ? "missing" : loaded.AsCsvLine()) + " instead of " + task.AsCsvLine());
+                return false;
+            }
+        }
+        if (reloaded.size() != edited.size())
+        {
+            System.out.println("edited across compactions: expected " + edited.size() + " tasks, found " + reloaded.size());
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean check(String label, List<Task> tasks, int expected, AtomicIntegerArray toggles)
+    {
+        boolean ok = true;
+        if (tasks.size() != expected)
+        {
+            System.out.println(label + ": expected " + expected + " tasks, found " + tasks.size());
+            ok = false;
+        }
+
+        Map<Long, Task> byId = new HashMap<>();
+        for (Task task : tasks)
+        {
+            if (byId.put(task.getId(), task) != null)
+            {
+                System.out.println(label + ": duplicate ID " + task.getId());
+                ok = false;
+            }
+        }
+
+        for (int i = 0; i < SHARED_TASKS; i++)
+        {
+            Task task = byId.get((long) i + 1);
+            boolean completed = toggles.get(i) % 2 == 1;
+            if (task == null || task.isCompleted() != completed)
+            {
+                System.out.println(label + ": shared task " + (i + 1) + " lost a toggle");
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    private static void deleteAll(File file) throws IOException
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                deleteAll(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,193 @@
+package todolist.bench;
+
+import todolist.data.CsvTaskStore;
+import todolist.data.Priority;
+import todolist.data.Task;
+import todolist.data.TaskCsvReader;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+
+/**
+ * Compares the throughput of the streaming {@link TaskCsvReader} with the
+ * original split based loader on a generated tasks file, and the sequential
+ * load of the CSV store with its parallel chunked load.
+ *
+ * Usage: CsvLoadBenchmark [rows] [iterations]
+ */
+public class CsvLoadBenchmark
+{
+    public static void main(String[] args) throws IOException
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File dir = Files.createTempDirectory("tasks-bench").toFile();
+        File file = new File(dir, "tasks.csv");
+        dir.deleteOnExit();
+        file.deleteOnExit();
+        TaskFileGenerator.generate(file, rows, 42);
+        System.out.println("Generated " + rows + " rows, " + (file.length() / 1024) + " KB");
+        if (!roundTripsNonAscii(dir))
+            System.exit(1);
+
+        for (int i = 0; i < iterations; i++)
+        {
+            long start = System.nanoTime();
+            int legacy = loadLegacy(file).size();
+            long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int streaming = loadStreaming(file).size();
+            long streamingNanos = System.nanoTime() - start;
+
+            System.out.printf("#%d legacy: %d rows in %d ms (%.0f rows/s) | streaming: %d rows in %d ms (%.0f rows/s)%n",
+                    i + 1,
+                    legacy, legacyNanos / 1_000_000, legacy * 1e9 / legacyNanos,
+                    streaming, streamingNanos / 1_000_000, streaming * 1e9 / streamingNanos);
+
+            start = System.nanoTime();
+            int sequential = loadStore(file, false).size();
+            long sequentialNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int parallel = loadStore(file, true).size();
+            long parallelNanos = System.nanoTime() - start;
+
+            System.out.printf("#%d store sequential: %d rows in %d ms | store parallel (%d CPUs): %d rows in %d ms%n",
+                    i + 1, sequential, sequentialNanos / 1_000_000,
+                    Runtime.getRuntime().availableProcessors(), parallel, parallelNanos / 1_000_000);
+        }
+    }
+
+    /**
+     * Saves descriptions with non-ASCII characters, also at the ends of a
+     * field and alone, and checks that the CSV store loads them back
+     * unchanged.
+     *
+     * @return whether every description came back.
+     */
+    static boolean roundTripsNonAscii(File dir) throws IOException
+    {
+        String[] descriptions = {"Café", "Ünïcödé", "日本語", "naïve, with a comma", " ß "};
+        ArrayList<Task> saved = new ArrayList<>();
+        for (int i = 0; i < descriptions.length; i++)
+        {
+            Task task = new Task(descriptions[i], Priority.values()[i % 3], null);
+            task.setId(i + 1);
+            saved.add(task);
+        }
+        File file = new File(dir, "non-ascii.csv");
+        file.deleteOnExit();
+        CsvTaskStore store = new CsvTaskStore(file);
+        store.save(saved);
+        store.close();
+
+        ArrayList<Task> loaded = new ArrayList<>();
+        store = new CsvTaskStore(file);
+        store.load(loaded);
+        store.close();
+        for (int i = 0; i < saved.size(); i++)
+        {
+            String expected = saved.get(i).getDescription().trim();
+            String actual = i < loaded.size() ? loaded.get(i).getDescription() : null;
+            if (!expected.equals(actual))
+            {
+                System.out.println("Non-ASCII round trip failed: [" + actual + "] instead of [" + expected + "]");
+                return false;
+            }
+        }
+        System.out.println("Non-ASCII descriptions round trip: OK");
+        return true;
+    }
+
+    static ArrayList<Task> loadStore(File file, boolean parallel)
+    {
+        System.setProperty("todolist.load.parallel", Boolean.toString(parallel));
+        ArrayList<Task> tasks = new ArrayList<>();
+        CsvTaskStore store = new CsvTaskStore(file);
+        store.load(tasks);
+        store.close();
+        return tasks;
+    }
+
+    static ArrayList<Task> loadStreaming(File file) throws IOException
+    {
+        ArrayList<Task> tasks = new ArrayList<>();
+        Task task;
+        try (TaskCsvReader reader = new TaskCsvReader(new FileInputStream(file)))
+        {
+            while ((task = reader.readTask()) != null)
+            {
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * The loader as it was before {@link TaskCsvReader}, without its warnings.
+     */
+    static ArrayList<Task> loadLegacy(File file) throws IOException
+    {
+        ArrayList<Task> tasks = new ArrayList<>();
+        String line;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+        {
+            while ((line = reader.readLine()) != null)
+            {
+                String[] parts = line.split(",");
+                if (parts.length < 2)
+                    continue;
+
+                Priority priority;
+                try
+                {
+                    priority = Priority.valueOf(parts[1].trim().replaceAll("[\\[\\]]", ""));
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    priority = Priority.MEDIUM;
+                }
+
+                LocalDateTime deadline = null;
+                if (parts.length > 2 && !parts[2].trim().isEmpty())
+                {
+                    String deadlineString = parts[2].trim();
+                    try
+                    {
+                        deadline = LocalDateTime.parse(deadlineString, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+                    }
+                    catch (DateTimeParseException ex1)
+                    {
+                        try
+                        {
+                            deadline = LocalDateTime.parse(deadlineString);
+                        }
+                        catch (DateTimeParseException ex2)
+                        {
+                            try
+                            {
+                                deadline = LocalDate.parse(deadlineString).atStartOfDay();
+                            }
+                            catch (DateTimeParseException ex3)
+                            {
+                                // left null
+                            }
+                        }
+                    }
+                }
+
+                Task task = new Task(parts[0].trim(), priority, deadline);
+                task.setCompleted(parts.length >= 4 && Boolean.parseBoolean(parts[3].trim()));
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+}
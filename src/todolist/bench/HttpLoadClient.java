@@ -0,0 +1,120 @@
+package todolist.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for the task HTTP API (ToDoListApp --serve).
+ *
+ * Starts one virtual thread per simulated client. Each client adds tasks,
+ * toggles and removes its own tasks and reads pages of the list. At the end
+ * the throughput, the error count and latency percentiles are printed.
+ *
+ * Usage: HttpLoadClient [base url] [clients] [requests per client]
+ */
+public class HttpLoadClient
+{
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    public static void main(String[] args) throws Exception
+    {
+        String base = args.length > 0 ? args[0] : "http://127.0.0.1:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        HttpClient http = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        AtomicInteger errors = new AtomicInteger();
+        long[][] latencies = new long[clients][requests];
+
+        long begin = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++)
+            {
+                int client = c;
+                futures.add(executor.submit(() -> runClient(http, base, client, latencies[client], errors)));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        long nanos = System.nanoTime() - begin;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%d requests from %d clients in %d ms: %.0f req/s, %d errors%n",
+                all.length, clients, nanos / 1_000_000, all.length * 1e9 / nanos, errors.get());
+        System.out.printf("latency p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1] / 1e6);
+    }
+
+    private static void runClient(HttpClient http, String base, int client, long[] latencies, AtomicInteger errors)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Long> own = new ArrayList<>();
+
+        for (int i = 0; i < latencies.length; i++)
+        {
+            HttpRequest request;
+            int operation = own.isEmpty() ? 0 : random.nextInt(4);
+            switch (operation)
+            {
+                case 0 -> request = HttpRequest.newBuilder(URI.create(base + "/tasks"))
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "{\"description\":\"client " + client + " task " + i + "\",\"priority\":\"MEDIUM\"}"))
+                        .build();
+                case 1 -> request = HttpRequest.newBuilder(URI.create(base + "/tasks/" + own.get(random.nextInt(own.size())) + "/toggle"))
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build();
+                case 2 -> request = HttpRequest.newBuilder(URI.create(base + "/tasks/" + own.remove(own.size() - 1)))
+                        .DELETE()
+                        .build();
+                default -> request = HttpRequest.newBuilder(URI.create(base + "/tasks?offset=0&limit=20"))
+                        .GET()
+                        .build();
+            }
+
+            long start = System.nanoTime();
+            try
+            {
+                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() >= 400)
+                    errors.incrementAndGet();
+                else if (operation == 0)
+                {
+                    Matcher id = ID.matcher(response.body());
+                    if (id.find())
+                        own.add(Long.parseLong(id.group(1)));
+                }
+            }
+            catch (Exception ex)
+            {
+                errors.incrementAndGet();
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction)
+    {
+        int index = (int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)));
+        return sorted[index] / 1e6;
+    }
+}
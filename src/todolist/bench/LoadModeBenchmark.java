@@ -0,0 +1,94 @@
+package todolist.bench;
+
+import todolist.data.Database;
+import todolist.data.SortBy;
+import todolist.data.SortOrder;
+import todolist.data.Task;
+import todolist.ui.TaskRenderer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Compares the ways of loading tasks.csv: a full load, on demand
+ * (todolist.load=lazy) and in columns (todolist.load=columnar). For each it
+ * reports the time until the first page of 20 tasks is rendered, the heap
+ * still in use after a garbage collection, and the time of a sort by deadline.
+ *
+ * Every measurement opens a fresh copy of a generated file, so the heap
+ * figures of the modes do not share tasks. Run with a fixed heap, e.g.
+ * -Xmx2g, for comparable numbers.
+ *
+ * Usage: LoadModeBenchmark [rows,rows,...] [iterations]
+ */
+public class LoadModeBenchmark
+{
+    private static final String[] MODES = {"full", "lazy", "columnar"};
+
+    public static void main(String[] args) throws IOException
+    {
+        String rowCounts = args.length > 0 ? args[0] : "100000,1000000";
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        for (String rowCount : rowCounts.split(","))
+        {
+            int rows = Integer.parseInt(rowCount);
+            File dir = Files.createTempDirectory("lazy-bench").toFile();
+            File source = new File(dir, "source.csv");
+            TaskFileGenerator.generate(source, rows, 42);
+            File dataDir = new File(dir, "data");
+            dataDir.mkdirs();
+            System.out.println("Generated " + rows + " rows, " + (source.length() / 1024) + " KB");
+
+            for (int i = 0; i < iterations; i++)
+            {
+                for (String mode : MODES)
+                {
+                    measure(mode, rows, source, dataDir);
+                }
+            }
+
+            for (File file : dataDir.listFiles())
+            {
+                file.delete();
+            }
+            dataDir.delete();
+            source.delete();
+            dir.delete();
+        }
+    }
+
+    private static void measure(String mode, int rows, File source, File dataDir) throws IOException
+    {
+        Files.copy(source.toPath(), new File(dataDir, "tasks.csv").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.setProperty("todolist.load", mode);
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        Database dataBase = new Database(dataDir.getPath());
+        List<Task> tasks = dataBase.getTasks();
+        new TaskRenderer(Writer.nullWriter()).numbered(tasks, 0, Math.min(20, tasks.size()), false);
+        long nanos = System.nanoTime() - start;
+        long heap = usedHeap() - before;
+
+        start = System.nanoTime();
+        dataBase.sortTasks(SortBy.DEADLINE, SortOrder.ASCENDING);
+        long sortNanos = System.nanoTime() - start;
+
+        System.out.printf("%-8s %,10d rows: first page after %,7d ms, %,8d KB retained, deadline sort %,6d ms%n",
+                mode, rows, nanos / 1_000_000, heap / 1024, sortNanos / 1_000_000);
+        dataBase.close();
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
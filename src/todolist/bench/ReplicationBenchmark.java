@@ -0,0 +1,182 @@
+package todolist.bench;
+
+import todolist.data.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures replication over TCP on localhost and checks that the followers
+ * end up with the leader's tasks.
+ *
+ * A leader is loaded with some tasks and the followers join with a snapshot.
+ * Then several threads add, remove, toggle, edit and sort on the leader as
+ * fast as they can, and the time until every follower has applied every
+ * change is measured. Finally each follower's tasks, in their order, are
+ * compared with the leader's. Leader and followers run in this JVM but talk
+ * over real sockets; to use separate JVMs start them with --serve and
+ * --follow, see the README.
+ *
+ * Usage: ReplicationBenchmark [followers] [changes] [threads] [retained]
+ * A small number of retained records makes slow followers fall behind and
+ * rejoin with a snapshot.
+ * Exits with status 1 if a follower differs.
+ */
+public class ReplicationBenchmark
+{
+    private static final int INITIAL_TASKS = 10_000;
+
+    public static void main(String[] args) throws Exception
+    {
+        int followerCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int retained = args.length > 3 ? Integer.parseInt(args[3]) : 1 << 16;
+
+        List<File> dirs = new ArrayList<>();
+        File leaderDir = Files.createTempDirectory("todolist-leader").toFile();
+        dirs.add(leaderDir);
+        Database leader = new Database(leaderDir.getPath());
+        for (int i = 0; i < INITIAL_TASKS; i++)
+        {
+            leader.add(new Task("initial " + i, Priority.values()[i % 3], i % 2 == 0 ? null : LocalDateTime.of(2030, 1, 1, 0, 0).plusMinutes(i)));
+        }
+        ReplicationLeader replication = leader.lead("127.0.0.1", 0, retained);
+
+        long begin = System.nanoTime();
+        List<Database> followers = new ArrayList<>();
+        List<ReplicationFollower> following = new ArrayList<>();
+        for (int i = 0; i < followerCount; i++)
+        {
+            File dir = Files.createTempDirectory("todolist-follower").toFile();
+            dirs.add(dir);
+            Database follower = new Database(dir.getPath());
+            following.add(follower.follow("127.0.0.1", replication.getPort()));
+            followers.add(follower);
+        }
+        waitFor(following, replication.offset());
+        System.out.printf("%d followers joined with a snapshot of %d tasks in %d ms%n",
+                followerCount, INITIAL_TASKS, (System.nanoTime() - begin) / 1_000_000);
+
+        begin = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            int worker = t;
+            Thread thread = new Thread(() -> change(leader, worker, changes / threads), "replication-bench-" + t);
+            workers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : workers)
+        {
+            thread.join();
+        }
+        long changed = System.nanoTime() - begin;
+        long records = replication.offset();
+        waitFor(following, records);
+        long caughtUp = System.nanoTime() - begin;
+        System.out.printf("%d records in %d ms on the leader (%.0f/s), on every follower after %d ms (%.0f/s)%n",
+                records, changed / 1_000_000, records * 1e9 / changed, caughtUp / 1_000_000, records * 1e9 / caughtUp);
+
+        boolean ok = true;
+        List<Task> expected = leader.getTasks();
+        for (int i = 0; i < followerCount; i++)
+        {
+            ok &= same("follower " + (i + 1), expected, followers.get(i).getTasks());
+        }
+        System.out.println(ok ? "PASS" : "FAIL");
+
+        for (Database follower : followers)
+        {
+            follower.close();
+        }
+        leader.close();
+        for (File dir : dirs)
+        {
+            deleteAll(dir);
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void change(Database dataBase, int worker, int count)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Long> own = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            int choice = random.nextInt(100);
+            if (choice < 40 || own.isEmpty())
+            {
+                own.add(dataBase.add(new Task("worker " + worker + " task " + i, Priority.values()[random.nextInt(3)], null)).getId());
+            }
+            else if (choice < 60)
+            {
+                dataBase.remove(own.remove(random.nextInt(own.size())));
+            }
+            else if (choice < 85)
+            {
+                dataBase.toggle(own.get(random.nextInt(own.size())));
+            }
+            else if (choice < 95)
+            {
+                dataBase.setDescription(own.get(random.nextInt(own.size())), "edited " + i);
+            }
+            else if (choice < 99)
+            {
+                dataBase.setDeadline(own.get(random.nextInt(own.size())), LocalDateTime.of(2031, 1, 1, 0, 0).plusHours(i));
+            }
+            else
+            {
+                dataBase.sortTasks(SortBy.values()[random.nextInt(2)], SortOrder.values()[random.nextInt(2)]);
+            }
+        }
+    }
+
+    private static void waitFor(List<ReplicationFollower> followers, long offset) throws InterruptedException
+    {
+        for (ReplicationFollower follower : followers)
+        {
+            while (!follower.isConnected() || follower.offset() < offset)
+            {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static boolean same(String label, List<Task> expected, List<Task> actual)
+    {
+        if (expected.size() != actual.size())
+        {
+            System.out.println(label + ": " + actual.size() + " tasks instead of " + expected.size());
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++)
+        {
+            if (!expected.get(i).AsCsvLine().equals(actual.get(i).AsCsvLine()))
+            {
+                System.out.println(label + ": task " + (i + 1) + " is " + actual.get(i).AsCsvLine()
+                        + " instead of " + expected.get(i).AsCsvLine());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void deleteAll(File file) throws IOException
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                deleteAll(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,217 @@
+package todolist.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Measures how fast ToDoListApp starts, each run in a new JVM: the time until
+ * the menu shows its first prompt, and the time to run one command
+ * ("list --limit 1") to the end.
+ *
+ * Each is measured plainly, with an application class-data-sharing archive
+ * and with the archive and only the C1 compiler, which suits short runs. The
+ * archive is made first by a training run of the menu with
+ * -XX:ArchiveClassesAtExit, unless the file given already exists; it only
+ * fits the JDK and class path it was made with. The JVM archives classes from
+ * JAR files only, so directories on the class path are packed into one for
+ * all the runs. The runs use a copy of a generated tasks file.
+ *
+ * Usage: StartupBenchmark [rows] [runs] [archive file]
+ */
+public class StartupBenchmark
+{
+    private static final String[] PROMPTS = {"Press <Enter>", "Enter n (next page)"};
+
+    public static void main(String[] args) throws Exception
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        File dir = Files.createTempDirectory("startup-bench").toFile();
+        File source = new File(dir, "source.csv");
+        TaskFileGenerator.generate(source, rows, 42);
+        File archive = args.length > 2 ? new File(args[2]) : new File(dir, "todolist.jsa");
+
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        List<String> plain = List.of(java, "-cp", jarClassPath(dir));
+        if (!archive.exists())
+        {
+            long start = System.nanoTime();
+            firstPrompt(dir, source, with(plain, "-XX:ArchiveClassesAtExit=" + archive.getPath()));
+            System.out.printf("Archived the classes of a menu run in %,d ms: %s, %,d KB%n",
+                    (System.nanoTime() - start) / 1_000_000, archive, archive.length() / 1024);
+        }
+        List<String> shared = with(plain, "-XX:SharedArchiveFile=" + archive.getPath());
+        List<String> sharedC1 = with(shared, "-XX:TieredStopAtLevel=1");
+
+        System.out.printf("%,d tasks, %d runs each, median (min) in ms%n", rows, runs);
+        String[] names = {"plain", "appcds", "appcds+c1"};
+        List<List<String>> commands = List.of(plain, shared, sharedC1);
+        for (int i = 0; i < names.length; i++)
+        {
+            long[] prompt = new long[runs];
+            long[] command = new long[runs];
+            for (int run = 0; run < runs; run++)
+            {
+                prompt[run] = firstPrompt(dir, source, commands.get(i));
+                command[run] = oneCommand(dir, source, commands.get(i));
+            }
+            System.out.printf("%-10s first prompt %6.1f (%6.1f)   one command %6.1f (%6.1f)%n",
+                    names[i], median(prompt), min(prompt), median(command), min(command));
+        }
+
+        deleteAll(dir);
+    }
+
+    /**
+     * @return the class path of this JVM with every directory packed into a JAR file in the given directory.
+     */
+    private static String jarClassPath(File dir) throws IOException
+    {
+        List<String> entries = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator))
+        {
+            File file = new File(entry);
+            if (!file.isDirectory())
+            {
+                entries.add(entry);
+                continue;
+            }
+            File jar = new File(dir, "classes" + entries.size() + ".jar");
+            Path root = file.toPath();
+            try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(jar)));
+                 Stream<Path> files = Files.walk(root))
+            {
+                for (Path path : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator)
+                {
+                    out.putNextEntry(new JarEntry(root.relativize(path).toString().replace(File.separatorChar, '/')));
+                    Files.copy(path, out);
+                    out.closeEntry();
+                }
+            }
+            entries.add(jar.getPath());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static List<String> with(List<String> command, String option)
+    {
+        List<String> result = new ArrayList<>(command);
+        result.add(1, option);
+        return result;
+    }
+
+    /**
+     * Starts the menu, waits for its first prompt and then exits it.
+     *
+     * @return the nanoseconds until the prompt was printed.
+     */
+    private static long firstPrompt(File dir, File source, List<String> java) throws IOException, InterruptedException
+    {
+        File dataDir = freshData(dir, source);
+        List<String> command = new ArrayList<>(java);
+        command.add("todolist.ui.ToDoListApp");
+        ProcessBuilder builder = new ProcessBuilder(command).directory(dataDir.getParentFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        InputStream out = process.getInputStream();
+        StringBuilder printed = new StringBuilder();
+        int c;
+        while (!prompted(printed) && (c = out.read()) >= 0)
+        {
+            printed.append((char) c);
+        }
+        long nanos = System.nanoTime() - start;
+        if (!prompted(printed))
+            throw new IOException("The menu ended without a prompt: " + printed);
+
+        try (Writer in = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8))
+        {
+            in.write("\n6\n");
+        }
+        out.transferTo(OutputStream.nullOutputStream());
+        process.waitFor();
+        return nanos;
+    }
+
+    private static boolean prompted(StringBuilder printed)
+    {
+        for (String prompt : PROMPTS)
+        {
+            if (printed.indexOf(prompt, Math.max(0, printed.length() - prompt.length())) >= 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs one batch command to the end.
+     *
+     * @return the nanoseconds it took.
+     */
+    private static long oneCommand(File dir, File source, List<String> java) throws IOException, InterruptedException
+    {
+        File dataDir = freshData(dir, source);
+        List<String> command = new ArrayList<>(java);
+        command.addAll(List.of("todolist.ui.ToDoListApp", "list", "--limit", "1"));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(dataDir.getParentFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        long start = System.nanoTime();
+        int status = builder.start().waitFor();
+        long nanos = System.nanoTime() - start;
+        if (status != 0)
+            throw new IOException("The command failed with status " + status);
+        return nanos;
+    }
+
+    /**
+     * @return a csv_data directory holding only a copy of the generated tasks.
+     */
+    private static File freshData(File dir, File source) throws IOException
+    {
+        File dataDir = new File(new File(dir, "run"), "csv_data");
+        deleteAll(dataDir);
+        dataDir.mkdirs();
+        Files.copy(source.toPath(), new File(dataDir, "tasks.csv").toPath());
+        return dataDir;
+    }
+
+    private static double median(long[] nanos)
+    {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        long value = sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+        return value / 1e6;
+    }
+
+    private static double min(long[] nanos)
+    {
+        return Arrays.stream(nanos).min().orElse(0) / 1e6;
+    }
+
+    private static void deleteAll(File file) throws IOException
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                deleteAll(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,151 @@
+package todolist.bench;
+
+import todolist.data.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the CSV snapshot with the compressed one of the
+ * {@link CompressedTaskStore}: the file size and the time to save and to load,
+ * and checks that both load the same tasks.
+ *
+ * Two sets of tasks are used: the generated file of {@link TaskFileGenerator},
+ * where every description is different, and an archive of recurring tasks,
+ * where a few hundred descriptions come back with deadlines in order and
+ * most tasks are completed, as in a long kept history.
+ *
+ * Usage: StorageFormatBenchmark [rows] [iterations]
+ * Exits with status 1 if a store loads different tasks.
+ */
+public class StorageFormatBenchmark
+{
+    private static final String[] VERBS = {"Pay", "Renew", "Review", "Send", "Call about", "Book", "Clean", "Order", "Check", "Plan"};
+    private static final String[] THINGS = {"the rent", "the car insurance", "the quarterly report", "the invoices", "the dentist",
+            "the team meeting", "the kitchen", "groceries", "the server backups", "the holiday", "the library books",
+            "the gym membership", "the water bill", "the tax return", "the garden", "the weekly newsletter",
+            "the phone contract", "the passport", "the boiler service", "the birthday present"};
+
+    public static void main(String[] args) throws IOException
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        File dir = Files.createTempDirectory("storage-bench").toFile();
+        File generated = new File(dir, "generated.csv");
+        TaskFileGenerator.generate(generated, rows, 42);
+        List<Task> generatedTasks = new ArrayList<>();
+        CsvTaskStore source = new CsvTaskStore(generated);
+        source.load(generatedTasks);
+        source.close();
+
+        boolean ok = compare("generated", generatedTasks, dir, iterations);
+        ok &= compare("archive", archive(rows, 42), dir, iterations);
+        System.out.println(ok ? "PASS" : "FAIL");
+
+        deleteAll(dir);
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * @return recurring tasks with deadlines in order, four in five of them completed.
+     */
+    static List<Task> archive(int rows, long seed)
+    {
+        Random random = new Random(seed);
+        Priority[] priorities = Priority.values();
+        LocalDateTime deadline = LocalDateTime.of(2015, 1, 1, 9, 0);
+        List<Task> tasks = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+        {
+            deadline = deadline.plusMinutes(15L * random.nextInt(8));
+            Task task = new Task(VERBS[random.nextInt(VERBS.length)] + " " + THINGS[random.nextInt(THINGS.length)],
+                    priorities[random.nextInt(priorities.length)], random.nextInt(10) == 0 ? null : deadline);
+            task.setCompleted(random.nextInt(5) != 0);
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private static boolean compare(String name, List<Task> tasks, File dir, int iterations) throws IOException
+    {
+        File csv = new File(dir, name + ".tasks.csv");
+        File compressed = new File(dir, name + ".tasks.tdz");
+        long[] csvTimes = new long[2];
+        long[] compressedTimes = new long[2];
+        boolean ok = true;
+        for (int i = 0; i < iterations; i++)
+        {
+            ok &= measure(new CsvTaskStore(csv), () -> new CsvTaskStore(csv), tasks, csvTimes);
+            ok &= measure(new CompressedTaskStore(compressed, null), () -> new CompressedTaskStore(compressed, null), tasks, compressedTimes);
+        }
+        System.out.printf("%s, %,d tasks: csv %,d KB, save %d ms, load %d ms | compressed %,d KB (%.1fx smaller), save %d ms, load %d ms (%.1fx faster)%n",
+                name, tasks.size(),
+                csv.length() / 1024, csvTimes[0] / iterations / 1_000_000, csvTimes[1] / iterations / 1_000_000,
+                compressed.length() / 1024, (double) csv.length() / compressed.length(),
+                compressedTimes[0] / iterations / 1_000_000, compressedTimes[1] / iterations / 1_000_000,
+                (double) csvTimes[1] / compressedTimes[1]);
+        return ok;
+    }
+
+    /**
+     * Saves the tasks with one store and loads them with a new one, adding the
+     * nanoseconds of each to times[0] and times[1].
+     *
+     * @return whether the loaded tasks are the saved ones.
+     */
+    private static boolean measure(TaskStore writer, Supplier<TaskStore> reader, List<Task> tasks, long[] times)
+    {
+        long start = System.nanoTime();
+        writer.save(tasks);
+        writer.close();
+        times[0] += System.nanoTime() - start;
+
+        List<Task> loaded = new ArrayList<>();
+        start = System.nanoTime();
+        TaskStore store = reader.get();
+        store.load(loaded);
+        times[1] += System.nanoTime() - start;
+        store.close();
+        return same(tasks, loaded);
+    }
+
+    private static boolean same(List<Task> expected, List<Task> actual)
+    {
+        if (expected.size() != actual.size())
+        {
+            System.out.println(actual.size() + " tasks loaded instead of " + expected.size());
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++)
+        {
+            if (expected.get(i).getId() != actual.get(i).getId()
+                    || !expected.get(i).AsCsvLine().equals(actual.get(i).AsCsvLine()))
+            {
+                System.out.println("Task " + (i + 1) + " loaded as " + actual.get(i).AsCsvLine()
+                        + " instead of " + expected.get(i).AsCsvLine());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void deleteAll(File file) throws IOException
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                deleteAll(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
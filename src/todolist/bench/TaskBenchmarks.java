@@ -0,0 +1,318 @@
+package todolist.bench;
+
+import todolist.data.*;
+import todolist.ui.TaskRenderer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Benchmark suite for the load, save, sort and render paths.
+ *
+ * For every row count a tasks.csv is generated with {@link TaskFileGenerator}
+ * and the following are timed:
+ *
+ *   load/N                  new Database on the file (read, index, initial sort)
+ *   save/N                  Database.saveTasks
+ *   sort/BY-ORDER/N         Database.sortTasks for every SortBy and SortOrder
+ *   add/N                   Database.add into the sorted list, per task (removed again after 100)
+ *   remind/N                Database.remindDeadlines, a timer for every open future deadline
+ *   csvLine/N, toString/N   Task.AsCsvLine and Task.toString over every task
+ *   render/N                a full numbered listing through TaskRenderer
+ *   topk/N, topkSort/N      the 10 nearest deadlines among incomplete HIGH tasks,
+ *                           with Database.query and with filtering and sorting the list
+ *   search/N, searchScan/N  the tasks containing "with" and a word starting with "12345",
+ *                           with the full-text index and with a contains scan
+ *
+ * Each benchmark runs some warmup iterations, then the measured ones; the
+ * median time per operation is reported. Results can be written to a file
+ * and compared with an earlier one: a benchmark slower than the baseline by
+ * more than the tolerance counts as a regression and the exit status is 1.
+ *
+ * Usage: TaskBenchmarks [--rows 1000,100000,1000000] [--warmup 2] [--iterations 5]
+ *                       [--save results.properties] [--baseline results.properties]
+ *                       [--tolerance 0.2] [name filter]
+ */
+public class TaskBenchmarks
+{
+    /** Keeps results alive so the JIT cannot drop the measured work. */
+    private static volatile long sink;
+
+    private interface Body
+    {
+        /**
+         * Runs the measured work once.
+         *
+         * @return the number of operations performed.
+         */
+        long run() throws Exception;
+    }
+
+    private final int warmup;
+    private final int iterations;
+    private final String filter;
+    private final Map<String, Double> results = new LinkedHashMap<>();
+
+    private TaskBenchmarks(int warmup, int iterations, String filter)
+    {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.filter = filter;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int[] rowCounts = {1_000, 100_000, 1_000_000};
+        int warmup = 2;
+        int iterations = 5;
+        File save = null;
+        File baseline = null;
+        double tolerance = 0.2;
+        String filter = null;
+
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--rows" -> rowCounts = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--save" -> save = new File(args[++i]);
+                case "--baseline" -> baseline = new File(args[++i]);
+                case "--tolerance" -> tolerance = Double.parseDouble(args[++i]);
+                default -> filter = args[i];
+            }
+        }
+
+        TaskBenchmarks benchmarks = new TaskBenchmarks(warmup, iterations, filter);
+        for (int rows : rowCounts)
+        {
+            benchmarks.runAll(rows);
+        }
+
+        if (save != null)
+            benchmarks.save(save);
+        if (baseline != null)
+            System.exit(benchmarks.compare(baseline, tolerance) == 0 ? 0 : 1);
+    }
+
+    private void runAll(int rows) throws Exception
+    {
+        File dir = Files.createTempDirectory("todolist-bench").toFile();
+        File source = new File(dir, "source.csv");
+        TaskFileGenerator.generate(source, rows, 42);
+
+        File dataDir = new File(dir, "data");
+        File taskFile = new File(dataDir, "tasks.csv");
+        dataDir.mkdirs();
+
+        measure("load/" + rows, () ->
+        {
+            Files.copy(source.toPath(), taskFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Database dataBase = new Database(dataDir.getPath());
+            sink += dataBase.size();
+            dataBase.close();
+            return 1;
+        });
+
+        Files.copy(source.toPath(), taskFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Database dataBase = new Database(dataDir.getPath());
+
+        measure("save/" + rows, () ->
+        {
+            dataBase.saveTasks();
+            return 1;
+        });
+
+        for (SortBy sortBy : SortBy.values())
+        {
+            for (SortOrder sortOrder : SortOrder.values())
+            {
+                SortOrder other = sortOrder == SortOrder.ASCENDING ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+                measure("sort/" + sortBy + "-" + sortOrder + "/" + rows, () ->
+                {
+                    // sorting again by the current key is skipped, so change it each time
+                    dataBase.sortTasks(sortBy, other);
+                    dataBase.sortTasks(sortBy, sortOrder);
+                    sink += dataBase.getTasks().get(0).getId();
+                    return 2;
+                });
+            }
+        }
+
+        Priority[] priorities = Priority.values();
+        measure("add/" + rows, () ->
+        {
+            long[] added = new long[100];
+            for (int i = 0; i < added.length; i++)
+            {
+                Task task = new Task("benchmark " + i, priorities[i % priorities.length],
+                        i % 4 == 0 ? null : LocalDateTime.of(2030, 1, 1, 0, 0).plusHours(i * 97L));
+                added[i] = dataBase.add(task).getId();
+            }
+            dataBase.removeAll(added);
+            return added.length;
+        });
+
+        measure("remind/" + rows, () ->
+        {
+            DeadlineReminders reminders = dataBase.remindDeadlines(Duration.ofMinutes(15), (task, kind) -> { });
+            sink += reminders.pending();
+            reminders.close();
+            return 1;
+        });
+
+        List<Task> tasks = dataBase.getTasks();
+        measure("csvLine/" + rows, () ->
+        {
+            long length = 0;
+            for (Task task : tasks)
+            {
+                length += task.AsCsvLine().length();
+            }
+            sink += length;
+            return tasks.size();
+        });
+        measure("toString/" + rows, () ->
+        {
+            long length = 0;
+            for (Task task : tasks)
+            {
+                length += task.toString().length();
+            }
+            sink += length;
+            return tasks.size();
+        });
+
+        TaskRenderer renderer = new TaskRenderer(Writer.nullWriter());
+        measure("render/" + rows, () ->
+        {
+            renderer.numbered(tasks, 0, tasks.size(), false);
+            return tasks.size();
+        });
+
+        TaskQuery nearest = new TaskQuery().priority(Priority.HIGH).completed(false)
+                .orderBy(SortBy.DEADLINE, SortOrder.ASCENDING).limit(10);
+        measure("topk/" + rows, () ->
+        {
+            sink += dataBase.query(nearest).size();
+            return 1;
+        });
+        measure("topkSort/" + rows, () ->
+        {
+            ArrayList<Task> matching = new ArrayList<>();
+            for (Task task : dataBase.getTasks())
+            {
+                if (nearest.matches(task))
+                    matching.add(task);
+            }
+            matching.sort(Comparator.comparing(Task::getDeadline, Comparator.nullsLast(Comparator.naturalOrder())));
+            sink += matching.subList(0, Math.min(10, matching.size())).size();
+            return 1;
+        });
+
+        measure("search/" + rows, () ->
+        {
+            sink += dataBase.search("with 12345*", Integer.MAX_VALUE).size();
+            return 1;
+        });
+        measure("searchScan/" + rows, () ->
+        {
+            int found = 0;
+            for (Task task : dataBase.getTasks())
+            {
+                String description = task.getDescription().toLowerCase();
+                if (description.contains("with") && (description.contains(" 12345") || description.startsWith("12345")))
+                    found++;
+            }
+            sink += found;
+            return 1;
+        });
+
+        dataBase.close();
+        deleteAll(dir);
+    }
+
+    private void measure(String name, Body body) throws Exception
+    {
+        if (filter != null && !name.contains(filter))
+            return;
+
+        for (int i = 0; i < warmup; i++)
+        {
+            body.run();
+        }
+
+        double[] nanosPerOp = new double[iterations];
+        for (int i = 0; i < iterations; i++)
+        {
+            long start = System.nanoTime();
+            long operations = body.run();
+            nanosPerOp[i] = (double) (System.nanoTime() - start) / operations;
+        }
+        Arrays.sort(nanosPerOp);
+        double median = nanosPerOp[iterations / 2];
+
+        results.put(name, median);
+        System.out.printf("%-36s %,16.1f ns/op   (min %,.1f, max %,.1f)%n",
+                name, median, nanosPerOp[0], nanosPerOp[iterations - 1]);
+    }
+
+    private void save(File file) throws IOException
+    {
+        Properties properties = new Properties();
+        results.forEach((name, nanos) -> properties.setProperty(name, Double.toString(nanos)));
+        try (Writer writer = new FileWriter(file))
+        {
+            properties.store(writer, "TaskBenchmarks results, median ns/op");
+        }
+    }
+
+    /**
+     * Compares the results with a saved baseline.
+     *
+     * @return the number of regressions.
+     */
+    private int compare(File file, double tolerance) throws IOException
+    {
+        Properties baseline = new Properties();
+        try (Reader reader = new FileReader(file))
+        {
+            baseline.load(reader);
+        }
+
+        int regressions = 0;
+        System.out.println();
+        for (Map.Entry<String, Double> result : results.entrySet())
+        {
+            String value = baseline.getProperty(result.getKey());
+            if (value == null)
+                continue;
+            double before = Double.parseDouble(value);
+            double change = result.getValue() / before - 1;
+            boolean regressed = change > tolerance;
+            if (regressed)
+                regressions++;
+            System.out.printf("%-36s %+7.1f%%%s%n", result.getKey(), change * 100, regressed ? "   REGRESSION" : "");
+        }
+        System.out.println(regressions + " regression(s) beyond " + Math.round(tolerance * 100) + "%");
+        return regressions;
+    }
+
+    private static void deleteAll(File file) throws IOException
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                deleteAll(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,70 @@
+package todolist.bench;
+
+import todolist.data.Priority;
+import todolist.data.Task;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+/**
+ * Writes synthetic tasks.csv files for the benchmarks.
+ *
+ * Rows have random priorities and completion, a mix of date-only, minute
+ * precision and missing deadlines, and every tenth description contains a
+ * comma so it is quoted. IDs run from 1 to the row count. The same seed always
+ * gives the same file.
+ *
+ * Usage: TaskFileGenerator rows file [seed]
+ */
+public class TaskFileGenerator
+{
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Usage: TaskFileGenerator rows file [seed]");
+            System.exit(2);
+        }
+        int rows = Integer.parseInt(args[0]);
+        File file = new File(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        if (file.getAbsoluteFile().getParentFile() != null)
+            file.getAbsoluteFile().getParentFile().mkdirs();
+
+        generate(file, rows, seed);
+        System.out.println("Generated " + rows + " rows, " + (file.length() / 1024) + " KB: " + file.getAbsolutePath());
+    }
+
+    /**
+     * Writes a tasks file of the given number of rows.
+     *
+     * @param file The file to write, replaced if it exists.
+     * @param rows The number of tasks.
+     * @param seed The random seed.
+     */
+    public static void generate(File file, int rows, long seed) throws IOException
+    {
+        Random random = new Random(seed);
+        Priority[] priorities = Priority.values();
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file))))
+        {
+            for (int i = 0; i < rows; i++)
+            {
+                LocalDateTime deadline = switch (random.nextInt(4))
+                {
+                    case 0 -> null;
+                    case 1 -> base.plusDays(random.nextInt(1000));
+                    default -> base.plusMinutes(random.nextInt(1_000_000));
+                };
+                Task task = new Task("Task number " + i + (i % 10 == 0 ? ", with a comma" : ""),
+                        priorities[random.nextInt(priorities.length)], deadline);
+                task.setCompleted(random.nextBoolean());
+                task.setId(i + 1);
+                writer.println(task.AsCsvLine());
+            }
+        }
+    }
+}
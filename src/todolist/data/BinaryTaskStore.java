@@ -0,0 +1,460 @@
+package todolist.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stores the tasks as fixed size binary records in a memory-mapped file.
+ *
+ * The records file (tasks.bin) starts with a header followed by one record per task:
+ *
+ *   header   magic (int), heap generation (int), record count (int), unused (int), heap size (long)
+ *   record   flags (byte), unused (3 bytes), description length (int),
+ *            description offset (long), deadline in epoch minutes UTC (long), task ID (long)
+ *
+ * The flags hold the priority ordinal in bits 0-1, completion in bit 2 and a
+ * deletion mark in bit 3. A missing deadline is stored as {@link Long#MIN_VALUE},
+ * seconds of a deadline are not kept. Descriptions are UTF-8 bytes appended to
+ * a string heap (tasks.heap.N, N being the heap generation).
+ *
+ * Adding a task appends its description and one record, toggling completion
+ * rewrites a single byte in place and removing a task only sets its deletion
+ * mark. Saving rewrites both files once the deleted records outnumber the live
+ * ones. When the records file does not exist yet, the tasks of the CSV file it
+ * replaces are imported.
+ *
+ * Opening the store still decodes every live record into a task, so it saves
+ * the parsing of a CSV load but not its allocations. The records are mapped
+ * in segments of {@link #SEGMENT_RECORDS} and the heap is read through
+ * windows of {@link #HEAP_WINDOW} bytes, so both files may grow past 2 GB.
+ */
+public class BinaryTaskStore implements TaskStore
+{
+    static final int MAGIC = 0x54444231; // "TDB1"
+    static final int HEADER_SIZE = 24;
+    static final int RECORD_SIZE = 32;
+    static final int SEGMENT_RECORDS = 1 << 25; // 1 GB of records per mapping
+    static final long HEAP_WINDOW = 1L << 30;
+
+    private static final int GENERATION_OFFSET = 4;
+    private static final int COUNT_OFFSET = 8;
+    private static final int HEAP_SIZE_OFFSET = 16;
+
+    private static final int PRIORITY_MASK = 0x03;
+    private static final int COMPLETED = 0x04;
+    private static final int DELETED = 0x08;
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    private final File file;
+    private final File importFile;
+    private final Consumer<String> warnings;
+    private final IdentityHashMap<Task, Integer> slots = new IdentityHashMap<>();
+
+    private FileChannel records;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private int capacity;
+    private int count;
+    private int deleted;
+
+    private FileChannel heap;
+    private int generation;
+    private long heapSize;
+    private volatile long bytesRead; // changed under the database's lock on the store
+    private volatile long bytesWritten;
+
+    /**
+     * Creates the store with its warnings written to System.err.
+     *
+     * @param file The records file, the string heap is kept next to it.
+     * @param importFile CSV file to import when the records file does not exist yet, may be null.
+     */
+    public BinaryTaskStore(File file, File importFile)
+    {
+        this(file, importFile, System.err::println);
+    }
+
+    /**
+     * @param file The records file, the string heap is kept next to it.
+     * @param importFile CSV file to import when the records file does not exist yet, may be null.
+     * @param warnings Receives the warnings about failed reads and writes, and what was imported.
+     */
+    public BinaryTaskStore(File file, File importFile, Consumer<String> warnings)
+    {
+        this.file = file;
+        this.importFile = importFile;
+        this.warnings = warnings;
+    }
+
+    private File heapFile(int generation)
+    {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(file.getParentFile(), (dot < 0 ? name : name.substring(0, dot)) + ".heap." + generation);
+    }
+
+    /**
+     * Maps the records file and decodes every live record.
+     */
+    @Override
+    public void load(List<Task> tasks)
+    {
+        try
+        {
+            if (!file.exists() || file.length() < HEADER_SIZE)
+            {
+                ArrayList<Task> imported = new ArrayList<>();
+                if (importFile != null && importFile.length() > 0)
+                {
+                    new CsvTaskStore(importFile, warnings).load(imported);
+                    warnings.accept("Imported " + imported.size() + " tasks from: " + importFile.getAbsolutePath());
+                }
+                rewrite(imported);
+            }
+            open();
+            readAll(tasks);
+            bytesRead += HEADER_SIZE + (long) count * RECORD_SIZE + heapSize;
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("Error reading file: " + file.getAbsolutePath());
+            ex.printStackTrace();
+        }
+    }
+
+    private void open() throws IOException
+    {
+        records = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        records.read(header, 0);
+        header.flip();
+        if (header.getInt(0) != MAGIC)
+            throw new IOException("Not a task store: " + file.getAbsolutePath());
+
+        generation = header.getInt(GENERATION_OFFSET);
+        count = header.getInt(COUNT_OFFSET);
+        heapSize = header.getLong(HEAP_SIZE_OFFSET);
+        heap = FileChannel.open(heapFile(generation).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        capacity = Math.max(count, 1024);
+        remap();
+    }
+
+    /**
+     * Maps the header and enough segments for the capacity. Full segments
+     * stay mapped, only the last one is mapped again with more records.
+     */
+    private void remap() throws IOException
+    {
+        header = records.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        int needed = (int) (((long) capacity + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[needed];
+        for (int i = 0; i < needed; i++)
+        {
+            long first = (long) i * SEGMENT_RECORDS;
+            long rows = Math.min(SEGMENT_RECORDS, capacity - first);
+            mapped[i] = segments != null && i < segments.length - 1 ? segments[i]
+                    : records.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * RECORD_SIZE, rows * RECORD_SIZE);
+        }
+        segments = mapped;
+    }
+
+    /**
+     * @return the mapping holding the record of a slot.
+     */
+    private MappedByteBuffer segment(int slot)
+    {
+        return segments[slot / SEGMENT_RECORDS];
+    }
+
+    /**
+     * @return the position of the record of a slot in its {@link #segment(int)}.
+     */
+    private static int position(int slot)
+    {
+        return slot % SEGMENT_RECORDS * RECORD_SIZE;
+    }
+
+    private void readAll(List<Task> tasks) throws IOException
+    {
+        MappedByteBuffer strings = null;
+        long window = 0; // the heap offset strings starts at
+        byte[] bytes = new byte[256];
+
+        for (int slot = 0; slot < count; slot++)
+        {
+            MappedByteBuffer segment = segment(slot);
+            int position = position(slot);
+            int flags = segment.get(position);
+            if ((flags & DELETED) != 0)
+            {
+                deleted++;
+                continue;
+            }
+
+            int length = segment.getInt(position + 4);
+            long offset = segment.getLong(position + 8);
+            if (strings == null || offset < window || offset + length > window + strings.limit())
+            {
+                window = offset;
+                strings = heap.map(FileChannel.MapMode.READ_ONLY, offset, Math.max(length, Math.min(HEAP_WINDOW, heapSize - offset)));
+            }
+            if (length > bytes.length)
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            strings.get((int) (offset - window), bytes, 0, length);
+
+            long minutes = segment.getLong(position + 16);
+            LocalDateTime deadline = minutes == NO_DEADLINE ? null
+                    : LocalDateTime.ofEpochSecond(minutes * 60, 0, ZoneOffset.UTC);
+
+            Task task = new Task(new String(bytes, 0, length, StandardCharsets.UTF_8),
+                    Priority.values()[flags & PRIORITY_MASK], deadline);
+            task.setCompleted((flags & COMPLETED) != 0);
+            task.setId(segment.getLong(position + 24));
+            tasks.add(task);
+            slots.put(task, slot);
+        }
+    }
+
+    @Override
+    public void added(Task task)
+    {
+        try
+        {
+            byte[] description = task.getDescription().getBytes(StandardCharsets.UTF_8);
+            heap.write(ByteBuffer.wrap(description), heapSize);
+
+            if (count == capacity)
+            {
+                capacity = (int) Math.min(2L * capacity, Integer.MAX_VALUE);
+                remap();
+            }
+            int slot = count;
+            MappedByteBuffer segment = segment(slot);
+            int position = position(slot);
+            segment.put(position, flags(task));
+            segment.putInt(position + 4, description.length);
+            segment.putLong(position + 8, heapSize);
+            segment.putLong(position + 16, minutes(task.getDeadline()));
+            segment.putLong(position + 24, task.getId());
+
+            // the header is updated last, so a record is only counted once it is complete
+            heapSize += description.length;
+            count++;
+            header.putLong(HEAP_SIZE_OFFSET, heapSize);
+            header.putInt(COUNT_OFFSET, count);
+            slots.put(task, slot);
+            bytesWritten += RECORD_SIZE + description.length;
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("IO Error in saving the new task.");
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    public void removed(Task task)
+    {
+        Integer slot = slots.remove(task);
+        if (slot == null)
+            return;
+        MappedByteBuffer segment = segment(slot);
+        int position = position(slot);
+        segment.put(position, (byte) (segment.get(position) | DELETED));
+        deleted++;
+        bytesWritten++;
+    }
+
+    @Override
+    public void completionChanged(Task task)
+    {
+        Integer slot = slots.get(task);
+        if (slot != null)
+        {
+            segment(slot).put(position(slot), flags(task));
+            bytesWritten++;
+        }
+    }
+
+    /**
+     * Nothing is buffered: records are written straight into the mapping and
+     * descriptions straight into the heap file.
+     */
+    @Override
+    public void flush()
+    {
+    }
+
+    /**
+     * Forces the mapped records and the heap to disk.
+     */
+    @Override
+    public void sync()
+    {
+        try
+        {
+            force();
+            heap.force(false);
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("IO Error in saving tasks data: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Forces the mapped records and the heap to disk, or rewrites both files
+     * without the deleted records once those outnumber the live ones.
+     */
+    @Override
+    public void save(List<Task> tasks)
+    {
+        try
+        {
+            if (deleted > count - deleted)
+            {
+                closeFiles();
+                rewrite(tasks);
+                open();
+                slots.clear();
+                for (int slot = 0; slot < tasks.size(); slot++)
+                {
+                    slots.put(tasks.get(slot), slot);
+                }
+                deleted = 0;
+            }
+            else
+            {
+                force();
+                heap.force(false);
+            }
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("IO Error in saving tasks data: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the tasks to a new heap generation and a temporary records file,
+     * then moves the records file into place. The old heap is only deleted once
+     * the new records file, which names the new heap, is in place.
+     */
+    private void rewrite(List<Task> tasks) throws IOException
+    {
+        int newGeneration = generation + 1;
+        File newHeap = heapFile(newGeneration);
+        File tmp = new File(file.getPath() + ".tmp");
+        long offset = 0;
+
+        try (FileOutputStream heapOut = new FileOutputStream(newHeap);
+             BufferedOutputStream strings = new BufferedOutputStream(heapOut, 64 * 1024);
+             FileOutputStream recordsOut = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(recordsOut, 64 * 1024)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(newGeneration);
+            out.writeInt(tasks.size());
+            out.writeInt(0);
+            out.writeLong(0); // heap size, filled in below
+
+            for (Task task : tasks)
+            {
+                byte[] description = task.getDescription().getBytes(StandardCharsets.UTF_8);
+                strings.write(description);
+
+                out.writeByte(flags(task));
+                out.write(new byte[3]);
+                out.writeInt(description.length);
+                out.writeLong(offset);
+                out.writeLong(minutes(task.getDeadline()));
+                out.writeLong(task.getId());
+                offset += description.length;
+            }
+            strings.flush();
+            heapOut.getFD().sync();
+            out.flush();
+            recordsOut.getChannel().write(ByteBuffer.allocate(8).putLong(0, offset), HEAP_SIZE_OFFSET);
+            recordsOut.getFD().sync();
+            bytesWritten += recordsOut.getChannel().size() + offset;
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(heapFile(generation).toPath());
+        generation = newGeneration;
+    }
+
+    private void force()
+    {
+        header.force();
+        for (MappedByteBuffer segment : segments)
+        {
+            segment.force();
+        }
+    }
+
+    private static byte flags(Task task)
+    {
+        return (byte) (task.getPriority().ordinal() | (task.isCompleted() ? COMPLETED : 0));
+    }
+
+    private static long minutes(LocalDateTime deadline)
+    {
+        return deadline == null ? NO_DEADLINE : deadline.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    @Override
+    public long bytesRead()
+    {
+        return bytesRead;
+    }
+
+    @Override
+    public long bytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            closeFiles();
+        }
+        catch (IOException ex)
+        {
+            ex.printStackTrace();
+        }
+    }
+
+    private void closeFiles() throws IOException
+    {
+        if (header != null)
+            force();
+        if (records != null)
+            records.close();
+        if (heap != null)
+            heap.close();
+        header = null;
+        segments = null;
+        records = null;
+        heap = null;
+    }
+}
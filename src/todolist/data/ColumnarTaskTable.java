@@ -0,0 +1,469 @@
+package todolist.data;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tasks stored column by column instead of as {@link Task} objects, so
+ * millions of tasks fit in a fraction of the heap.
+ *
+ * Every task is a row of primitive arrays: its ID, a flags byte holding the
+ * priority and the completion, the deadline in epoch seconds, and the offset
+ * and length of its description in a shared UTF-8 byte arena. That is 25
+ * bytes per task plus the description text, where a task object with its
+ * String and LocalDateTime takes well over 100. The tasks handed out are
+ * {@link Row} views that read and write the columns; they are created on
+ * access and not kept.
+ *
+ * Sorting by deadline packs each deadline with its position into a long and
+ * sorts the longs, a primitive sort over one array. Queries scan the columns:
+ * priority, completion and the deadline range are checked on the primitive
+ * values and only rows that pass are turned into views.
+ *
+ * Deadlines are kept to the second. A changed description is appended to the
+ * arena and the old bytes are left behind until the next load.
+ */
+final class ColumnarTaskTable extends TaskTable
+{
+    private static final int PRIORITY_BITS = 0x3;
+    private static final int COMPLETED = 0x4;
+
+    private long[] ids = new long[16];
+    private byte[] flags = new byte[16];
+    private long[] deadlines = new long[16];
+    private long[] descriptions = new long[16]; // arena offset << 32 | length
+    private byte[] arena = new byte[1024];
+    private int arenaSize;
+    private int rows;
+    private Task[] materialized;
+
+    private ColumnarTaskTable()
+    {
+    }
+
+    /**
+     * Reads a tasks file into columns. Invalid lines are skipped or get
+     * defaults with the same warnings as a full load, and rows without an ID
+     * are numbered on from the highest one.
+     *
+     * @param file The tasks file.
+     * @param length The number of bytes holding rows, see {@link SnapshotTrailer}.
+     * @param rows The number of rows if known, to size the columns, or -1.
+     * @param warnings Receives the warnings about invalid lines.
+     * @throws IOException if reading the file fails.
+     */
+    static ColumnarTaskTable read(File file, long length, long rows, Consumer<String> warnings) throws IOException
+    {
+        ColumnarTaskTable table = new ColumnarTaskTable();
+        if (rows > 0 && rows < Integer.MAX_VALUE - 8)
+            table.reserve((int) rows);
+        try (TaskCsvReader reader = new TaskCsvReader(new FileInputStream(file), warnings))
+        {
+            reader.stopAt(length);
+            Task task;
+            while ((task = reader.readTask()) != null)
+            {
+                table.append(task);
+            }
+        }
+
+        long nextId = 1;
+        for (int p = 0; p < table.rows; p++)
+        {
+            nextId = Math.max(nextId, table.ids[p] + 1);
+        }
+        for (int p = 0; p < table.rows; p++)
+        {
+            if (table.ids[p] == 0)
+                table.ids[p] = nextId++;
+        }
+        table.loaded(table.rows, nextId - 1);
+        return table;
+    }
+
+    /**
+     * Sizes the columns for the given number of rows.
+     */
+    private void reserve(int rows)
+    {
+        ids = new long[rows];
+        flags = new byte[rows];
+        deadlines = new long[rows];
+        descriptions = new long[rows];
+    }
+
+    private int append(Task task)
+    {
+        if (rows == ids.length)
+        {
+            int grown = (int) Math.min(Math.max(rows * 2L, 16), Integer.MAX_VALUE - 8);
+            ids = Arrays.copyOf(ids, grown);
+            flags = Arrays.copyOf(flags, grown);
+            deadlines = Arrays.copyOf(deadlines, grown);
+            descriptions = Arrays.copyOf(descriptions, grown);
+        }
+        ids[rows] = task.getId();
+        flags[rows] = (byte) (task.getPriority().ordinal() | (task.isCompleted() ? COMPLETED : 0));
+        deadlines[rows] = key(task.getDeadline());
+        descriptions[rows] = putText(task.getDescription());
+        return rows++;
+    }
+
+    /**
+     * Appends a description to the arena.
+     *
+     * @return its offset and length.
+     */
+    private long putText(String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (arenaSize + bytes.length > arena.length)
+        {
+            long grown = Math.max(arena.length * 2L, (long) arenaSize + bytes.length);
+            if (grown > Integer.MAX_VALUE - 8)
+                throw new IllegalStateException("Task descriptions exceed the 2 GB arena");
+            arena = Arrays.copyOf(arena, (int) grown);
+        }
+        System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+        long reference = (long) arenaSize << 32 | bytes.length;
+        arenaSize += bytes.length;
+        return reference;
+    }
+
+    private String text(int position)
+    {
+        long reference = descriptions[position];
+        return new String(arena, (int) (reference >>> 32), (int) reference, StandardCharsets.UTF_8);
+    }
+
+    private static long key(LocalDateTime deadline)
+    {
+        return deadline == null ? NO_DEADLINE : deadline.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime deadline(long key)
+    {
+        return key == NO_DEADLINE ? null : LocalDateTime.ofEpochSecond(key, 0, ZoneOffset.UTC);
+    }
+
+    @Override
+    int positions()
+    {
+        return rows;
+    }
+
+    @Override
+    long id(int position)
+    {
+        return ids[position];
+    }
+
+    @Override
+    int priority(int position)
+    {
+        return flags[position] & PRIORITY_BITS;
+    }
+
+    @Override
+    long deadlineKey(int position)
+    {
+        return deadlines[position];
+    }
+
+    @Override
+    boolean completed(int position)
+    {
+        return (flags[position] & COMPLETED) != 0;
+    }
+
+    @Override
+    Task decode(int position)
+    {
+        return materialized != null ? materialized[position] : new Row(position);
+    }
+
+    @Override
+    int store(Task task)
+    {
+        return append(task);
+    }
+
+    /**
+     * Packs the rank of each deadline and the position into one long, so a
+     * primitive sort gives the deadline order with ties in position order.
+     * Falls back to the merge sort if the deadlines span too wide a range.
+     */
+    @Override
+    void sortByDeadline(int[] positions, boolean ascending)
+    {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int p : positions)
+        {
+            long key = deadlines[p];
+            if (key != NO_DEADLINE)
+            {
+                min = Math.min(min, key);
+                max = Math.max(max, key);
+            }
+        }
+        if (min > max)
+            min = max = 0;
+
+        long last = max - min + 1; // the rank of tasks without a deadline
+        int positionBits = 64 - Long.numberOfLeadingZeros(Math.max(rows - 1, 0));
+        if (last < 0 || 64 - Long.numberOfLeadingZeros(last) + positionBits > 63)
+        {
+            super.sortByDeadline(positions, ascending);
+            return;
+        }
+
+        long[] packed = new long[positions.length];
+        for (int i = 0; i < positions.length; i++)
+        {
+            int p = positions[i];
+            long rank = deadlines[p] == NO_DEADLINE ? last : deadlines[p] - min;
+            if (!ascending)
+                rank = last - rank;
+            packed[i] = rank << positionBits | p;
+        }
+        Arrays.sort(packed);
+        long mask = (1L << positionBits) - 1;
+        for (int i = 0; i < positions.length; i++)
+        {
+            positions[i] = (int) (packed[i] & mask);
+        }
+    }
+
+    /**
+     * Finds the tasks matching a query by scanning the columns, in the same
+     * order as {@link Database#query(TaskQuery)} with a full load.
+     */
+    synchronized List<Task> query(TaskQuery query)
+    {
+        List<Task> result = new ArrayList<>();
+        if (query.limit == 0 || query.priorities.isEmpty())
+            return result;
+
+        boolean[] wanted = new boolean[Priority.values().length];
+        for (Priority priority : query.priorities)
+        {
+            wanted[priority.ordinal()] = true;
+        }
+        boolean range = query.hasDeadlineRange();
+        long from = query.deadlineFrom == null ? Long.MIN_VALUE : ceilKey(query.deadlineFrom);
+        long before = query.deadlineBefore == null ? NO_DEADLINE : ceilKey(query.deadlineBefore);
+
+        int[] live = livePositions();
+        int count = 0;
+        for (int p : live)
+        {
+            int flag = flags[p];
+            if (!wanted[flag & PRIORITY_BITS])
+                continue;
+            if (query.completed != null && ((flag & COMPLETED) != 0) != query.completed)
+                continue;
+            long key = deadlines[p];
+            if (range && (key == NO_DEADLINE || key < from || key >= before))
+                continue;
+            if (query.text != null && !query.matchesResidual(new Row(p)))
+                continue;
+            live[count++] = p;
+        }
+
+        int[] matches = Arrays.copyOf(live, count);
+        int levels = wanted.length;
+        boolean ascending = query.sortOrder == SortOrder.ASCENDING;
+        PositionOrder byPriority = (a, b) -> ascending
+                ? Integer.compare(priority(a), priority(b))
+                : Integer.compare(levels - priority(a), levels - priority(b));
+        PositionOrder byDeadline = (a, b) -> ascending
+                ? Long.compare(deadlines[a], deadlines[b])
+                : Long.compare(deadlines[b], deadlines[a]);
+        if (query.sortBy == SortBy.PRIORITY)
+            sort(matches, (a, b) -> byPriority.compare(a, b) != 0 ? byPriority.compare(a, b) : byDeadline.compare(a, b));
+        else
+            sort(matches, (a, b) -> byDeadline.compare(a, b) != 0 ? byDeadline.compare(a, b) : byPriority.compare(a, b));
+
+        for (int i = 0; i < matches.length && i < query.limit; i++)
+        {
+            result.add(decode(matches[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @return the smallest whole second not before the given time.
+     */
+    private static long ceilKey(LocalDateTime time)
+    {
+        return time.toEpochSecond(ZoneOffset.UTC) + (time.getNano() > 0 ? 1 : 0);
+    }
+
+    @Override
+    synchronized List<Task> materialize()
+    {
+        if (materialized == null)
+        {
+            Task[] all = new Task[rows];
+            for (int p = 0; p < rows; p++)
+            {
+                Task task = new Task(text(p), Priority.values()[priority(p)], deadline(deadlines[p]));
+                task.setCompleted((flags[p] & COMPLETED) != 0);
+                task.setId(ids[p]);
+                all[p] = task;
+            }
+            materialized = all;
+        }
+
+        List<Task> live = new ArrayList<>(rows);
+        for (int p : livePositions())
+        {
+            live.add(materialized[p]);
+        }
+        return live;
+    }
+
+    @Override
+    synchronized TaskLog.Snapshot snapshot()
+    {
+        int[] positions = currentOrder();
+        return out ->
+        {
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+            for (int position : positions)
+            {
+                writer.println(new Row(position).AsCsvLine());
+            }
+            writer.flush();
+            if (writer.checkError())
+                throw new IOException("Error writing snapshot");
+            return positions.length;
+        };
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    /**
+     * A task that reads and writes its row of the columns.
+     */
+    private final class Row extends Task
+    {
+        private final int position;
+
+        Row(int position)
+        {
+            super(null, null, null);
+            this.position = position;
+        }
+
+        @Override
+        public long getId()
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                return ids[position];
+            }
+        }
+
+        @Override
+        public void setId(long id)
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                ids[position] = id;
+            }
+        }
+
+        @Override
+        public String getDescription()
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                return text(position);
+            }
+        }
+
+        @Override
+        public void setDescription(String description)
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                descriptions[position] = putText(description);
+            }
+        }
+
+        @Override
+        public Priority getPriority()
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                return Priority.values()[priority(position)];
+            }
+        }
+
+        @Override
+        public void setPriority(Priority priority)
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                flags[position] = (byte) (flags[position] & ~PRIORITY_BITS | priority.ordinal());
+            }
+        }
+
+        @Override
+        public LocalDateTime getDeadline()
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                return deadline(deadlines[position]);
+            }
+        }
+
+        @Override
+        public void setDeadline(LocalDateTime deadline)
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                deadlines[position] = key(deadline);
+            }
+        }
+
+        @Override
+        public boolean isCompleted()
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                return (flags[position] & COMPLETED) != 0;
+            }
+        }
+
+        @Override
+        public void setCompleted(boolean completed)
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                flags[position] = (byte) (completed ? flags[position] | COMPLETED : flags[position] & ~COMPLETED);
+            }
+        }
+
+        @Override
+        public boolean toggleCompleted()
+        {
+            synchronized (ColumnarTaskTable.this)
+            {
+                flags[position] ^= COMPLETED;
+                return (flags[position] & COMPLETED) != 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package todolist.data;
+
+import java.io.*;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stores the tasks in a compressed snapshot file, see {@link TaskBlocks}, with
+ * a {@link TaskLog} of the changes made since the snapshot was written.
+ *
+ * The log holds CSV records as for the {@link CsvTaskStore}, so changes cost
+ * the same; they are folded into blocks at the next compaction. When the
+ * snapshot does not exist yet, the tasks of the CSV file it replaces are
+ * imported.
+ */
+public class CompressedTaskStore implements TaskStore
+{
+    private final File file;
+    private final File importFile;
+    private final TaskLog log;
+    private final Consumer<String> warnings;
+    private List<Task> tasks;
+
+    /**
+     * Creates the store with its warnings written to System.err.
+     *
+     * @param file The compressed snapshot file, the log is kept next to it.
+     * @param importFile CSV file to import when the snapshot does not exist yet, may be null.
+     */
+    public CompressedTaskStore(File file, File importFile)
+    {
+        this(file, importFile, System.err::println);
+    }
+
+    /**
+     * @param file The compressed snapshot file, the log is kept next to it.
+     * @param importFile CSV file to import when the snapshot does not exist yet, may be null.
+     * @param warnings Receives the warnings about damaged files, and what was
+     *                 imported and replayed.
+     */
+    public CompressedTaskStore(File file, File importFile, Consumer<String> warnings)
+    {
+        this.file = file;
+        this.importFile = importFile;
+        this.log = new TaskLog(file, TaskLog.DEFAULT_COMPACT_THRESHOLD, warnings);
+        this.warnings = warnings;
+    }
+
+    /**
+     * Finishes or rolls back an interrupted compaction, decodes the snapshot
+     * and replays the log on top. If the snapshot fails its checksum the
+     * previous generation is read instead, see {@link TaskLog#recover()}.
+     */
+    @Override
+    public void load(List<Task> tasks)
+    {
+        this.tasks = tasks;
+        boolean imported = false;
+
+        log.recover();
+        File source = log.snapshotToRead();
+        long length = log.snapshotLength();
+        if (length > 0)
+        {
+            try
+            {
+                TaskBlocks.read(source, length, tasks);
+            }
+            catch (IOException ex)
+            {
+                warnings.accept("Error reading file: " + source.getAbsolutePath());
+                ex.printStackTrace();
+            }
+        }
+        else if (!file.exists() && importFile != null && importFile.length() > 0)
+        {
+            CsvTaskStore csv = new CsvTaskStore(importFile, warnings);
+            csv.load(tasks);
+            csv.close();
+            imported = true;
+            warnings.accept("Imported " + tasks.size() + " tasks from: " + importFile.getAbsolutePath());
+        }
+
+        log.read(length);
+        int replayed = log.replay(tasks);
+        if (replayed > 0)
+            warnings.accept("Replayed " + replayed + " logged changes.");
+        if (imported)
+            log.compactNow(snapshot(tasks));
+    }
+
+    /**
+     * Takes the states of the tasks on the calling thread, under the
+     * database's lock on the store, so a background compaction writes them as
+     * they were when its log was rotated.
+     */
+    private static TaskLog.Snapshot snapshot(List<Task> tasks)
+    {
+        return TaskBlocks.snapshot(TaskLog.states(tasks));
+    }
+
+    @Override
+    public void added(Task task)
+    {
+        record(TaskLog.ADD, task);
+    }
+
+    @Override
+    public void removed(Task task)
+    {
+        record(TaskLog.REMOVE, task);
+    }
+
+    @Override
+    public void completionChanged(Task task)
+    {
+        record(TaskLog.TOGGLE, task);
+    }
+
+    /**
+     * Appends a record to the log and starts a background compaction once
+     * the log has grown past its threshold.
+     */
+    private void record(char op, Task task)
+    {
+        log.append(op, task);
+        if (log.needsCompaction() && !log.compacting() && tasks != null)
+            log.compactAsync(snapshot(tasks));
+    }
+
+    @Override
+    public void flush()
+    {
+        log.flush();
+    }
+
+    @Override
+    public void sync()
+    {
+        log.sync();
+    }
+
+    /**
+     * Writes a new compressed snapshot to a temporary file, moves it over the
+     * old one and empties the log. If the file cannot be written the log is
+     * kept, so no change is lost.
+     */
+    @Override
+    public void save(List<Task> tasks)
+    {
+        log.compactNow(snapshot(tasks));
+    }
+
+    @Override
+    public long bytesRead()
+    {
+        return log.bytesRead();
+    }
+
+    @Override
+    public long bytesWritten()
+    {
+        return log.bytesWritten();
+    }
+
+    @Override
+    public void close()
+    {
+        log.close();
+    }
+}
@@ -0,0 +1,247 @@
+package todolist.data;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stores the tasks in a CSV snapshot file with a {@link TaskLog} of the
+ * changes made since the snapshot was written.
+ */
+public class CsvTaskStore implements TaskStore
+{
+    private final TaskLog log;
+    private final Consumer<String> warnings;
+    private List<Task> tasks;
+    private TaskTable table;
+
+    /**
+     * Creates the store with its warnings written to System.err.
+     *
+     * @param file The CSV snapshot file, the log is kept next to it.
+     */
+    public CsvTaskStore(File file)
+    {
+        this(file, System.err::println);
+    }
+
+    /**
+     * @param file The CSV snapshot file, the log is kept next to it.
+     * @param warnings Receives the warnings about invalid lines and damaged
+     *                 files, and how many logged changes were replayed.
+     */
+    public CsvTaskStore(File file, Consumer<String> warnings)
+    {
+        this.log = new TaskLog(file, TaskLog.DEFAULT_COMPACT_THRESHOLD, warnings);
+        this.warnings = warnings;
+    }
+
+    /**
+     * Finishes or rolls back an interrupted compaction, streams the snapshot
+     * through a {@link TaskCsvReader} and replays the log on top. If the
+     * snapshot fails its checksum the previous generation is read instead,
+     * see {@link TaskLog#recover()}.
+     * Invalid lines are skipped with a warning. Large snapshots are parsed in
+     * parallel ranges by {@link ParallelCsvLoader}.
+     *
+     * Rows written before tasks had IDs get one here, numbered on from the
+     * highest ID in the file in file order, so the same rows get the same IDs
+     * until the next snapshot stores them.
+     */
+    @Override
+    public void load(List<Task> tasks)
+    {
+        this.tasks = tasks;
+        Task newTask; // Task object to be created from each line
+
+        log.recover();
+        File source = log.snapshotToRead();
+        long length = log.snapshotLength();
+        if (log.snapshotRows() > 0 && tasks instanceof ArrayList<Task> list)
+            list.ensureCapacity((int) Math.min(list.size() + log.snapshotRows(), Integer.MAX_VALUE - 8));
+
+        try
+        {
+            if (!ParallelCsvLoader.worthwhile(length) || !ParallelCsvLoader.load(source, length, tasks, warnings))
+            {
+                try (TaskCsvReader reader = new TaskCsvReader(new FileInputStream(source), warnings))
+                {
+                    reader.stopAt(length);
+                    while ((newTask = reader.readTask()) != null)
+                    {
+                        tasks.add(newTask);
+                    }
+                }
+            }
+        }
+        catch (FileNotFoundException ex)
+        {
+            warnings.accept("Cannot Open File: " + source.getAbsolutePath());
+            return;
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("Error reading file: " + source.getAbsolutePath());
+            ex.printStackTrace();
+        }
+
+        log.read(length);
+        assignMissingIds(tasks);
+        int replayed = log.replay(tasks);
+        if (replayed > 0)
+            warnings.accept("Replayed " + replayed + " logged changes.");
+    }
+
+    /**
+     * Opens the snapshot as a {@link TaskTable} when the todolist.load system
+     * property asks for one: {@code lazy} for a {@link LazyTaskFile} read on
+     * demand, {@code columnar} for a {@link ColumnarTaskTable}. An interrupted
+     * compaction is finished or rolled back first and the log is replayed on
+     * the table. Until {@link #attach} is called, snapshots are written from it.
+     *
+     * @return the table, or null for a full load.
+     */
+    TaskTable openTable()
+    {
+        String mode = System.getProperty("todolist.load", "");
+        boolean lazy = mode.equalsIgnoreCase("lazy");
+        if (!lazy && !mode.equalsIgnoreCase("columnar"))
+            return null;
+
+        log.recover();
+        File source = log.snapshotToRead();
+        long length = log.snapshotLength();
+        long rows = log.snapshotRows();
+        try
+        {
+            table = lazy ? LazyTaskFile.open(source, length, rows, LazyTaskFile.cacheSize(), warnings)
+                    : ColumnarTaskTable.read(source, length, rows, warnings);
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("Error reading file: " + source.getAbsolutePath());
+            ex.printStackTrace();
+            return null;
+        }
+
+        log.read(length);
+        int replayed = log.replay(table::replay);
+        if (replayed > 0)
+            warnings.accept("Replayed " + replayed + " logged changes.");
+        return table;
+    }
+
+    /**
+     * Hands over the fully loaded tasks after loading into a table, so snapshots
+     * are written from them from now on.
+     */
+    void attach(List<Task> tasks)
+    {
+        this.tasks = tasks;
+    }
+
+    private static void assignMissingIds(List<Task> tasks)
+    {
+        long nextId = 1;
+        for (Task task : tasks)
+        {
+            nextId = Math.max(nextId, task.getId() + 1);
+        }
+        for (Task task : tasks)
+        {
+            if (task.getId() == 0)
+                task.setId(nextId++);
+        }
+    }
+
+    @Override
+    public void added(Task task)
+    {
+        record(TaskLog.ADD, task);
+    }
+
+    @Override
+    public void removed(Task task)
+    {
+        record(TaskLog.REMOVE, task);
+    }
+
+    @Override
+    public void completionChanged(Task task)
+    {
+        record(TaskLog.TOGGLE, task);
+    }
+
+    /**
+     * Appends a record to the log and starts a background compaction once
+     * the log has grown past its threshold.
+     */
+    private void record(char op, Task task)
+    {
+        log.append(op, task);
+        if (!log.needsCompaction())
+            return;
+        if (tasks != null)
+            log.compactAsync(tasks);
+        else if (table != null)
+            log.compactAsync(table.snapshot());
+    }
+
+    @Override
+    public void flush()
+    {
+        log.flush();
+    }
+
+    @Override
+    public void sync()
+    {
+        log.sync();
+    }
+
+    /**
+     * Writes a new snapshot to a temporary file, moves it over the old one and
+     * empties the log. If the file cannot be written the log is kept, so no
+     * change is lost.
+     *
+     * While the tasks are held in a {@link TaskTable}, they are taken from it
+     * and nothing is written if nothing changed.
+     */
+    @Override
+    public void save(List<Task> tasks)
+    {
+        if (this.tasks != null || table == null)
+            log.compactNow(tasks);
+        else if (table.changed())
+            log.compactNow(table.snapshot());
+    }
+
+    @Override
+    public long bytesRead()
+    {
+        return log.bytesRead();
+    }
+
+    @Override
+    public long bytesWritten()
+    {
+        return log.bytesWritten();
+    }
+
+    @Override
+    public void close()
+    {
+        log.close();
+        if (table == null)
+            return;
+        try
+        {
+            table.close();
+        }
+        catch (IOException ex)
+        {
+            ex.printStackTrace();
+        }
+    }
+}
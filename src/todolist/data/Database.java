@@ -1,579 +1,1417 @@
 package todolist.data;
 
-import javax.swing.*;
 import java.io.*;
-import java.time.LocalDate;
+import java.net.InetSocketAddress;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Scanner;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 /**
  * This class constitutes the system's database.
  * It manages the list of tasks by offering
  * all the functionality of this management through methods, as well as
  * "reading" and "saving" the data files.
+ * It does no console input or output: the menu in the ui package, the batch
+ * mode and the HTTP server are clients of the methods below. Warnings about
+ * damaged files, failed writes and lost connections, and what was imported
+ * or replayed at load, go to the listener given to the constructor,
+ * System.err by default.
+ *
+ * The database can be used from several threads. Adding, removing, sorting
+ * and saving take the write lock, so the indexes, the task list and the order
+ * of changes passed to the task store stay consistent. Completion toggles only
+ * take the shared read lock and flip the flag with a compare-and-set, so they
+ * run in parallel with each other. {@link #getTasks()} returns an immutable
+ * snapshot without locking once it has been built after the last change.
+ *
+ * With the system property todolist.load=lazy or columnar the CSV tasks are
+ * held in a {@link TaskTable} instead of the task list and its indexes:
+ * on demand, decoded when they are listed, looked up or changed, or in
+ * primitive columns. Searches, and queries on demand, need every task as an
+ * object and load them all first.
+ *
+ * Loads, saves, sorts and changes are timed into the {@link DatabaseMetrics}
+ * returned by {@link #metrics()}. {@link #remindDeadlines(Duration, DeadlineReminders.Listener)}
+ * keeps a timer for every open deadline up to date with the changes,
+ * {@link #keepHistory(long)} records them so they can be undone and
+ * {@link #lead(String, int, int)} streams them to followers on other JVMs.
  */
-public class Database
+public final class Database
 {
-    final String dirPath = "csv_data";
+    final String dirPath;
     final String taskList = "tasks.csv";
+    final String binaryTaskList = "tasks.bin";
+    final String compressedTaskList = "tasks_compressed.tdz";
+    final String textIndexFile = "tasks.idx";
     private final ArrayList<Task> tasks;
-    SortBy sortBy;
-    SortOrder sortOrder;
-    Scanner keyboard;
+    private final TaskIndex index;
+    private final TaskIdMap ids;
+    private volatile TextIndex text; // built or loaded at the first search
+    private long nextId = 1;
+    private final TaskStore store;
+    private final Consumer<String> warnings;
+    private volatile TaskTable table;
+    private volatile PersistenceScheduler persistence;
+    private volatile DeadlineReminders reminders;
+    private volatile TaskHistory history;
+    private volatile ReplicationLeader leader;
+    private volatile ReplicationFollower follower;
+    private boolean replaying; // set while undoing, under the write lock
+    private final DatabaseMetrics metrics;
+    private volatile AtomicLongArray counts; // by priority and completion, built at the first count()
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile List<Task> snapshot;
+    volatile SortBy sortBy;
+    volatile SortOrder sortOrder;
 
     /**
      * The constructor of this class, it is used to initialize the tasks list
+     * from the csv_data directory.
      */
     public Database()
     {
+        this("csv_data");
+    }
+
+    /**
+     * Creates the database on the given data directory with its warnings
+     * written to System.err, see {@link #Database(String, Consumer)}.
+     *
+     * @param dirPath The directory holding the task files.
+     * @throws UncheckedIOException if the directory or the task file cannot be created.
+     */
+    public Database(String dirPath)
+    {
+        this(dirPath, System.err::println);
+    }
+
+    /**
+     * Creates the database on the given data directory, creating the directory
+     * and the task file if needed, loads the tasks and sorts them by priority.
+     *
+     * @param dirPath The directory holding the task files.
+     * @param warnings Receives the warnings of the database and its task store,
+     *                 also from background threads.
+     * @throws UncheckedIOException if the directory or the task file cannot be created.
+     */
+    public Database(String dirPath, Consumer<String> warnings)
+    {
+        this.dirPath = dirPath;
+        this.warnings = warnings;
         tasks = new ArrayList<>();
-        keyboard = new Scanner(System.in);
+        index = new TaskIndex();
+        ids = new TaskIdMap();
+        store = createStore();
+        metrics = new DatabaseMetrics(this, store);
 
-        createDataDirectory();
-        createTaskFile();
+        createDataFiles();
+        long start = System.nanoTime();
         LoadTasks();
+        metrics.record(DatabaseMetrics.Operation.LOAD, start);
         sortTasks(SortBy.PRIORITY, SortOrder.ASCENDING);
     }
 
     /**
-     * Creates the application data directory if it does not already exist.
-     * The directory path is defined by {@code dirPath}.
-     * This method ensures that the application has a proper storage location
-     * for task files. If the directory is successfully created, the path is printed.
-     * If it already exists, a message indicating that is displayed.
+     * Chooses the storage backend from the {@code todolist.store} system property:
+     * {@code binary} for the memory-mapped {@link BinaryTaskStore}, which imports
+     * tasks.csv the first time, {@code compressed} for the block compressed
+     * {@link CompressedTaskStore}, which does the same, or the CSV file with its
+     * change log otherwise.
+     *
+     * @return the task store used by this database.
      */
-    public void createDataDirectory()
+    private TaskStore createStore()
+    {
+        File csvFile = new File(dirPath, taskList);
+        if ("binary".equalsIgnoreCase(System.getProperty("todolist.store")))
+            return new BinaryTaskStore(new File(dirPath, binaryTaskList), csvFile, warnings);
+        if ("compressed".equalsIgnoreCase(System.getProperty("todolist.store")))
+            return new CompressedTaskStore(new File(dirPath, compressedTaskList), csvFile, warnings);
+        return new CsvTaskStore(csvFile, warnings);
+    }
+
+    /**
+     * Passes a warning to the listener given to the constructor.
+     */
+    void warn(String message)
+    {
+        warnings.accept(message);
+    }
+
+    /**
+     * Creates the application data directory and the CSV file used to store
+     * tasks inside it, if they do not already exist. Existing files are never
+     * overwritten, and when the task file exists that is the only check.
+     */
+    private void createDataFiles()
     {
         File directory = new File (dirPath);
-        if (!directory.exists())
+        File file = new File (dirPath, taskList);
+        if (file.isFile())
+            return;
+        try
         {
-            if (directory.mkdirs())
-                System.out.println("Directory created: " + directory.getAbsolutePath());
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Cannot create directory " + directory.getAbsolutePath());
+            file.createNewFile();
         }
-        else
+        catch (IOException ex)
         {
-            System.out.println("Directory already exists: " + directory.getAbsolutePath());
+            throw new UncheckedIOException("An error has occurred while creating the task file.", ex);
         }
     }
 
     /**
-     * Creates the CSV file used to store tasks inside the application data directory.
-     * If the file already exists, the method prints a message instead of overwriting it.
-     * In case of an I/O error, the exception stack trace is displayed.
+     * Adds a new task. The task gets the next free ID. Once the tasks were
+     * sorted it goes into its place in the current order, found by a binary
+     * search, after the tasks it ties with; before that it is appended.
+     *
+     * @param task The task to add, its ID is overwritten.
+     * @return the task.
+     */
+    public Task add(Task task)
+    {
+        return add(task, true);
+    }
+
+    /**
+     * Adds a task, with the next free ID or with the one it has.
      */
-    public void createTaskFile()
+    private Task add(Task task, boolean newId)
     {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
         try
         {
-            File obj = new File (dirPath, taskList);
+            if (newId)
+                task.setId(nextId++);
+            else
+                nextId = Math.max(nextId, task.getId() + 1);
+            counted(task, 1);
+            if (table != null)
+            {
+                table.add(task);
+            }
+            else
+            {
+                tasks.add(sortBy == null ? tasks.size() : upperBound(task), task);
+                index.add(task);
+                ids.put(task);
+                if (text != null)
+                    text.add(task);
+            }
+            snapshot = null;
+            synchronized (store)
+            {
+                store.added(task);
+                publish(task);
+            }
+            remind(task);
+            if (recording())
+                record(List.of(TaskState.absent(task.getId())), List.of(TaskState.of(task)));
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        changed(1);
+        metrics.record(DatabaseMetrics.Operation.ADD, start);
+        return task;
+    }
 
-            //Creating the File
-            if (obj.createNewFile())
+    /**
+     * Finds where a task is in the current order, as in {@link #getTasks()}.
+     *
+     * @param id The task ID.
+     * @return its index, or -1 if there is no task with that ID.
+     */
+    public int indexOf(long id)
+    {
+        lock.readLock().lock();
+        try
+        {
+            if (table != null)
+                return table.indexOf(id);
+            Task task = ids.get(id);
+            if (task == null)
+                return -1;
+            // the newest tasks are last, overall or among the tasks they tie with
+            int low = sortBy == null ? 0 : lowerBound(task);
+            for (int i = sortBy == null ? tasks.size() - 1 : upperBound(task) - 1; i >= low; i--)
             {
-                System.out.println("File created: " + obj.getAbsolutePath());
+                if (tasks.get(i) == task)
+                    return i;
             }
+            return -1;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the index of the first task in the current order sorting after the given one.
+     */
+    private int upperBound(Task task)
+    {
+        Comparator<Task> comparator = comparator(sortBy, sortOrder);
+        int low = 0;
+        int high = tasks.size();
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(tasks.get(mid), task) <= 0)
+                low = mid + 1;
             else
-                System.out.println("File already exists: " + obj.getAbsolutePath());
+                high = mid;
         }
-        catch (IOException ex)
+        return low;
+    }
+
+    /**
+     * @return the index of the first task in the current order not sorting before the given one.
+     */
+    private int lowerBound(Task task)
+    {
+        Comparator<Task> comparator = comparator(sortBy, sortOrder);
+        int low = 0;
+        int high = tasks.size();
+        while (low < high)
         {
-            System.out.println("An error has occurred while creating the File.");
-            ex.printStackTrace();
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(tasks.get(mid), task) < 0)
+                low = mid + 1;
+            else
+                high = mid;
         }
+        return low;
+    }
+
+    /**
+     * @return the order that {@link TaskIndex#view(SortBy, SortOrder, List)}
+     *         produces, tasks that tie kept in the order they were added.
+     */
+    private static Comparator<Task> comparator(SortBy sortBy, SortOrder sortOrder)
+    {
+        Comparator<Task> comparator = switch (sortBy)
+        {
+            case PRIORITY -> Comparator.comparing(Task::getPriority);
+            case DEADLINE -> Comparator.comparing(Task::getDeadline, Comparator.nullsLast(Comparator.naturalOrder()));
+        };
+        return sortOrder == SortOrder.ASCENDING ? comparator : comparator.reversed();
     }
 
     /**
-     * Adds a new task to the list.
-     * This method interacts with the user via the console to:
+     * Returns the tasks in their current order. The list is an immutable
+     * snapshot: it is copied once after a change and then handed out without
+     * locking until the next change.
      *
-     *  Enter a non-empty task description
-     *  Select a task priority (HIGH, MEDIUM, LOW)
-     *  Optionally provide a deadline (supports multiple date formats)
+     * @return the tasks in their current order.
+     */
+    public List<Task> getTasks()
+    {
+        List<Task> current = snapshot;
+        if (current != null)
+            return current;
+
+        lock.readLock().lock();
+        try
+        {
+            current = table != null ? table.view() : List.copyOf(tasks);
+            snapshot = current; // writers are excluded, so this cannot overwrite a newer invalidation
+            return current;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns all tasks in the given order, without changing the current order.
+     * The list is produced by walking the priority or deadline index.
      *
-     * After collecting input, a Task object is created, added to the
-     * internal list, tasks are automatically sorted by priority, and changes are saved.
+     * @param sortBy The attribute to order by.
+     * @param sortOrder The direction.
+     * @return a new read-only list.
      */
-    public void addTask()
+    public List<Task> query(SortBy sortBy, SortOrder sortOrder)
     {
-        // === Task Description ===
-        System.out.println("---------------------");
-        System.out.print("\nEnter task description: ");
-        String description = keyboard.nextLine().trim();
-        while(description.isEmpty())
+        lock.readLock().lock();
+        try
         {
-            System.out.println("\nDescription cannot be empty.");
-            System.out.print("Enter again: ");
-            description = keyboard.nextLine().trim();
+            if (table != null)
+                return table.sorted(sortBy, sortOrder);
+            ArrayList<Task> result = new ArrayList<>(tasks.size());
+            index.view(sortBy, sortOrder, result);
+            return Collections.unmodifiableList(result);
         }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
 
-        // === Task Priority ===
-        int choice;
-        Priority priority = Priority.LOW; // default
-        do
+    /**
+     * Returns the tasks matching a query, see {@link TaskQuery}. The priority
+     * and deadline conditions are answered from the indexes and the walk stops
+     * at the query's limit, so the full list is neither scanned nor copied.
+     * Tasks held in columns are scanned instead.
+     *
+     * @param query The conditions, order and limit.
+     * @return a new read-only list.
+     */
+    public List<Task> query(TaskQuery query)
+    {
+        if (!(table instanceof ColumnarTaskTable))
+            loadAll();
+        ArrayList<Task> result = new ArrayList<>(Math.min(query.limit, 1024));
+        lock.readLock().lock();
+        try
         {
-            try
-            {
-                System.out.print("Enter task priority (1=HIGH, 2=MEDIUM, 3=LOW, empty = LOW): ");
-                String input = keyboard.nextLine().trim();
+            if (table instanceof ColumnarTaskTable columns)
+                result.addAll(columns.query(query));
+            else
+                index.query(query, result);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        return Collections.unmodifiableList(result);
+    }
 
-                if (input.isEmpty())
-                {
-                    choice = 3;
-                }
-                else
-                {
-                    choice = Integer.parseInt(input);
-                }
+    /**
+     * @return the number of tasks.
+     */
+    public int size()
+    {
+        return getTasks().size();
+    }
+
+    /**
+     * @return the attribute of the current order.
+     */
+    public SortBy getSortBy()
+    {
+        return sortBy;
+    }
 
-                switch (choice)
+    /**
+     * @return the direction of the current order.
+     */
+    public SortOrder getSortOrder()
+    {
+        return sortOrder;
+    }
+
+    /**
+     * Looks up a task by its ID.
+     *
+     * @param id The task ID.
+     * @return the task, or null if there is no task with that ID.
+     */
+    public Task get(long id)
+    {
+        lock.readLock().lock();
+        try
+        {
+            return table != null ? table.get(id) : ids.get(id);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the task with the given ID and passes the change to the task store.
+     *
+     * @param id The task ID.
+     * @return true if the task existed.
+     */
+    public boolean remove(long id)
+    {
+        return removeAll(id) == 1;
+    }
+
+    /**
+     * Removes several tasks by ID. The tasks are looked up in the ID index and
+     * only marked while removing; the displayed list is then compacted in one
+     * pass, so removing k of n tasks costs O(k + n) instead of O(k * n).
+     *
+     * @param idsToRemove The IDs of the tasks to remove, unknown IDs are ignored.
+     * @return the number of tasks removed.
+     */
+    public int removeAll(long... idsToRemove)
+    {
+        long start = System.nanoTime();
+        Set<Task> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        lock.writeLock().lock();
+        try
+        {
+            if (table != null)
+            {
+                List<Task> gone = table.removeAll(idsToRemove);
+                synchronized (store)
                 {
-                    case 1 -> priority = Priority.HIGH;
-                    case 2 -> priority = Priority.MEDIUM;
-                    case 3 -> priority = Priority.LOW;
-                    default ->
+                    for (Task task : gone)
                     {
-                        System.out.println("\nInvalid input! Please enter 1, 2, or 3.");
-                        choice = -1; // force repeat
+                        store.removed(task);
+                        publish(TaskState.absent(task.getId()));
+                        counted(task, -1);
+                        forget(task.getId());
                     }
                 }
+                if (!gone.isEmpty())
+                    snapshot = null;
+                if (recording())
+                    recordRemoved(gone);
+                changed(gone.size());
+                metrics.record(DatabaseMetrics.Operation.REMOVE, start);
+                return gone.size();
             }
-            catch (NumberFormatException ex) // with nextInt we have InputMismatchException but with nextLine we have NumberFormatException
+
+            for (long id : idsToRemove)
             {
-                System.out.println("\nInvalid input! Please enter a number (1, 2, or 3), or leave empty for LOW.");
-                choice = -1; // force repeat
+                Task task = ids.remove(id);
+                if (task == null)
+                    continue;
+                index.remove(task);
+                if (text != null)
+                    text.removed(ids);
+                counted(task, -1);
+                forget(id);
+                removed.add(task);
             }
+
+            if (removed.size() == 1)
+                tasks.remove(removed.iterator().next());
+            else if (!removed.isEmpty())
+                tasks.removeIf(removed::contains);
+            // only now, so a compaction started by the record does not write the tasks
+            synchronized (store)
+            {
+                for (Task task : removed)
+                {
+                    store.removed(task);
+                    publish(TaskState.absent(task.getId()));
+                }
+            }
+            if (!removed.isEmpty())
+                snapshot = null;
+            if (recording())
+                recordRemoved(removed);
         }
-        while(choice <= 0 || choice > 3);
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        changed(removed.size());
+        metrics.record(DatabaseMetrics.Operation.REMOVE, start);
+        return removed.size();
+    }
 
-        // === Task Deadline ===
-        System.out.print("Enter deadline (yyyy-mm-ddTHH:mm) or leave empty for none: ");
-        String deadlineInput = keyboard.nextLine().trim();
+    /**
+     * Changes the description of a task. The task store records the change as
+     * a removal and an addition of the task with the same ID.
+     *
+     * @param id The task ID.
+     * @param description The new description.
+     * @return true if the task existed.
+     */
+    public boolean setDescription(long id, String description)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            Task task = table != null ? table.forChange(id) : ids.get(id);
+            if (task == null)
+                return false;
+            String old = task.getDescription();
+            TaskState before = recording() ? TaskState.of(task) : null;
+            synchronized (store)
+            {
+                store.removed(task);
+                task.setDescription(description);
+                store.added(task);
+                publish(task);
+            }
+            if (before != null)
+                record(List.of(before), List.of(TaskState.of(task)));
+            if (table == null && text != null)
+                text.descriptionChanged(task, old);
+            snapshot = null;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        changed(1);
+        return true;
+    }
 
-        LocalDateTime deadline = null;
-        if (!deadlineInput.isEmpty())
+    /**
+     * Changes the deadline of a task. The task store records the change as a
+     * removal and an addition of the task with the same ID. Once the tasks
+     * were sorted, the task moves to its place for the new deadline, after the
+     * tasks it ties with, as if it was added again.
+     *
+     * @param id The task ID.
+     * @param deadline The new deadline, null for none.
+     * @return true if the task existed.
+     */
+    public boolean setDeadline(long id, LocalDateTime deadline)
+    {
+        lock.writeLock().lock();
+        try
         {
-            try
+            Task task;
+            TaskState before;
+            if (table != null)
             {
-                // Try "yyyy-MM-dd HH:mm"
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-                deadline = LocalDateTime.parse(deadlineInput, formatter);
+                Task old = table.get(id);
+                if (old == null)
+                    return false;
+                before = recording() ? TaskState.of(old) : null;
+                task = new Task(old.getDescription(), old.getPriority(), deadline);
+                task.setId(id);
+                task.setCompleted(old.isCompleted());
+                synchronized (store)
+                {
+                    store.removed(old);
+                    store.added(task);
+                    publish(task);
+                }
+                // a new row, so the task takes its place in the order like an added one
+                table.removeAll(id);
+                table.add(task);
             }
-            catch (DateTimeParseException ex1)
+            else
             {
-                try
+                task = ids.get(id);
+                if (task == null)
+                    return false;
+                before = recording() ? TaskState.of(task) : null;
+                int at = indexOf(id);
+                index.remove(task);
+                synchronized (store)
                 {
-                    // Try ISO format (with T)
-                    deadline = LocalDateTime.parse(deadlineInput);
+                    store.removed(task);
+                    task.setDeadline(deadline);
+                    store.added(task);
+                    publish(task);
                 }
-                catch (DateTimeParseException ex2)
+                index.add(task);
+                if (sortBy != null)
                 {
-                    try
-                    {    // Try "yyyy-MM-dd"
-                        LocalDate date = LocalDate.parse(deadlineInput);
-                        deadline = date.atStartOfDay();
-                    }
-                    catch (DateTimeParseException ex3)
-                    {
-                        System.out.println("Invalid deadline format. Task will have no deadline.");
-                    }
+                    tasks.remove(at);
+                    tasks.add(upperBound(task), task);
                 }
             }
+            remind(task);
+            snapshot = null;
+            if (before != null)
+                record(List.of(before), List.of(TaskState.of(task)));
         }
-
-        // === Create Task ===
-        Task tmp = new Task(description, priority, deadline);
-        tasks.add(tmp);
-        System.out.println("\n---------------------");
-        System.out.println("Task added!");
-        sortTasks(SortBy.PRIORITY, SortOrder.ASCENDING);  // Re-sort automatically
-        saveTasks();
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        changed(1);
+        return true;
     }
 
     /**
-     * Displays all tasks currently stored in memory.
+     * Finds the tasks whose description contains every word of the query,
+     * using the full-text index. Case is ignored and a word ending in '*'
+     * matches any word starting with it, e.g. "milk bre*".
      *
-     * The method prints a formatted list of tasks along with their index.
-     * It also indicates if tasks are currently sorted and by which criteria.
-     * If no tasks exist, it informs the user. Execution pauses after displaying.
+     * @param query The words to look for.
+     * @param limit The most tasks to return.
+     * @return the matching tasks, in the order they were added.
      */
-    public void viewTasks()
+    public List<Task> search(String query, int limit)
     {
-        int i = 1;
-        System.out.println("\nYour tasks: ");
-        System.out.println("=====================================================================");
-
-        if (sortBy != null && sortOrder != null)
-            System.out.println("Tasks sorted by " + sortBy + " (" + sortOrder + ")");
-
-        if (tasks.isEmpty())
-            System.out.println("Not tasks yet.");
-        else
+        loadAll();
+        TextIndex current = textIndex();
+        lock.readLock().lock();
+        try
         {
-            for (Task task : tasks)
-            {
-                System.out.println();
-                System.out.println((i++) + ". " + task.toString());
-            }
+            return Collections.unmodifiableList(current.search(query, ids, limit));
+        }
+        finally
+        {
+            lock.readLock().unlock();
         }
-        Pause();
     }
 
     /**
-     * Removes a task from the list by user selection.
+     * Loads the full-text index saved with the tasks, or builds it if the
+     * tasks changed since, the first time a search needs it. Starts that do
+     * not search skip it.
      *
-     * Prompts the user to choose a task number, validates the input, and then
-     * removes the corresponding task. After removal, the updated list is saved
-     * back to the file system. If the input is invalid, the user is asked again.
+     * @return the full-text index.
      */
-    public void removeTask()
+    private TextIndex textIndex()
     {
-        if (tasks.isEmpty())
+        TextIndex current = text;
+        if (current != null)
+            return current;
+        lock.writeLock().lock();
+        try
         {
-            System.out.println("Not tasks to remove.");
-            return;
+            if (text == null)
+            {
+                current = new TextIndex();
+                if (!current.load(new File(dirPath, textIndexFile), TextIndex.fingerprint(tasks)))
+                    current.rebuild(tasks);
+                text = current;
+            }
+            return text;
         }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
 
-        int choice = -1;
-        do
+    /**
+     * Inverts the completion flag of the task with the given ID and passes the
+     * change to the task store.
+     *
+     * @param id The task ID.
+     * @return true if the task existed.
+     */
+    public boolean toggle(long id)
+    {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try
         {
-            System.out.println("\nSelect the number of the task you want to remove: ");
-            System.out.println("\n============================================================================");
-            for (int i = 0; i < tasks.size(); i++)
+            Task task = table != null ? table.forChange(id) : ids.get(id);
+            if (task == null)
+                return false;
+            boolean completed = task.toggleCompleted();
+            synchronized (store)
             {
-                System.out.println((i + 1) + ". " + tasks.get(i));
+                store.completionChanged(task);
+                publish(task); // the state now, so racing toggles end the same on the followers
             }
+            remind(task);
+            if (recording())
+            {
+                TaskState after = TaskState.of(task);
+                if (after.completed() != completed)
+                    after = after.toggled(); // toggled again by another thread meanwhile
+                record(List.of(after.toggled()), List.of(after));
+            }
+            AtomicLongArray current = counts;
+            if (current != null)
+            {
+                current.decrementAndGet(slot(task.getPriority(), !completed));
+                current.incrementAndGet(slot(task.getPriority(), completed));
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        changed(1);
+        metrics.record(DatabaseMetrics.Operation.TOGGLE, start);
+        return true;
+    }
 
-            System.out.println("=============================================================================");
-            System.out.print("\nEnter the task number you want to remove: ");
-            String input = keyboard.nextLine().trim();
+    /**
+     * @return the counters and latency histograms of this database.
+     */
+    public DatabaseMetrics metrics()
+    {
+        return metrics;
+    }
 
+    /**
+     * Counts the tasks with a priority and completion. The counts are built
+     * by one pass over the tasks the first time and then kept up to date by
+     * the changes.
+     *
+     * @return the number of tasks with the given priority and completion.
+     */
+    public long count(Priority priority, boolean completed)
+    {
+        AtomicLongArray current = counts;
+        if (current == null)
+        {
+            lock.writeLock().lock();
             try
             {
-                choice = Integer.parseInt(input);
-                if (choice > 0 && choice <= tasks.size())
-                {
-                    tasks.remove(choice -1);
-                    System.out.println("Task removed!");
-                    saveTasks();
-                }
-                else
+                current = counts;
+                if (current == null)
                 {
-                    System.out.println("\nInvalid task number! Please try again.");
-                    choice = - 1;
+                    current = new AtomicLongArray(Priority.values().length * 2);
+                    if (table != null)
+                    {
+                        // from the table's columns, without building the tasks
+                        Priority[] priorities = Priority.values();
+                        for (int p : table.livePositions())
+                        {
+                            current.incrementAndGet(slot(priorities[table.priority(p)], table.completed(p)));
+                        }
+                    }
+                    else
+                    {
+                        for (Task task : tasks)
+                        {
+                            current.incrementAndGet(slot(task.getPriority(), task.isCompleted()));
+                        }
+                    }
+                    counts = current;
                 }
             }
-            catch (NumberFormatException ex)
+            finally
             {
-                System.out.println("\nInvalid input! Please enter a valid number.");
+                lock.writeLock().unlock();
             }
         }
-        while(choice == -1);
+        return current.get(slot(priority, completed));
+    }
 
-        Pause();
+    private static int slot(Priority priority, boolean completed)
+    {
+        return priority.ordinal() * 2 + (completed ? 1 : 0);
     }
 
     /**
-     * Saves all tasks from memory to the task CSV file.
-     *
-     * Each task is serialized into a single CSV line using
-     * {Task.AsCsvLine()}. Existing file contents are overwritten.
-     * If the file cannot be found or written, an error message is displayed.
+     * Adds a task to the counts, or with -1 removes it, once they are built.
+     * Called with the write lock held.
      */
-    public void saveTasks()
+    private void counted(Task task, int delta)
     {
-        File file = new File (dirPath, taskList);
+        AtomicLongArray current = counts;
+        if (current != null)
+            current.addAndGet(slot(task.getPriority(), task.isCompleted()), delta);
+    }
 
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file, false)))
+    /**
+     * Starts reminding of the deadlines of the open tasks, see
+     * {@link DeadlineReminders}: every open task with a deadline still ahead
+     * gets a timer, and from then on adds, removes, toggles and deadline
+     * changes update the timers. Does nothing but return the running
+     * reminders if there are some.
+     *
+     * @param lead How long before a deadline the first reminder comes.
+     * @param listener Receives the reminders, on the reminder thread.
+     * @return the reminders, {@link DeadlineReminders#close()} stops them.
+     */
+    public synchronized DeadlineReminders remindDeadlines(Duration lead, DeadlineReminders.Listener listener)
+    {
+        if (reminders != null)
+            return reminders;
+        DeadlineReminders started = new DeadlineReminders(this, lead, listener);
+        lock.writeLock().lock();
+        try
         {
-            for (Task task: tasks)
+            if (table != null)
             {
-                writer.println(task.AsCsvLine());
+                // from the table's columns, without building the tasks
+                for (int p : table.livePositions())
+                {
+                    long key = table.completed(p) ? TaskTable.NO_DEADLINE : table.deadlineKey(p);
+                    if (key != TaskTable.NO_DEADLINE)
+                        started.scheduleExisting(table.id(p), LocalDateTime.ofEpochSecond(key, 0, ZoneOffset.UTC), false);
+                }
             }
+            else
+            {
+                for (Task task : tasks)
+                {
+                    started.scheduleExisting(task);
+                }
+            }
+            reminders = started;
         }
-        catch (FileNotFoundException ex)
-        {
-            System.out.println("Cannot open tasks file. Not found.");
-        }
-        catch (IOException ex)
+        finally
         {
-            System.out.println("IO Error in saving tasks data. Should never happen.");
-            ex.printStackTrace();
+            lock.writeLock().unlock();
         }
+        started.start();
+        return started;
     }
 
     /**
-     * Loads tasks from the task CSV file into memory.
-     * Reads each line of the file and attempts to parse it into a {@link Task}.
-     * Parsing includes safe handling of:
-     *
-     *   Description
-     *   Priority (defaults to MEDIUM if invalid)
-     *   Deadline (supports multiple formats or left empty)
-     *   Completion status
-     *
-     * Invalid lines are skipped with a warning. After loading, the total number
-     * of tasks read is displayed.
+     * Called by the reminders when they are closed.
      */
-    public void LoadTasks()
+    synchronized void remindersClosed(DeadlineReminders closed)
     {
-        File file = new File (dirPath, taskList);
-        String line; // Variable for reading each line from the file
-        String[] parts;
-        String description;
-        Priority priority;
-        LocalDateTime deadline;
-        boolean completed;
+        if (reminders == closed)
+            reminders = null;
+    }
 
-        Task newTask; // Task object to be created from each line
+    /**
+     * Updates the reminders of a changed task, if reminders are on.
+     */
+    private void remind(Task task)
+    {
+        DeadlineReminders current = reminders;
+        if (current != null)
+            current.schedule(task);
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file)))
-        {
-            while ((line = reader.readLine()) != null)
-            {
-                parts = line.split(","); // separation of line data based on ","
-                if (parts.length < 2)
-                {
-                    System.out.println("Skipping invalid line (too few fields): " + line);
-                    continue;
-                }
+    /**
+     * Drops the reminders of a removed task, if reminders are on.
+     */
+    private void forget(long id)
+    {
+        DeadlineReminders current = reminders;
+        if (current != null)
+            current.cancel(id);
+    }
 
-                description = parts[0].trim();
+    /**
+     * Starts recording the changes so they can be undone and redone, see
+     * {@link TaskHistory}. Every add, remove, toggle and description or
+     * deadline change is one step. Each step shares all but O(log n) of its
+     * memory with the step before, and the oldest steps are forgotten when
+     * the history needs more than the budget. Does nothing if the history is
+     * already kept.
+     *
+     * @param budgetBytes About the most memory the history may use.
+     */
+    public synchronized void keepHistory(long budgetBytes)
+    {
+        if (history == null)
+            history = new TaskHistory(budgetBytes);
+    }
 
-                // parse priority safely
-                try
-                {
-                    priority = Priority.valueOf(parts[1].trim().replaceAll("[\\[\\]]", ""));
-                }
-                catch (IllegalArgumentException ex)
-                {
-                    System.out.println("Invalid priority in line, defaulting to MEDIUM: " + line);
-                    priority = Priority.MEDIUM;
-                }
+    /**
+     * Undoes the last step that was not undone yet. The tasks it changed get
+     * their earlier state back through the usual changes, so the task store,
+     * the order and the reminders follow; a removed task comes back with its
+     * ID, in its place in the current order.
+     *
+     * @return the number of tasks changed back, 0 if there is nothing to undo.
+     */
+    public int undo()
+    {
+        return restore(true);
+    }
 
-                // parse deadline safely (allow empty or date-only or full datetime)
-                deadline = null;
-                if (parts.length > 2 && !parts[2].trim().isEmpty())
-                {
-                    String deadlineString = parts[2].trim();
-                    try
-                    {
-                        // Try with space: yyyy-MM-dd HH:mm
-                        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-                        deadline = LocalDateTime.parse(deadlineString, formatter);
-                    }
-                    catch (DateTimeParseException ex1)
-                    {
-                        try
-                        {
-                            // Try ISO format (with T): yyyy-MM-ddTHH:mm
-                            deadline = LocalDateTime.parse(deadlineString);
-                        }
-                        catch (DateTimeParseException ex2)
-                        {
-                            try
-                            {
-                                // Try only date
-                                LocalDate date = LocalDate.parse(deadlineString);
-                                deadline = date.atStartOfDay();
-                            }
-                            catch(DateTimeParseException ex3)
-                            {
-                                if (!deadlineString.isEmpty())
-                                    System.out.println("Invalid deadline format, leaving null: " + line);
-                            }
-                        }
-                    }
-                }
+    /**
+     * Does the last undone step again.
+     *
+     * @return the number of tasks changed, 0 if there is nothing to redo.
+     */
+    public int redo()
+    {
+        return restore(false);
+    }
+
+    /**
+     * @return the number of steps that {@link #undo()} can go back.
+     */
+    public int undoSteps()
+    {
+        TaskHistory current = history;
+        return current == null ? 0 : current.undoSteps();
+    }
+
+    /**
+     * @return the number of undone steps that {@link #redo()} can do again.
+     */
+    public int redoSteps()
+    {
+        TaskHistory current = history;
+        return current == null ? 0 : current.redoSteps();
+    }
 
-                completed = false;
-                if (parts.length >= 4)
+    private int restore(boolean undo)
+    {
+        TaskHistory current = history;
+        if (current == null)
+            return 0;
+        lock.writeLock().lock();
+        try
+        {
+            List<TaskState> states = undo ? current.undo() : current.redo();
+            replaying = true;
+            try
+            {
+                for (TaskState state : states)
                 {
-                    completed = Boolean.parseBoolean(parts[3].trim());
+                    restore(state);
                 }
-
-                newTask = new Task(description, priority, deadline); // New task creation
-                newTask.setCompleted(completed);
-                tasks.add(newTask);
             }
+            finally
+            {
+                replaying = false;
+            }
+            return states.size();
         }
-        catch (FileNotFoundException ex)
+        finally
         {
-            System.out.println("Cannot Open File: " + file.getAbsolutePath());
-            return;
+            lock.writeLock().unlock();
         }
-        catch (IOException ex)
+    }
+
+    /**
+     * Brings a task into the given state with the usual changes. Called with
+     * the write lock held, by undo and by replication followers.
+     */
+    void restore(TaskState state)
+    {
+        Task task = get(state.id());
+        if (!state.present() || (task != null && task.getPriority() != state.priority()))
         {
-            System.out.println("Error reading file: " + file.getAbsolutePath());
-            ex.printStackTrace();
-            //return;
+            if (task != null)
+                removeAll(state.id());
+            task = null;
+        }
+        if (!state.present())
+            return;
+        if (task == null)
+        {
+            add(state.toTask(), false);
+            return;
         }
+        if (!task.getDescription().equals(state.description()))
+            setDescription(state.id(), state.description());
+        if (!Objects.equals(task.getDeadline(), state.deadline()))
+            setDeadline(state.id(), state.deadline());
+        if (task.isCompleted() != state.completed())
+            toggle(state.id());
+    }
 
-        System.out.println("Data read successfully. Total tasks: " + tasks.size());
+    /**
+     * @return whether changes are to be recorded in the history.
+     */
+    private boolean recording()
+    {
+        return history != null && !replaying;
+    }
+
+    private void record(List<TaskState> before, List<TaskState> after)
+    {
+        TaskHistory current = history;
+        if (current != null)
+            current.changed(before, after);
+    }
+
+    private void recordRemoved(Collection<Task> removed)
+    {
+        if (removed.isEmpty())
+            return;
+        List<TaskState> before = new ArrayList<>(removed.size());
+        List<TaskState> after = new ArrayList<>(removed.size());
+        for (Task task : removed)
+        {
+            before.add(TaskState.of(task));
+            after.add(TaskState.absent(task.getId()));
+        }
+        record(before, after);
     }
 
     /**
-     * Sorts tasks according to the specified criteria and order.
-     *
-     * The order can be ascending or descending. After sorting, the preferences
-     * are stored and the tasks are displayed.
+     * Streams every change to followers connecting to the given address, see
+     * {@link ReplicationLeader}. Does nothing but return the running leader
+     * if there is one.
      *
-     * @param sortBy The attribute to sort by (priority or deadline).
-     * @param sortOrder The sorting order (ascending or descending).
+     * @param host The address to listen on, e.g. 127.0.0.1.
+     * @param port The port to listen on, 0 for any free port.
+     * @param retained How many of the latest changes are kept for followers that reconnect.
+     * @return the leader, {@link ReplicationLeader#close()} stops it.
+     * @throws IOException if the address cannot be bound.
      */
-    public void sortTasks(SortBy sortBy, SortOrder sortOrder)
+    public synchronized ReplicationLeader lead(String host, int port, int retained) throws IOException
     {
-        Comparator<Task> comparator;
-
-        switch (sortBy)
+        if (leader == null)
         {
-            case PRIORITY:
-                    comparator = Comparator.comparing(Task::getPriority); break;
-            case DEADLINE:
-                comparator = Comparator.comparing(Task::getDeadline, Comparator.nullsLast(Comparator.naturalOrder()));
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown sort option");
+            ReplicationLeader started = new ReplicationLeader(this, new InetSocketAddress(host, port), retained);
+            leader = started;
+            started.start();
         }
+        return leader;
+    }
 
-        // Reverse if user chose descending
-        if (sortOrder == SortOrder.DESCENDING)
+    /**
+     * Makes this database a copy of a leader's, see {@link ReplicationFollower}.
+     * Its tasks are replaced by the leader's and then follow its changes; they
+     * should only be read. Does nothing but return the running follower if
+     * there is one.
+     *
+     * @param host The leader's host.
+     * @param port The leader's replication port.
+     * @return the follower, {@link ReplicationFollower#close()} stops it.
+     */
+    public synchronized ReplicationFollower follow(String host, int port)
+    {
+        if (follower == null)
         {
-            comparator = comparator.reversed();
+            follower = new ReplicationFollower(this, host, port);
+            follower.start();
         }
-        tasks.sort(comparator);
+        return follower;
+    }
 
-        // Save sorting preferences for display
-        this.sortBy = sortBy;
-        this.sortOrder = sortOrder;
+    synchronized void leaderClosed(ReplicationLeader closed)
+    {
+        if (leader == closed)
+            leader = null;
+    }
 
-        viewTasks();
+    synchronized void followerClosed(ReplicationFollower closed)
+    {
+        if (follower == closed)
+            follower = null;
     }
 
     /**
-     * Provides an interactive menu for sorting tasks.
-     *
-     * Input is validated, and the corresponding sorting method is called.
+     * Passes a task in its new state to the replication leader, if there is
+     * one. Called while holding the task store, so the records are in the
+     * order of the store's changes.
      */
-    public void sortTasksMenu()
+    private void publish(Task task)
+    {
+        if (leader != null)
+            publish(TaskState.of(task));
+    }
+
+    private void publish(TaskState state)
     {
-        int choice = -1;
-        do
+        ReplicationLeader current = leader;
+        if (current != null)
+            current.published(ReplicationProtocol.taskRecord(state));
+    }
+
+    /**
+     * Runs an action under the write lock, so no change happens meanwhile.
+     */
+    void exclusive(Runnable action)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            action.run();
+        }
+        finally
         {
-            System.out.println("\nChoose Sorting Option:");
-            System.out.println("----------------------");
-            System.out.println("1. Priority ascending");
-            System.out.println("2. Priority descending");
-            System.out.println("3. Deadline ascending");
-            System.out.println("4. Deadline descending");
-            System.out.println("----------------------");
+            lock.writeLock().unlock();
+        }
+    }
 
-            System.out.print("Enter choice: ");
-            String input = keyboard.nextLine().trim();
+    /**
+     * @return all tasks in the order they were added, the order that tasks
+     *         with equal keys keep when sorted; a changed deadline counts as
+     *         added again.
+     */
+    List<Task> inAddedOrder()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return table != null ? table.inAddedOrder() : index.inAddedOrder();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
 
-            try
+    /**
+     * Makes the tasks exactly the given ones: all tasks are removed and the
+     * given ones added in their order, under the given sort, so they end up
+     * in the order and with the ties of the database they came from.
+     *
+     * @param states The tasks, in the order they were added, see {@link #inAddedOrder()}.
+     * @param sortBy The attribute they are sorted by, null if they are not.
+     * @param sortOrder The direction.
+     */
+    void replaceAll(List<TaskState> states, SortBy sortBy, SortOrder sortOrder)
+    {
+        exclusive(() ->
+        {
+            List<Task> current = getTasks();
+            long[] ids = new long[current.size()];
+            for (int i = 0; i < ids.length; i++)
             {
-                choice = Integer.parseInt(input);
-                switch (choice)
-                {
-                    case 1 -> sortTasks(SortBy.PRIORITY, SortOrder.ASCENDING);
-                    case 2 -> sortTasks(SortBy.PRIORITY, SortOrder.DESCENDING);
-                    case 3 -> sortTasks(SortBy.DEADLINE, SortOrder.ASCENDING);
-                    case 4 -> sortTasks(SortBy.DEADLINE, SortOrder.DESCENDING);
-                    default ->
-                    {
-                        System.out.println("Invalid choice! Enter a number 1-4.");
-                        choice = -1;
-                    }
-                }
+                ids[i] = current.get(i).getId();
             }
-            catch (NumberFormatException ex)
+            removeAll(ids);
+            if (sortBy != null)
+                sortTasks(sortBy, sortOrder);
+            for (TaskState state : states)
             {
-                System.out.println("Invalid input! Please enter a number between 1 and 4.");
+                restore(state);
             }
+        });
+    }
+
+    /**
+     * Hands the changes made since the last flush to the operating system.
+     * Programs making many changes can call it every so often instead of
+     * after every change.
+     */
+    public void flushTasks()
+    {
+        synchronized (store)
+        {
+            store.flush();
         }
-        while(choice == -1);
     }
 
     /**
-     * Toggles the completion status of a selected task.
-     *
-     * The user is prompted to select a task by number. If valid, the task’s
-     * completion flag is inverted (completed ↔ incomplete). Changes are saved
-     * to the task file afterward.
+     * Flushes the changes made since the last flush and waits until they are
+     * on the storage device.
      */
-    public void toggleTaskCompletion()
+    public void syncTasks()
     {
-        if (tasks.isEmpty())
+        synchronized (store)
         {
-            System.out.println("No tasks available.");
-            return;
+            store.flush();
+            store.sync();
         }
+    }
 
-        int choice = -1;
-        do
+    /**
+     * Makes changes durable on a background thread instead of by the caller:
+     * a burst of changes is synced with one {@link #syncTasks()} once the delay
+     * has passed since its first change, or at once when maxChanges are
+     * waiting. When the JVM exits, the waiting changes are synced and all
+     * tasks saved, see {@link PersistenceScheduler}. Does nothing if background
+     * persistence is already on.
+     *
+     * @param delayMillis How long after a change it is synced.
+     * @param maxChanges The number of waiting changes that are synced without delay.
+     */
+    public synchronized void persistInBackground(long delayMillis, int maxChanges)
+    {
+        if (persistence == null)
+            persistence = new PersistenceScheduler(this, delayMillis, maxChanges);
+    }
+
+    /**
+     * Tells background persistence, if it is on, about changes.
+     */
+    private void changed(int count)
+    {
+        PersistenceScheduler current = persistence;
+        if (current != null && count > 0)
+            current.changed(count);
+    }
+
+    /**
+     * Saves all tasks from memory through the task store.
+     *
+     * For the CSV store each task is serialized into a single CSV line using
+     * {Task.AsCsvLine()}. The new snapshot is written to a temporary file
+     * and moved over the old one, after which the tasks log is emptied.
+     * If the file cannot be written, the log is kept, so no change is lost.
+     */
+    public void saveTasks()
+    {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try
         {
-            System.out.println("\nSelect the number of the task to mark complete/incomplete: \n");
-            System.out.println("=====================================================================================");
-            for (int i = 0; i < tasks.size(); i++)
+            synchronized (store)
             {
-                System.out.println((i + 1) + "." + tasks.get(i));
+                store.save(tasks);
             }
-            System.out.println("=====================================================================================");
+            if (table == null && text != null)
+                saveTextIndex();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        metrics.record(DatabaseMetrics.Operation.SAVE, start);
+    }
+
+    /**
+     * Writes the full-text index next to the tasks, so the next start can load
+     * it instead of rebuilding it. A failure only costs that rebuild.
+     */
+    private void saveTextIndex()
+    {
+        try
+        {
+            text.save(new File(dirPath, textIndexFile), TextIndex.fingerprint(tasks), ids);
+        }
+        catch (IOException ex)
+        {
+            warn("An error has occurred while saving the search index.");
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops replication, the reminders and background persistence, flushes the pending changes and releases
+     * the files and threads of the task store. The database must not be used afterwards.
+     */
+    public void close()
+    {
+        ReplicationFollower following = follower;
+        if (following != null)
+            following.close();
+        ReplicationLeader leading = leader;
+        if (leading != null)
+            leading.close();
+        DeadlineReminders running = reminders;
+        if (running != null)
+            running.close();
+        PersistenceScheduler current = persistence;
+        if (current != null)
+            current.close();
+        metrics.unregister();
+        synchronized (store)
+        {
+            store.flush();
+            store.close();
+        }
+    }
 
-            System.out.print("\nEnter task number: ");
-            String input = keyboard.nextLine().trim();
+    /**
+     * Writes all tasks to a CSV file in the tasks.csv format, whichever
+     * store is in use.
+     *
+     * @param file The CSV file to write.
+     */
+    public void exportTasks(File file)
+    {
+        CsvTaskStore export = new CsvTaskStore(file, warnings);
+        export.save(getTasks());
+        export.close();
+    }
 
-            try
+    /**
+     * Loads tasks from the task store into memory.
+     * For the CSV store, parsing includes safe handling of:
+     *
+     *   Description (may be quoted to contain commas)
+     *   Priority (defaults to MEDIUM if invalid)
+     *   Deadline (supports multiple formats or left empty)
+     *   Completion status
+     *
+     * Invalid lines are skipped with a warning from the store.
+     */
+    private void LoadTasks()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (store instanceof CsvTaskStore csv)
             {
-                choice = Integer.parseInt(input);
-                if (choice > 0 && choice <= tasks.size())
+                synchronized (store)
                 {
-                    Task task = tasks.get(choice - 1);
-                    task.setCompleted(!task.isCompleted());
-                    System.out.println("\nTask \"" + task.getDescription() + "\" marked as " + (task.isCompleted() ? "completed" : "incomplete") + "!");
-                    saveTasks();
+                    table = csv.openTable();
                 }
-                else
+                if (table != null)
                 {
-                    System.out.println("\nInvalid task number! Try again.");
-                    choice = -1;
+                    nextId = table.maxId() + 1;
+                    snapshot = null;
+                    return;
                 }
             }
-            catch(NumberFormatException ex)
+
+            synchronized (store)
             {
-                System.out.println("\nInvalid Input! Please enter a valid number.");
+                store.load(tasks);
             }
+            index.addAll(tasks);
+            for (Task task : tasks)
+            {
+                nextId = Math.max(nextId, task.getId() + 1);
+            }
+            for (Task task : tasks)
+            {
+                if (task.getId() == 0)
+                    task.setId(nextId++);
+                ids.put(task);
+            }
+            snapshot = null;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
         }
-        while(choice == -1);
+    }
 
-        Pause();
+    /**
+     * Turns the tasks of a {@link TaskTable} into task objects and builds the
+     * indexes, for the operations that need them. Does nothing once they are loaded.
+     */
+    private void loadAll()
+    {
+        if (table == null)
+            return;
+
+        lock.writeLock().lock();
+        try
+        {
+            if (table == null)
+                return;
+            List<Task> loaded = table.materialize();
+            tasks.addAll(table.view());
+            index.addAll(loaded);
+            for (Task task : loaded)
+            {
+                ids.put(task);
+            }
+            synchronized (store)
+            {
+                ((CsvTaskStore) store).attach(tasks);
+            }
+            table = null;
+            snapshot = null;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
-     * Pauses program execution until the user presses Enter.
+     * Sorts tasks according to the specified criteria and order.
+     *
+     * The order can be ascending or descending. The tasks are not compared,
+     * the list is rebuilt by walking the priority or deadline index, which
+     * keeps tasks without a deadline last when ascending. After sorting, the
+     * preferences are stored. Adds keep the tasks in this order, so sorting
+     * again by the current attribute and direction changes nothing and is
+     * skipped.
      *
-     * This method is intended for console-based interaction only and is skipped
-     * in GUI mode. It ensures the user has time to read console output before
-     * proceeding.
+     * @param sortBy The attribute to sort by (priority or deadline).
+     * @param sortOrder The sorting order (ascending or descending).
      */
-    public void Pause()
+    public void sortTasks(SortBy sortBy, SortOrder sortOrder)
     {
-        boolean interactiveMode = true; // set false in GUI mode
-        if (!interactiveMode) return; // skip pause in GUI mode
-
-        System.out.print("\n\nPress <Enter> to continue....");
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try
+        {
+            if (sortBy == this.sortBy && sortOrder == this.sortOrder)
+                return;
+            if (table != null)
+                table.sort(sortBy, sortOrder);
+            else
+                index.view(sortBy, sortOrder, tasks);
+            snapshot = null;
 
-        // flush any leftover input
-        while (keyboard.hasNextLine())
+            // Save sorting preferences for display
+            this.sortBy = sortBy;
+            this.sortOrder = sortOrder;
+            ReplicationLeader current = leader;
+            if (current != null)
+                current.published(ReplicationProtocol.sortRecord(sortBy, sortOrder));
+        }
+        finally
         {
-            String leftover = keyboard.nextLine();
-            if (leftover.isEmpty()) break;
+            lock.writeLock().unlock();
+            metrics.record(DatabaseMetrics.Operation.SORT, start);
         }
-
-        System.out.println();
     }
 }
@@ -0,0 +1,179 @@
+package todolist.data;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counters and latency histograms of a {@link Database}.
+ *
+ * The database times its own loads, saves, sorts, adds, removes and toggles;
+ * front ends record the time they spend rendering listings. The bytes read
+ * and written come from the task store, the task counts from the database,
+ * which keeps them up to date once they were first asked for.
+ *
+ * Everything is always recorded. {@link #register()} also publishes the
+ * metrics as JMX MBeans, under todolist:type=Database,dir="..." and one
+ * todolist:type=Database,dir="...",operation=... per operation.
+ */
+public final class DatabaseMetrics implements DatabaseMetricsMBean
+{
+    /**
+     * The timed operations.
+     */
+    public enum Operation
+    {
+        LOAD, SAVE, SORT, ADD, REMOVE, TOGGLE, RENDER
+    }
+
+    private final Database dataBase;
+    private final TaskStore store;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    DatabaseMetrics(Database dataBase, TaskStore store)
+    {
+        this.dataBase = dataBase;
+        this.store = store;
+        for (int i = 0; i < latencies.length; i++)
+        {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return the histogram of an operation.
+     */
+    public LatencyHistogram latency(Operation operation)
+    {
+        return latencies[operation.ordinal()];
+    }
+
+    /**
+     * Records an operation that started at the given {@link System#nanoTime()}.
+     */
+    public void record(Operation operation, long startNanos)
+    {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the number of tasks with the given priority and completion.
+     */
+    public long tasks(Priority priority, boolean completed)
+    {
+        return dataBase.count(priority, completed);
+    }
+
+    @Override
+    public long getTasks()
+    {
+        return getOpenTasks() + getCompletedTasks();
+    }
+
+    @Override
+    public long getOpenTasks()
+    {
+        return byCompletion(false);
+    }
+
+    @Override
+    public long getCompletedTasks()
+    {
+        return byCompletion(true);
+    }
+
+    private long byCompletion(boolean completed)
+    {
+        long count = 0;
+        for (Priority priority : Priority.values())
+        {
+            count += tasks(priority, completed);
+        }
+        return count;
+    }
+
+    @Override
+    public long getHighTasks()
+    {
+        return byPriority(Priority.HIGH);
+    }
+
+    @Override
+    public long getMediumTasks()
+    {
+        return byPriority(Priority.MEDIUM);
+    }
+
+    @Override
+    public long getLowTasks()
+    {
+        return byPriority(Priority.LOW);
+    }
+
+    private long byPriority(Priority priority)
+    {
+        return tasks(priority, false) + tasks(priority, true);
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return store.bytesRead();
+    }
+
+    @Override
+    public long getBytesWritten()
+    {
+        return store.bytesWritten();
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server. Does nothing if they
+     * already are; a failure is reported and otherwise ignored.
+     */
+    public synchronized void register()
+    {
+        if (!registered.isEmpty())
+            return;
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            String name = "todolist:type=Database,dir=" + ObjectName.quote(dataBase.dirPath);
+            registered.add(server.registerMBean(this, new ObjectName(name)).getObjectName());
+            for (Operation operation : Operation.values())
+            {
+                ObjectName operationName = new ObjectName(name + ",operation=" + operation.name().toLowerCase());
+                registered.add(server.registerMBean(latency(operation), operationName).getObjectName());
+            }
+        }
+        catch (JMException ex)
+        {
+            dataBase.warn("The database metrics could not be published over JMX: " + ex.getMessage());
+            unregister();
+        }
+    }
+
+    /**
+     * Removes the MBeans published by {@link #register()}.
+     */
+    synchronized void unregister()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered)
+        {
+            try
+            {
+                server.unregisterMBean(name);
+            }
+            catch (JMException ex)
+            {
+                // already gone
+            }
+        }
+        registered.clear();
+    }
+}
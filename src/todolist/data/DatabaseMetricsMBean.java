@@ -0,0 +1,23 @@
+package todolist.data;
+
+/**
+ * The JMX view of the {@link DatabaseMetrics} that are not latencies.
+ */
+public interface DatabaseMetricsMBean
+{
+    long getTasks();
+
+    long getOpenTasks();
+
+    long getCompletedTasks();
+
+    long getHighTasks();
+
+    long getMediumTasks();
+
+    long getLowTasks();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+}
@@ -0,0 +1,253 @@
+package todolist.data;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells a {@link Listener} when the deadline of an open task approaches and
+ * when it passes.
+ *
+ * Every open task with a deadline has one timer in a {@link TimingWheel},
+ * first due the lead time before its deadline and then at the deadline. The
+ * database keeps the timers up to date as tasks are added, removed, completed,
+ * reopened or given another deadline, each change costing O(1); nothing ever
+ * scans the task list. A single daemon thread advances the wheel once a
+ * second and passes the timers that fired to the listener, after looking the
+ * task up again.
+ *
+ * Deadlines that had already passed when the reminders were started are not
+ * reported, {@link TaskQuery#overdue(LocalDateTime)} finds those. A task
+ * added or reopened with a past deadline is reported overdue at once.
+ */
+public final class DeadlineReminders
+{
+    /**
+     * What a reminder is about.
+     */
+    public enum Kind
+    {
+        /** The deadline is less than the lead time away. */
+        DUE_SOON,
+        /** The deadline has passed. */
+        OVERDUE
+    }
+
+    /**
+     * Receives the reminders, on the reminder thread.
+     */
+    public interface Listener
+    {
+        /**
+         * @param task The open task, as it is now.
+         * @param kind Whether its deadline is near or has passed.
+         */
+        void reminded(Task task, Kind kind);
+    }
+
+    private static final long TICK_MILLIS = 1000;
+
+    /**
+     * The timer of a task.
+     */
+    private static final class Reminder extends TimingWheel.Timer
+    {
+        final long id;
+        final long deadline; // in ticks
+        Kind kind;
+
+        Reminder(long id, long deadline)
+        {
+            this.id = id;
+            this.deadline = deadline;
+        }
+    }
+
+    private record Fired(long id, Kind kind)
+    {
+    }
+
+    private final Database dataBase;
+    private final long leadTicks;
+    private final Listener listener;
+    private final TimingWheel wheel;
+    private final HashMap<Long, Reminder> reminders = new HashMap<>();
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final ScheduledThreadPoolExecutor ticker;
+
+    /**
+     * @param dataBase The database whose tasks are reminded of.
+     * @param lead How long before a deadline the first reminder comes.
+     * @param listener Receives the reminders.
+     */
+    DeadlineReminders(Database dataBase, Duration lead, Listener listener)
+    {
+        this.dataBase = dataBase;
+        this.leadTicks = Math.max(lead.toMillis() / TICK_MILLIS, 0);
+        this.listener = listener;
+        this.wheel = new TimingWheel(now());
+        this.ticker = new ScheduledThreadPoolExecutor(1, r ->
+        {
+            Thread thread = new Thread(r, "deadline-reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts the reminder thread, once the tasks are scheduled.
+     */
+    void start()
+    {
+        ticker.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static long now()
+    {
+        return System.currentTimeMillis() / TICK_MILLIS;
+    }
+
+    /**
+     * Schedules the reminders of a task that was there when the reminders
+     * started: past deadlines are left out.
+     */
+    synchronized void scheduleExisting(Task task)
+    {
+        scheduleExisting(task.getId(), task.getDeadline(), task.isCompleted());
+    }
+
+    /**
+     * The same from the fields of a task, for tables that do not build one.
+     */
+    synchronized void scheduleExisting(long id, LocalDateTime deadline, boolean completed)
+    {
+        if (deadline != null && !completed && ticks(deadline) > now())
+            schedule(id, deadline, false);
+    }
+
+    /**
+     * Schedules the reminders of a task that was added or changed, replacing
+     * the ones it had. A completed task or a task without deadline gets none.
+     */
+    synchronized void schedule(Task task)
+    {
+        schedule(task.getId(), task.getDeadline(), task.isCompleted());
+    }
+
+    private void schedule(long id, LocalDateTime deadline, boolean completed)
+    {
+        cancel(id);
+        if (deadline == null || completed)
+            return;
+
+        Reminder reminder = new Reminder(id, ticks(deadline));
+        long now = now();
+        if (reminder.deadline - leadTicks > now)
+        {
+            reminder.kind = Kind.DUE_SOON;
+            reminder.due = reminder.deadline - leadTicks;
+        }
+        else
+        {
+            reminder.kind = reminder.deadline > now ? Kind.DUE_SOON : Kind.OVERDUE;
+            reminder.due = now;
+        }
+        reminders.put(reminder.id, reminder);
+        wheel.schedule(reminder);
+    }
+
+    /**
+     * Drops the reminders of a task, if it has any.
+     */
+    synchronized void cancel(long id)
+    {
+        Reminder reminder = reminders.remove(id);
+        if (reminder != null)
+            wheel.cancel(reminder);
+    }
+
+    private long ticks(LocalDateTime deadline)
+    {
+        return deadline.atZone(zone).toInstant().toEpochMilli() / TICK_MILLIS;
+    }
+
+    /**
+     * @return the number of tasks waiting for a reminder.
+     */
+    public synchronized int pending()
+    {
+        return reminders.size();
+    }
+
+    /**
+     * Advances the wheel to the current second and passes on what fired. A
+     * task reminded that it is due soon gets its overdue reminder scheduled.
+     */
+    private void tick()
+    {
+        List<Fired> fired = new ArrayList<>();
+        synchronized (this)
+        {
+            wheel.advance(now(), timer ->
+            {
+                Reminder reminder = (Reminder) timer;
+                fired.add(new Fired(reminder.id, reminder.kind));
+                if (reminder.kind == Kind.DUE_SOON)
+                {
+                    reminder.kind = Kind.OVERDUE;
+                    reminder.due = reminder.deadline;
+                    wheel.schedule(reminder);
+                }
+                else
+                {
+                    reminders.remove(reminder.id);
+                }
+            });
+        }
+
+        // outside the lock: the database takes its own while changing tasks
+        for (Fired reminder : fired)
+        {
+            Task task = dataBase.get(reminder.id());
+            if (task == null || task.isCompleted())
+                continue;
+            try
+            {
+                listener.reminded(task, reminder.kind());
+            }
+            catch (RuntimeException ex)
+            {
+                dataBase.warn("An error has occurred while reminding of a deadline.");
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops the reminder thread and drops the reminders. The database stops
+     * scheduling reminders; {@link Database#remindDeadlines(Duration, Listener)}
+     * can start new ones.
+     */
+    public void close()
+    {
+        dataBase.remindersClosed(this);
+        ticker.shutdownNow();
+        try
+        {
+            ticker.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this)
+        {
+            reminders.clear();
+        }
+    }
+}
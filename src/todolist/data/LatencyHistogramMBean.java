@@ -0,0 +1,23 @@
+package todolist.data;
+
+/**
+ * The JMX view of a {@link LatencyHistogram}, times in microseconds.
+ */
+public interface LatencyHistogramMBean
+{
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
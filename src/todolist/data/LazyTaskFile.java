@@ -0,0 +1,428 @@
+package todolist.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * On-demand access to the tasks of a tasks.csv snapshot, so a large file can
+ * be opened without building a task for every row.
+ *
+ * Opening scans the file once without decoding descriptions or deadlines. For
+ * every valid row it keeps the byte offset and length, the ID, the priority
+ * and the completion in primitive arrays, about 21 bytes per row. A task is decoded from its row
+ * when a view, a lookup or a change touches it, and kept in a bounded cache of
+ * recently used tasks. Tasks about to change are pinned in memory instead, and
+ * added tasks are kept in memory.
+ *
+ * Sorting by priority uses the priorities of the scan, the first sort by
+ * deadline reads every deadline once into a long array.
+ *
+ * A new snapshot copies unchanged rows byte for byte from this file and only
+ * encodes the tasks that changed or got their ID at load.
+ *
+ * The scan reports lines with too few fields like a full load does. Invalid
+ * priorities and deadlines get their defaults without a warning.
+ */
+final class LazyTaskFile extends TaskTable
+{
+    static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    private final FileChannel channel;
+    private final int cacheSize;
+    private final int rows;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final long[] rowIds;
+    private final byte[] priorities;
+    private final BitSet completedRows = new BitSet();
+    private final BitSet assignedIds = new BitSet();
+    private long[] deadlines;
+
+    private final ArrayList<Task> added = new ArrayList<>();
+    private final HashMap<Integer, Task> pinned = new HashMap<>();
+    private final LinkedHashMap<Integer, Task> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private Task[] materialized;
+
+    /**
+     * @return the number of decoded tasks to cache, from the todolist.load.cache property.
+     */
+    static int cacheSize()
+    {
+        return Math.max(Integer.getInteger("todolist.load.cache", DEFAULT_CACHE_SIZE), 1);
+    }
+
+    /**
+     * Scans a tasks file.
+     *
+     * @param file The tasks file, kept open until {@link #close()}.
+     * @param length The number of bytes holding rows, see {@link SnapshotTrailer}.
+     * @param rows The number of rows if known, to size the arrays, or -1.
+     * @param cacheSize The most unchanged tasks kept decoded.
+     * @param warnings Receives the warnings about invalid lines.
+     * @throws IOException if reading the file fails.
+     */
+    static LazyTaskFile open(File file, long length, long rows, int cacheSize, Consumer<String> warnings) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try
+        {
+            return new LazyTaskFile(channel, length, rows, cacheSize, warnings);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private LazyTaskFile(FileChannel channel, long length, long expectedRows, int cacheSize, Consumer<String> warnings)
+            throws IOException
+    {
+        this.channel = channel;
+        this.cacheSize = cacheSize;
+
+        int capacity = (int) Math.min(Math.max(expectedRows >= 0 ? expectedRows : length / 32, 16), Integer.MAX_VALUE - 8);
+        long[] offsets = new long[capacity];
+        int[] lengths = new int[capacity];
+        long[] ids = new long[capacity];
+        byte[] priorities = new byte[capacity];
+        int count = 0;
+
+        TaskCsvReader reader = new TaskCsvReader(new ChannelInput(channel), warnings);
+        reader.stopAt(length);
+        long start = 0;
+        while (reader.nextRecord())
+        {
+            if (reader.fieldCount() < 2)
+            {
+                reader.toTask(0); // reports the line like a full load
+            }
+            else
+            {
+                if (count == offsets.length)
+                {
+                    int grown = (int) Math.min(count * 2L, Integer.MAX_VALUE - 8);
+                    offsets = Arrays.copyOf(offsets, grown);
+                    lengths = Arrays.copyOf(lengths, grown);
+                    ids = Arrays.copyOf(ids, grown);
+                    priorities = Arrays.copyOf(priorities, grown);
+                }
+                offsets[count] = start;
+                lengths[count] = (int) (reader.offset() - start);
+                ids[count] = reader.recordId();
+                priorities[count] = (byte) reader.recordPriority().ordinal();
+                if (reader.recordCompleted())
+                    completedRows.set(count);
+                count++;
+            }
+            start = reader.offset();
+        }
+
+        this.rows = count;
+        this.offsets = Arrays.copyOf(offsets, count);
+        this.lengths = Arrays.copyOf(lengths, count);
+        this.rowIds = Arrays.copyOf(ids, count);
+        this.priorities = Arrays.copyOf(priorities, count);
+
+        // rows without an ID are numbered on from the highest one, as by a full load
+        long nextId = 1;
+        for (int p = 0; p < rows; p++)
+        {
+            nextId = Math.max(nextId, rowIds[p] + 1);
+        }
+        for (int p = 0; p < rows; p++)
+        {
+            if (rowIds[p] == 0)
+            {
+                rowIds[p] = nextId++;
+                assignedIds.set(p);
+            }
+        }
+        loaded(rows, nextId - 1);
+    }
+
+    @Override
+    int positions()
+    {
+        return rows + added.size();
+    }
+
+    @Override
+    long id(int position)
+    {
+        return position < rows ? rowIds[position] : added.get(position - rows).getId();
+    }
+
+    @Override
+    int priority(int position)
+    {
+        return position < rows ? priorities[position] : added.get(position - rows).getPriority().ordinal();
+    }
+
+    @Override
+    long deadlineKey(int position)
+    {
+        return position < rows ? deadlines()[position] : key(added.get(position - rows).getDeadline());
+    }
+
+    /**
+     * The completion of a file row comes from the scan until the row's task
+     * is kept in memory, where it may have been toggled.
+     */
+    @Override
+    boolean completed(int position)
+    {
+        if (position >= rows)
+            return added.get(position - rows).isCompleted();
+        if (materialized != null)
+            return materialized[position].isCompleted();
+        Task changed = pinned.get(position);
+        return changed != null ? changed.isCompleted() : completedRows.get(position);
+    }
+
+    @Override
+    int store(Task task)
+    {
+        added.add(task);
+        return rows + added.size() - 1;
+    }
+
+    /**
+     * Keeps a task that is about to change in memory: the next snapshot
+     * encodes it instead of copying its row.
+     */
+    @Override
+    void changing(int position)
+    {
+        if (position < rows && materialized == null)
+        {
+            pinned.put(position, decode(position));
+            cache.remove(position);
+        }
+    }
+
+    @Override
+    void removing(int position)
+    {
+        pinned.remove(position);
+        cache.remove(position);
+    }
+
+    @Override
+    synchronized List<Task> materialize()
+    {
+        if (materialized == null)
+        {
+            Task[] all = new Task[rows + added.size()];
+            try
+            {
+                TaskCsvReader reader = new TaskCsvReader(new ChannelInput(channel), warning -> { });
+                Task task;
+                for (int p = 0; p < rows && (task = reader.readTask()) != null; p++)
+                {
+                    Task known = pinned.get(p);
+                    if (known == null)
+                        known = cache.get(p);
+                    if (known == null)
+                    {
+                        task.setId(rowIds[p]);
+                        known = task;
+                    }
+                    all[p] = known;
+                }
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException("Error reading tasks file", ex);
+            }
+            for (int i = 0; i < added.size(); i++)
+            {
+                all[rows + i] = added.get(i);
+            }
+            materialized = all;
+            pinned.clear();
+            cache.clear();
+        }
+
+        List<Task> live = new ArrayList<>(materialized.length);
+        for (int p : livePositions())
+        {
+            live.add(materialized[p]);
+        }
+        return live;
+    }
+
+    @Override
+    synchronized TaskLog.Snapshot snapshot()
+    {
+        int[] positions = currentOrder();
+        Map<Integer, Task> changedTasks = new HashMap<>(pinned);
+        for (int i = 0; i < added.size(); i++)
+        {
+            changedTasks.put(rows + i, added.get(i));
+        }
+        return out -> write(positions, changedTasks, out);
+    }
+
+    private long write(int[] positions, Map<Integer, Task> changedTasks, OutputStream out) throws IOException
+    {
+        byte[] newline = System.lineSeparator().getBytes();
+        byte[] row = new byte[256];
+        for (int position : positions)
+        {
+            Task task = changedTasks.get(position);
+            if (task == null && assignedIds.get(position))
+                task = read(position);
+            if (task != null)
+            {
+                out.write(task.AsCsvLine().getBytes());
+                out.write(newline);
+                continue;
+            }
+
+            int length = lengths[position];
+            if (length > row.length)
+                row = new byte[Math.max(length, row.length * 2)];
+            readRow(position, row);
+            out.write(row, 0, length);
+            if (row[length - 1] != '\n' && row[length - 1] != '\r')
+                out.write(newline); // the last line of the file had no line break
+        }
+        return positions.length;
+    }
+
+    /**
+     * Releases the file.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    @Override
+    Task decode(int position)
+    {
+        if (materialized != null)
+            return materialized[position];
+        if (position >= rows)
+            return added.get(position - rows);
+
+        Task task = pinned.get(position);
+        if (task == null)
+            task = cache.get(position);
+        if (task == null)
+        {
+            try
+            {
+                task = read(position);
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException("Error reading tasks file", ex);
+            }
+            cache.put(position, task);
+            if (cache.size() > cacheSize)
+            {
+                Iterator<Integer> eldest = cache.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Decodes the row at a position of the file.
+     */
+    private Task read(int position) throws IOException
+    {
+        byte[] row = new byte[lengths[position]];
+        readRow(position, row);
+        TaskCsvReader reader = new TaskCsvReader(new ByteArrayInputStream(row), warning -> { }, row.length);
+        Task task = reader.readTask();
+        task.setId(rowIds[position]);
+        return task;
+    }
+
+    private void readRow(int position, byte[] row) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(row, 0, lengths[position]);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, offsets[position] + buffer.position()) < 0)
+                throw new EOFException("Tasks file was truncated");
+        }
+    }
+
+    /**
+     * @return the deadline keys of the file rows, read in one pass the first time.
+     */
+    private long[] deadlines()
+    {
+        if (deadlines != null)
+            return deadlines;
+
+        long[] keys = new long[rows];
+        try
+        {
+            TaskCsvReader reader = new TaskCsvReader(new ChannelInput(channel), warning -> { });
+            int p = 0;
+            while (p < rows && reader.nextRecord())
+            {
+                if (reader.fieldCount() >= 2)
+                    keys[p++] = key(reader.recordDeadline());
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException("Error reading tasks file", ex);
+        }
+        deadlines = keys;
+        return keys;
+    }
+
+    private static long key(LocalDateTime deadline)
+    {
+        return deadline == null ? NO_DEADLINE : deadline.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Reads a file channel from the start as a stream, without moving the
+     * channel's own position.
+     */
+    private static final class ChannelInput extends InputStream
+    {
+        private final FileChannel channel;
+        private long position;
+
+        ChannelInput(FileChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) <= 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            if (length == 0)
+                return 0;
+            int n = channel.read(ByteBuffer.wrap(bytes, offset, length), position);
+            if (n > 0)
+                position += n;
+            return n;
+        }
+    }
+}
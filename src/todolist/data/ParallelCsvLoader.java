@@ -0,0 +1,229 @@
+package todolist.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Loads a large tasks file on the common fork-join pool.
+ *
+ * The file is cut into byte ranges that start after a line break. Each range
+ * is memory-mapped and parsed by its own {@link TaskCsvReader} into a task list
+ * of its own, and the lists are then appended in file order. The readers are
+ * the same as for a sequential load, so invalid lines get the same defaults and
+ * warnings; the warnings are collected per range and printed in file order.
+ *
+ * A cut can fall inside a quoted description that spans lines. The parse is
+ * only used if every range but the last ended outside quotes: the first range
+ * starts at a record, and a range ending at a record end means the next one
+ * starts at one too, so the result is the sequential result. Otherwise
+ * {@link #load} returns false and the caller reads the file sequentially.
+ */
+final class ParallelCsvLoader
+{
+    static final long MIN_CHUNK = 1 << 20;
+    static final long MAX_CHUNK = 1 << 30;
+    static final long PARALLEL_THRESHOLD = 8 << 20;
+
+    private ParallelCsvLoader()
+    {
+    }
+
+    /**
+     * Whether a file of the given size should be loaded in parallel. The system
+     * property todolist.load.parallel=true or false forces the choice; by
+     * default files of 8 MB and more are, when there is more than one CPU.
+     */
+    static boolean worthwhile(long size)
+    {
+        String forced = System.getProperty("todolist.load.parallel");
+        if (forced != null)
+            return Boolean.parseBoolean(forced) && size > 0;
+        return size >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Appends the tasks of a file to a list, parsing ranges of it in parallel.
+     *
+     * @param file The tasks file.
+     * @param size The number of bytes holding rows, see {@link SnapshotTrailer}.
+     * @param tasks The list to append to, left untouched when false is returned.
+     * @param warnings Receives the warnings about invalid lines, in file order.
+     * @return false if the ranges did not line up with records.
+     * @throws IOException if reading the file fails.
+     */
+    static boolean load(File file, long size, List<Task> tasks, Consumer<String> warnings) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            int count = (int) Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4L, size / MIN_CHUNK));
+            count = (int) Math.max(count, (size + MAX_CHUNK - 1) / MAX_CHUNK);
+
+            long[] bounds = new long[count + 1];
+            bounds[count] = size;
+            for (int i = 1; i < count; i++)
+            {
+                bounds[i] = nextLineStart(channel, Math.max(bounds[i - 1], size / count * i), size);
+            }
+
+            Chunk[] chunks = new Chunk[count];
+            try
+            {
+                ForkJoinPool.commonPool().invoke(new Parse(channel, bounds, chunks, 0, count));
+            }
+            catch (UncheckedIOException ex)
+            {
+                throw ex.getCause();
+            }
+
+            for (int i = 0; i < count - 1; i++)
+            {
+                if (chunks[i].endedInQuotes)
+                    return false;
+            }
+
+            int total = 0;
+            for (Chunk chunk : chunks)
+            {
+                total += chunk.tasks.size();
+            }
+            if (tasks instanceof ArrayList<Task> list)
+                list.ensureCapacity(list.size() + total);
+            for (Chunk chunk : chunks)
+            {
+                chunk.warnings.forEach(warnings);
+                tasks.addAll(chunk.tasks);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the position after the first line break at or after from, or the end.
+     */
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        long position = from;
+        while (position < size)
+        {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; i++)
+            {
+                if (buffer.get(i) == '\n')
+                    return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * The parse result of one byte range.
+     */
+    private static final class Chunk
+    {
+        final ArrayList<Task> tasks = new ArrayList<>();
+        final List<String> warnings = new ArrayList<>();
+        boolean endedInQuotes;
+    }
+
+    /**
+     * Parses the ranges lo..hi-1, splitting in halves until one range is left.
+     */
+    @SuppressWarnings("serial") // never serialized
+    private static final class Parse extends RecursiveAction
+    {
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final Chunk[] chunks;
+        private final int lo;
+        private final int hi;
+
+        Parse(FileChannel channel, long[] bounds, Chunk[] chunks, int lo, int hi)
+        {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (hi - lo > 1)
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Parse(channel, bounds, chunks, lo, mid), new Parse(channel, bounds, chunks, mid, hi));
+                return;
+            }
+
+            Chunk chunk = new Chunk();
+            long start = bounds[lo];
+            long length = bounds[lo + 1] - start;
+            if (length > 0)
+            {
+                try
+                {
+                    ByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    TaskCsvReader reader = new TaskCsvReader(new BufferInput(range), chunk.warnings::add);
+                    Task task;
+                    while ((task = reader.readTask()) != null)
+                    {
+                        chunk.tasks.add(task);
+                    }
+                    chunk.endedInQuotes = reader.endedInQuotes();
+                }
+                catch (IOException ex)
+                {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            chunks[lo] = chunk;
+        }
+    }
+
+    /**
+     * Reads a byte buffer as a stream.
+     */
+    private static final class BufferInput extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (length == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+    }
+}
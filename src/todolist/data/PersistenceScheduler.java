@@ -0,0 +1,131 @@
+package todolist.data;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the changes of a {@link Database} durable on a background thread.
+ *
+ * The first change after a write schedules the next one after a delay, so a
+ * burst of changes costs one write instead of one per change. Once the given
+ * number of changes is waiting, the write is started at once instead. A write
+ * hands the buffered log records to the operating system and forces them to
+ * disk, see {@link Database#syncTasks()}.
+ *
+ * A shutdown hook writes what is still waiting and saves a full snapshot when
+ * the JVM exits, by the end of the program or by a signal.
+ */
+final class PersistenceScheduler
+{
+    private final Database dataBase;
+    private final long delayMillis;
+    private final int maxPending;
+    private final ScheduledThreadPoolExecutor writer;
+    private final Thread shutdownHook;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean urgent = new AtomicBoolean();
+
+    /**
+     * @param dataBase The database to write.
+     * @param delayMillis How long after a change the write starts.
+     * @param maxPending The number of waiting changes that starts a write at once.
+     */
+    PersistenceScheduler(Database dataBase, long delayMillis, int maxPending)
+    {
+        this.dataBase = dataBase;
+        this.delayMillis = Math.max(delayMillis, 0);
+        this.maxPending = Math.max(maxPending, 1);
+        this.writer = new ScheduledThreadPoolExecutor(1, r ->
+        {
+            Thread thread = new Thread(r, "task-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false); // the final write takes over
+        this.shutdownHook = new Thread(this::finish, "task-persistence-exit");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Counts changes and schedules the write that will contain them.
+     */
+    void changed(int count)
+    {
+        if (pending.addAndGet(count) >= maxPending && urgent.compareAndSet(false, true))
+            submit(0);
+        else if (scheduled.compareAndSet(false, true))
+            submit(delayMillis);
+    }
+
+    private void submit(long delay)
+    {
+        try
+        {
+            writer.schedule(this::write, delay, TimeUnit.MILLISECONDS);
+        }
+        catch (RuntimeException ex)
+        {
+            // shut down: the final write in close() or the shutdown hook covers the change
+        }
+    }
+
+    /**
+     * Writes the changes counted so far. The flags are cleared first, so a
+     * change made during the write schedules another one.
+     */
+    private void write()
+    {
+        scheduled.set(false);
+        urgent.set(false);
+        if (pending.getAndSet(0) == 0)
+            return;
+        try
+        {
+            dataBase.syncTasks();
+        }
+        catch (RuntimeException ex)
+        {
+            dataBase.warn("An error has occurred while writing the tasks in the background.");
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Run by the shutdown hook: writes the waiting changes and a full snapshot.
+     */
+    private void finish()
+    {
+        writer.shutdown();
+        write();
+        dataBase.saveTasks();
+    }
+
+    /**
+     * Stops the background thread after a write already running and writes
+     * the changes still waiting. The shutdown hook is no longer needed.
+     */
+    void close()
+    {
+        try
+        {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+        catch (IllegalStateException ex)
+        {
+            // the JVM is already shutting down and the hook runs
+        }
+        writer.shutdown();
+        try
+        {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        write();
+    }
+}
@@ -0,0 +1,198 @@
+package todolist.data;
+
+import java.util.function.LongConsumer;
+
+/**
+ * An immutable map from task ID to {@link TaskState}, kept as a hash array
+ * mapped trie: nodes of up to 32 children, one for every 5 bits of the key,
+ * each with a bitmap of the children it has and an array of just those.
+ *
+ * {@link #put(TaskState, long[])} copies only the nodes on the path to the
+ * entry, O(log n) of them, and shares the rest with the old map. Two maps
+ * derived from each other are compared by {@link #diff(PersistentTaskMap, LongConsumer)}
+ * in time proportional to what differs, by skipping every subtree they share.
+ *
+ * The key is the ID scrambled by an invertible function, so keys never
+ * collide and a trie is at most 13 levels deep.
+ */
+final class PersistentTaskMap
+{
+    static final PersistentTaskMap EMPTY = new PersistentTaskMap(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final long NODE_BYTES = 40; // the node with its bitmap and the header of its array
+    private static final long SLOT_BYTES = 4; // a compressed reference
+
+    /**
+     * A node of the trie, its slots are nodes and states.
+     */
+    private static final class Node
+    {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots)
+        {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentTaskMap(Node root, int size)
+    {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    int size()
+    {
+        return size;
+    }
+
+    private static long key(long id)
+    {
+        long hash = id * 0x9E3779B97F4A7C15L; // odd, so invertible
+        return hash ^ (hash >>> 32);
+    }
+
+    /**
+     * @return the state of the ID, or null if the map has none.
+     */
+    TaskState get(long id)
+    {
+        long key = key(id);
+        Node node = root;
+        for (int shift = 0; node != null; shift += BITS)
+        {
+            int bit = 1 << (int) ((key >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0)
+                return null;
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof TaskState state)
+                return state.id() == id ? state : null;
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a map with the state put in for its ID.
+     *
+     * @param state The state.
+     * @param allocated The bytes of the new nodes and the state are added to its first element.
+     * @return the new map, sharing all but the changed path with this one.
+     */
+    PersistentTaskMap put(TaskState state, long[] allocated)
+    {
+        boolean added = get(state.id()) == null;
+        allocated[0] += state.bytes();
+        return new PersistentTaskMap(put(root, key(state.id()), 0, state, allocated), added ? size + 1 : size);
+    }
+
+    private static Node put(Node node, long key, int shift, TaskState state, long[] allocated)
+    {
+        int bit = 1 << (int) ((key >>> shift) & MASK);
+        if (node == null)
+        {
+            allocated[0] += NODE_BYTES + SLOT_BYTES;
+            return new Node(bit, new Object[] {state});
+        }
+
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object[] slots;
+        if ((node.bitmap & bit) == 0)
+        {
+            slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            slots[index] = state;
+            allocated[0] += NODE_BYTES + SLOT_BYTES * slots.length;
+            return new Node(node.bitmap | bit, slots);
+        }
+
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node child)
+        {
+            replacement = put(child, key, shift + BITS, state, allocated);
+        }
+        else
+        {
+            TaskState existing = (TaskState) slot;
+            if (existing.id() == state.id())
+            {
+                replacement = state;
+            }
+            else
+            {
+                // two keys share the prefix so far: push both one level down
+                Node split = put(null, key(existing.id()), shift + BITS, existing, allocated);
+                replacement = put(split, key, shift + BITS, state, allocated);
+            }
+        }
+        slots = node.slots.clone();
+        slots[index] = replacement;
+        allocated[0] += NODE_BYTES + SLOT_BYTES * slots.length;
+        return new Node(node.bitmap, slots);
+    }
+
+    /**
+     * Passes on the IDs whose entries differ between this map and another,
+     * IDs in only one of them included. Subtrees the maps share are skipped,
+     * so comparing a map with the one it was derived from costs about the
+     * number of changed entries times the depth. An ID may be passed more
+     * than once.
+     */
+    void diff(PersistentTaskMap other, LongConsumer ids)
+    {
+        diff(root, other.root, ids);
+    }
+
+    private static void diff(Object a, Object b, LongConsumer ids)
+    {
+        if (a == b)
+            return;
+        if (a instanceof Node left && b instanceof Node right)
+        {
+            int bits = left.bitmap | right.bitmap;
+            while (bits != 0)
+            {
+                int bit = Integer.lowestOneBit(bits);
+                bits &= ~bit;
+                diff(slot(left, bit), slot(right, bit), ids);
+            }
+        }
+        else
+        {
+            all(a, ids);
+            all(b, ids);
+        }
+    }
+
+    private static Object slot(Node node, int bit)
+    {
+        return (node.bitmap & bit) == 0 ? null : node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+    }
+
+    private static void all(Object slot, LongConsumer ids)
+    {
+        if (slot instanceof TaskState state)
+        {
+            ids.accept(state.id());
+        }
+        else if (slot instanceof Node node)
+        {
+            for (Object child : node.slots)
+            {
+                all(child, ids);
+            }
+        }
+    }
+}
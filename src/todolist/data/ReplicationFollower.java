@@ -0,0 +1,214 @@
+package todolist.data;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a {@link Database} a copy of the one of a {@link ReplicationLeader}.
+ *
+ * A daemon thread connects to the leader and applies what it sends: a
+ * snapshot replaces all tasks, records change single tasks or the order. A
+ * frame of records is applied under one write lock, so readers never see
+ * half of it, and the offset reached is sent back without the leader
+ * waiting for it. When the connection breaks, or the leader stays silent for
+ * several heartbeats, the follower connects again every second and continues
+ * from its offset. The tasks are changed through the database as usual, so
+ * its own task store keeps them on disk; they should not be changed
+ * otherwise, the next snapshot would undo it.
+ */
+public final class ReplicationFollower
+{
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long RETRY_MILLIS = 1000;
+
+    /**
+     * A sort record.
+     */
+    private record Sort(SortBy sortBy, SortOrder sortOrder)
+    {
+    }
+
+    private final Database dataBase;
+    private final InetSocketAddress leader;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean connected;
+    private volatile Socket socket;
+    private long epoch;
+    private volatile long offset;
+
+    /**
+     * @param dataBase The database to keep a copy in.
+     * @param host The leader's host.
+     * @param port The leader's replication port.
+     */
+    ReplicationFollower(Database dataBase, String host, int port)
+    {
+        this.dataBase = dataBase;
+        this.leader = new InetSocketAddress(host, port);
+        this.thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+    }
+
+    void start()
+    {
+        thread.start();
+    }
+
+    /**
+     * @return whether the follower is connected to the leader.
+     */
+    public boolean isConnected()
+    {
+        return connected;
+    }
+
+    /**
+     * @return the offset of the next record to apply.
+     */
+    public long offset()
+    {
+        return offset;
+    }
+
+    private void run()
+    {
+        boolean reported = false;
+        while (running)
+        {
+            try
+            {
+                follow();
+            }
+            catch (IOException ex)
+            {
+                if (running && (connected || !reported))
+                    dataBase.warn("Lost the replication leader " + leader + " ("
+                            + (ex.getMessage() != null ? ex.getMessage() : "disconnected") + "), retrying.");
+                reported = true;
+            }
+            connected = false;
+            try
+            {
+                Thread.sleep(RETRY_MILLIS);
+            }
+            catch (InterruptedException ex)
+            {
+                return; // closed
+            }
+        }
+    }
+
+    private void follow() throws IOException
+    {
+        try (Socket connection = new Socket())
+        {
+            socket = connection;
+            if (!running)
+                return;
+            connection.connect(leader, CONNECT_TIMEOUT_MILLIS);
+            connection.setSoTimeout((int) (ReplicationLeader.HEARTBEAT_MILLIS * 5));
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+            out.writeInt(ReplicationProtocol.MAGIC);
+            out.writeLong(epoch);
+            out.writeLong(offset);
+            out.flush();
+
+            while (running)
+            {
+                byte frame = in.readByte();
+                switch (frame)
+                {
+                    case ReplicationProtocol.SNAPSHOT -> applySnapshot(in);
+                    case ReplicationProtocol.RECORDS -> applyRecords(in);
+                    case ReplicationProtocol.HEARTBEAT -> in.readLong();
+                    default -> throw new StreamCorruptedException("Unknown replication frame " + frame);
+                }
+                connected = true;
+                out.writeLong(offset);
+                out.flush();
+            }
+        }
+    }
+
+    private void applySnapshot(DataInputStream in) throws IOException
+    {
+        long snapshotEpoch = in.readLong();
+        long snapshotOffset = in.readLong();
+        SortBy sortBy = ReplicationProtocol.readSortBy(in);
+        SortOrder sortOrder = ReplicationProtocol.readSortOrder(in);
+        int count = in.readInt();
+        List<TaskState> states = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            states.add(ReplicationProtocol.readState(in));
+        }
+        dataBase.replaceAll(states, sortBy, sortOrder);
+        epoch = snapshotEpoch;
+        offset = snapshotOffset;
+    }
+
+    private void applyRecords(DataInputStream in) throws IOException
+    {
+        long first = in.readLong();
+        int count = in.readInt();
+        if (first != offset)
+            throw new StreamCorruptedException("Records from " + first + ", expected " + offset);
+        List<Object> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            byte kind = in.readByte();
+            switch (kind)
+            {
+                case ReplicationProtocol.TASK -> records.add(ReplicationProtocol.readState(in));
+                case ReplicationProtocol.SORT -> records.add(new Sort(ReplicationProtocol.readSortBy(in), ReplicationProtocol.readSortOrder(in)));
+                default -> throw new StreamCorruptedException("Unknown replication record " + kind);
+            }
+        }
+        dataBase.exclusive(() ->
+        {
+            for (Object record : records)
+            {
+                if (record instanceof TaskState state)
+                    dataBase.restore(state);
+                else if (record instanceof Sort sort && sort.sortBy() != null)
+                    dataBase.sortTasks(sort.sortBy(), sort.sortOrder());
+            }
+        });
+        offset = first + count;
+    }
+
+    /**
+     * Disconnects and stops the thread.
+     */
+    public void close()
+    {
+        running = false;
+        dataBase.followerClosed(this);
+        Socket current = socket;
+        try
+        {
+            if (current != null)
+                current.close();
+        }
+        catch (IOException ex)
+        {
+            // closing anyway
+        }
+        thread.interrupt();
+        try
+        {
+            thread.join(CONNECT_TIMEOUT_MILLIS);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package todolist.data;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streams the changes of a {@link Database} to {@link ReplicationFollower}s
+ * over TCP.
+ *
+ * Every change is published as a record, in the order the task store gets
+ * it, and numbered by its offset. The latest records are kept in a ring; a
+ * follower that connects with an offset still in the ring continues from
+ * there, any other follower first gets a snapshot of all tasks together with
+ * the offset it stands for. The leader is identified by a random epoch, so a
+ * follower of an earlier leader also starts from a snapshot.
+ *
+ * Each follower has a virtual thread that sends all the records waiting for
+ * it as one frame, up to {@link #MAX_BATCH}, and never waits for the
+ * follower to confirm them: the follower's offsets come back on the same
+ * connection and only measure its lag. A follower that falls so far behind
+ * that its records left the ring is disconnected and gets a snapshot when it
+ * comes back.
+ */
+public final class ReplicationLeader
+{
+    static final int MAX_BATCH = 4096;
+    static final long HEARTBEAT_MILLIS = 1000;
+
+    /**
+     * A connected follower.
+     */
+    private static final class Follower
+    {
+        final Socket socket;
+        volatile long acknowledged;
+
+        Follower(Socket socket, long acknowledged)
+        {
+            this.socket = socket;
+            this.acknowledged = acknowledged;
+        }
+    }
+
+    private final Database dataBase;
+    private final long epoch;
+    private final byte[][] records;
+    private final int mask;
+    private long next; // the offset of the next record
+    private final ReentrantLock lock = new ReentrantLock(); // not a monitor, the senders are virtual threads
+    private final Condition arrived = lock.newCondition();
+    private final ServerSocket server;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Follower> followers = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    /**
+     * @param dataBase The database whose changes are sent.
+     * @param address The address to listen on.
+     * @param retained The number of records kept for followers that reconnect, rounded up to a power of two.
+     * @throws IOException if the address cannot be bound.
+     */
+    ReplicationLeader(Database dataBase, InetSocketAddress address, int retained) throws IOException
+    {
+        this.dataBase = dataBase;
+        long random = new SecureRandom().nextLong();
+        this.epoch = random == 0 ? 1 : random;
+        int capacity = Integer.highestOneBit(Math.max(retained, 2) - 1) << 1;
+        this.records = new byte[capacity][];
+        this.mask = capacity - 1;
+        this.server = new ServerSocket();
+        server.bind(address);
+    }
+
+    void start()
+    {
+        connections.submit(this::accept);
+    }
+
+    /**
+     * @return the port the leader listens on.
+     */
+    public int getPort()
+    {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return the number of connected followers.
+     */
+    public int followers()
+    {
+        return followers.size();
+    }
+
+    /**
+     * @return the offset of the next record.
+     */
+    public long offset()
+    {
+        lock.lock();
+        try
+        {
+            return next;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the most records a connected follower has not confirmed yet, 0 without followers.
+     */
+    public long lag()
+    {
+        long offset = offset();
+        long lag = 0;
+        for (Follower follower : followers)
+        {
+            lag = Math.max(lag, offset - follower.acknowledged);
+        }
+        return lag;
+    }
+
+    /**
+     * Appends a record and wakes the senders. Called in the order of the
+     * changes, while the database holds the task store.
+     */
+    void published(byte[] record)
+    {
+        lock.lock();
+        try
+        {
+            records[(int) (next & mask)] = record;
+            next++;
+            arrived.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void accept()
+    {
+        while (running)
+        {
+            try
+            {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.submit(() -> serve(socket));
+            }
+            catch (IOException ex)
+            {
+                if (running)
+                    dataBase.warn("A replication follower could not connect: " + ex.getMessage());
+            }
+            catch (RuntimeException ex)
+            {
+                return; // shut down
+            }
+        }
+    }
+
+    private void serve(Socket socket)
+    {
+        Follower follower = null;
+        try (socket)
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            if (in.readInt() != ReplicationProtocol.MAGIC)
+                return;
+            long followerEpoch = in.readLong();
+            long offset = in.readLong();
+
+            long current = offset();
+            boolean continues = followerEpoch == epoch && offset <= current && offset >= current - records.length;
+            long position = continues ? offset : sendSnapshot(out);
+
+            follower = new Follower(socket, position);
+            followers.add(follower);
+            Follower acknowledging = follower;
+            connections.submit(() -> readAcknowledgements(in, acknowledging));
+            stream(out, position);
+        }
+        catch (IOException ex)
+        {
+            // the follower went away or fell behind, it reconnects
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            if (follower != null)
+                followers.remove(follower);
+        }
+    }
+
+    /**
+     * Sends all tasks as they are after the records published so far, in the
+     * order they were added, so equal keys keep their order on the follower
+     * whatever it is sorted by later.
+     *
+     * @return the offset of the first record after the snapshot.
+     */
+    private long sendSnapshot(DataOutputStream out) throws IOException
+    {
+        List<TaskState> states = new ArrayList<>();
+        Object[] sort = new Object[2];
+        long[] offset = new long[1];
+        dataBase.exclusive(() ->
+        {
+            for (Task task : dataBase.inAddedOrder())
+            {
+                states.add(TaskState.of(task));
+            }
+            sort[0] = dataBase.getSortBy();
+            sort[1] = dataBase.getSortOrder();
+            offset[0] = offset();
+        });
+
+        out.writeByte(ReplicationProtocol.SNAPSHOT);
+        out.writeLong(epoch);
+        out.writeLong(offset[0]);
+        ReplicationProtocol.writeSort(out, (SortBy) sort[0], (SortOrder) sort[1]);
+        out.writeInt(states.size());
+        for (TaskState state : states)
+        {
+            ReplicationProtocol.writeState(out, state);
+        }
+        out.flush();
+        return offset[0];
+    }
+
+    /**
+     * Sends the records from the given offset on as they are published, in
+     * frames of all the records waiting, and a heartbeat when there are none.
+     */
+    private void stream(DataOutputStream out, long position) throws IOException, InterruptedException
+    {
+        while (running)
+        {
+            byte[][] batch;
+            lock.lock();
+            try
+            {
+                if (position == next)
+                    arrived.await(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (!running)
+                    return;
+                if (position < next - records.length)
+                    throw new IOException("The follower fell behind the retained records");
+                batch = new byte[(int) Math.min(next - position, MAX_BATCH)][];
+                for (int i = 0; i < batch.length; i++)
+                {
+                    batch[i] = records[(int) ((position + i) & mask)];
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            if (batch.length == 0)
+            {
+                out.writeByte(ReplicationProtocol.HEARTBEAT);
+                out.writeLong(position);
+            }
+            else
+            {
+                out.writeByte(ReplicationProtocol.RECORDS);
+                out.writeLong(position);
+                out.writeInt(batch.length);
+                for (byte[] record : batch)
+                {
+                    out.write(record);
+                }
+                position += batch.length;
+            }
+            out.flush();
+        }
+    }
+
+    private void readAcknowledgements(DataInputStream in, Follower follower)
+    {
+        try
+        {
+            while (true)
+            {
+                follower.acknowledged = in.readLong();
+            }
+        }
+        catch (IOException ex)
+        {
+            // closed with the connection
+        }
+    }
+
+    /**
+     * Stops listening and disconnects the followers.
+     */
+    public void close()
+    {
+        running = false;
+        dataBase.leaderClosed(this);
+        try
+        {
+            server.close();
+        }
+        catch (IOException ex)
+        {
+            // closing anyway
+        }
+        lock.lock();
+        try
+        {
+            arrived.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        for (Follower follower : followers)
+        {
+            try
+            {
+                follower.socket.close();
+            }
+            catch (IOException ex)
+            {
+                // closing anyway
+            }
+        }
+        connections.shutdownNow();
+    }
+}
@@ -0,0 +1,124 @@
+package todolist.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * The messages between a {@link ReplicationLeader} and its followers.
+ *
+ * A follower opens the connection with {@link #MAGIC}, the epoch of the
+ * leader it followed (0 for none) and the offset of the next record it needs.
+ * The leader then sends, as one frame each:
+ *
+ *   SNAPSHOT  epoch, offset, sort, task count, the tasks in their order
+ *   RECORDS   offset of the first record, record count, the records
+ *   HEARTBEAT the offset of the next record, when there was nothing to send
+ *
+ * A snapshot is only sent when the follower cannot continue from its offset.
+ * A record is a task in its new state, absent if it was removed, or a sort.
+ * After every frame it applied, the follower sends back the offset it reached.
+ */
+final class ReplicationProtocol
+{
+    static final int MAGIC = 0x54445250; // "TDRP"
+
+    static final byte SNAPSHOT = 'S';
+    static final byte RECORDS = 'R';
+    static final byte HEARTBEAT = 'H';
+
+    static final byte TASK = 'T';
+    static final byte SORT = 'O';
+
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    private ReplicationProtocol()
+    {
+    }
+
+    /**
+     * @return the record of a task in its new state.
+     */
+    static byte[] taskRecord(TaskState state)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeByte(TASK);
+            writeState(out, state);
+        }
+        catch (IOException ex)
+        {
+            throw new AssertionError(ex); // not thrown by a byte array
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the record of a sort, null values for no order.
+     */
+    static byte[] sortRecord(SortBy sortBy, SortOrder sortOrder)
+    {
+        return new byte[] {SORT, ordinal(sortBy), ordinal(sortOrder)};
+    }
+
+    static void writeSort(DataOutputStream out, SortBy sortBy, SortOrder sortOrder) throws IOException
+    {
+        out.writeByte(ordinal(sortBy));
+        out.writeByte(ordinal(sortOrder));
+    }
+
+    private static byte ordinal(Enum<?> value)
+    {
+        return (byte) (value == null ? -1 : value.ordinal());
+    }
+
+    static SortBy readSortBy(DataInputStream in) throws IOException
+    {
+        byte ordinal = in.readByte();
+        return ordinal < 0 ? null : SortBy.values()[ordinal];
+    }
+
+    static SortOrder readSortOrder(DataInputStream in) throws IOException
+    {
+        byte ordinal = in.readByte();
+        return ordinal < 0 ? null : SortOrder.values()[ordinal];
+    }
+
+    static void writeState(DataOutputStream out, TaskState state) throws IOException
+    {
+        out.writeLong(state.id());
+        out.writeBoolean(state.present());
+        if (!state.present())
+            return;
+        byte[] description = state.description().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(description.length);
+        out.write(description);
+        out.writeByte(state.priority().ordinal());
+        LocalDateTime deadline = state.deadline();
+        out.writeLong(deadline == null ? NO_DEADLINE : deadline.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(deadline == null ? 0 : deadline.getNano());
+        out.writeBoolean(state.completed());
+    }
+
+    static TaskState readState(DataInputStream in) throws IOException
+    {
+        long id = in.readLong();
+        if (!in.readBoolean())
+            return TaskState.absent(id);
+        int length = in.readInt();
+        if (length < 0 || length > 1 << 24)
+            throw new StreamCorruptedException("Description of " + length + " bytes");
+        String description = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+        Priority priority = Priority.values()[in.readByte()];
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        LocalDateTime deadline = seconds == NO_DEADLINE ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+        return new TaskState(id, description, priority, deadline, in.readBoolean());
+    }
+}
@@ -0,0 +1,125 @@
+package todolist.data;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * The last line of a snapshot written by the {@link TaskLog}: the number of
+ * rows and the CRC-32C of every byte before the line, in hex.
+ *
+ *   #tasks,1000000,8a3f09c2
+ *
+ * A snapshot whose trailer does not match its bytes is damaged. Files without
+ * a trailer, written by hand or before trailers existed, are read as they are.
+ */
+final class SnapshotTrailer
+{
+    static final String TAG = "#tasks";
+    private static final int MAX_LENGTH = 64;
+    private static final long DAMAGED = -1;
+
+    /** The number of bytes before the trailer, the CSV rows. */
+    final long dataLength;
+    /** The number of rows written, -1 if the trailer is damaged. */
+    final long rows;
+    private final long crc;
+
+    private SnapshotTrailer(long dataLength, long rows, long crc)
+    {
+        this.dataLength = dataLength;
+        this.rows = rows;
+        this.crc = crc;
+    }
+
+    /**
+     * @return the trailer line for the given rows and checksum.
+     */
+    static byte[] line(long rows, long crc)
+    {
+        return (TAG + "," + rows + "," + String.format("%08x", crc) + System.lineSeparator())
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads the trailer from the end of a file.
+     *
+     * @return the trailer, or null if the last line is not one. A last line
+     *         starting like a trailer but cut off gives a damaged trailer.
+     * @throws IOException if reading the file fails.
+     */
+    static SnapshotTrailer read(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            int length = (int) Math.min(size, MAX_LENGTH);
+            ByteBuffer tail = ByteBuffer.allocate(length);
+            while (tail.hasRemaining())
+            {
+                if (channel.read(tail, size - length + tail.position()) < 0)
+                    throw new EOFException("Tasks file was truncated");
+            }
+            String text = new String(tail.array(), StandardCharsets.ISO_8859_1);
+
+            int end = text.length();
+            if (end > 0 && text.charAt(end - 1) == '\n')
+                end--;
+            if (end > 0 && text.charAt(end - 1) == '\r')
+                end--;
+            int start = text.lastIndexOf('\n', end - 1) + 1;
+            if (start == 0 && length < size)
+                return null; // the last line is longer than any trailer
+            String line = text.substring(start, end);
+            if (!line.startsWith(TAG + ","))
+                return null;
+            long dataLength = size - length + start;
+            String[] fields = line.split(",", -1);
+            try
+            {
+                if (fields.length == 3)
+                    return new SnapshotTrailer(dataLength, Long.parseLong(fields[1]), Long.parseLong(fields[2], 16));
+            }
+            catch (NumberFormatException ex)
+            {
+                // damaged like the rest of the line
+            }
+            return new SnapshotTrailer(dataLength, -1, DAMAGED);
+        }
+    }
+
+    /**
+     * Computes the checksum of the rows of a file.
+     *
+     * @return true if it is the one in the trailer.
+     * @throws IOException if reading the file fails.
+     */
+    boolean matches(File file) throws IOException
+    {
+        if (crc == DAMAGED)
+            return false;
+        CRC32C checksum = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            long position = 0;
+            while (position < dataLength)
+            {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), dataLength - position));
+                int read = channel.read(buffer, position);
+                if (read < 0)
+                    return false;
+                buffer.flip();
+                checksum.update(buffer);
+                position += read;
+            }
+        }
+        return checksum.getValue() == crc;
+    }
+}
@@ -1,6 +1,6 @@
 package todolist.data;
 
-public enum sortOrder
+public enum SortOrder
 {
     ASCENDING,
     DESCENDING
@@ -1,15 +1,40 @@
 package todolist.data;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 
+/**
+ * A single task. The fields are volatile so a task can be shared between
+ * threads, and {@link #toggleCompleted()} flips the completion atomically.
+ *
+ * The CSV and display forms go through the getters, so a subclass can keep
+ * the values elsewhere, like the row views of {@link ColumnarTaskTable}.
+ */
 public class Task
 {
-    private String description;
-    private Priority priority;
-    private LocalDateTime deadline;
-    private boolean completed;
+    private static final VarHandle COMPLETED;
+    private static final DateTimeFormatter DISPLAY_FORMAT = DateTimeFormatter.ofPattern("dd-MMM-yyyy HH:mm");
+
+    static
+    {
+        try
+        {
+            COMPLETED = MethodHandles.lookup().findVarHandle(Task.class, "completed", boolean.class);
+        }
+        catch (ReflectiveOperationException ex)
+        {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private volatile long id; // 0 until the database assigns one
+    private volatile String description;
+    private volatile Priority priority;
+    private volatile LocalDateTime deadline;
+    private volatile boolean completed;
 
     public Task(String description, Priority priority, LocalDateTime deadline)
     {
@@ -19,6 +44,14 @@ public class Task
         this.completed = false; // default when adding a task
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -52,38 +85,78 @@ public class Task
         return completed;
     }
 
+    /**
+     * Inverts the completion flag with a compare-and-set, so concurrent
+     * toggles are never lost.
+     * @return the new completion state.
+     */
+    public boolean toggleCompleted()
+    {
+        boolean current;
+        do
+        {
+            current = completed;
+        }
+        while (!COMPLETED.compareAndSet(this, current, !current));
+        return !current;
+    }
+
     /**
      * Converts the information into a single CSV file
+     * The description is quoted (RFC 4180) when it contains a comma, a quote or a line break.
      * @return the CSV line that includes the Task data in String format.
      */
     public String AsCsvLine()
     {
+        LocalDateTime deadline = getDeadline();
         String deadLineString = (deadline == null ? "" : deadline.toString());
-        return description + "," + priority + "," + deadLineString + "," + completed;
+        return quote(getDescription()) + "," + getPriority() + "," + deadLineString + "," + isCompleted() + "," + getId();
     }
-    @Override
-    public String toString()
+
+    private static String quote(String field)
     {
-        String priorityString = "Priority: " + priority;
-        String status = "Status: " + (completed ? "[✔]" : "[ ]"); // or Completed" : "Incomplete
-        String deadlineString;
+        for (int i = 0; i < field.length(); i++)
+        {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r')
+                return "\"" + field.replace("\"", "\"\"") + "\"";
+        }
+        return field;
+    }
+
+    /**
+     * Appends the display form of the task, as shown by {@link #toString()},
+     * without building intermediate strings.
+     *
+     * @param out The buffer to append to.
+     * @return the buffer.
+     */
+    public StringBuilder appendTo(StringBuilder out)
+    {
+        LocalDateTime deadline = getDeadline();
+        out.append(getDescription()).append(" | Priority: ").append(getPriority()).append(" | Deadline: ");
 
         if (deadline == null)
         {
-            deadlineString = "Deadline: No deadline";
+            out.append("No deadline");
         }
         else if (deadline.toLocalTime().equals(LocalTime.MIDNIGHT))
         {
             // show only date
-            deadlineString = "Deadline: " + deadline.toLocalDate();
+            DateTimeFormatter.ISO_LOCAL_DATE.formatTo(deadline, out);
         }
         else
         {
             // show date and time
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MMM-yyyy HH:mm");
-            deadlineString = "Deadline: " + deadline.format(formatter);
+            DISPLAY_FORMAT.formatTo(deadline, out);
         }
 
-        return description + " | " + priorityString + " | " + deadlineString + " | " + status;
+        return out.append(" | Status: ").append(isCompleted() ? "[✔]" : "[ ]"); // or Completed" : "Incomplete
+    }
+
+    @Override
+    public String toString()
+    {
+        return appendTo(new StringBuilder(96)).toString();
     }
 }
@@ -0,0 +1,516 @@
+package todolist.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compressed snapshot format of the {@link CompressedTaskStore}: the
+ * tasks in blocks of {@link #BLOCK_ROWS}, each deflated on its own with a
+ * dictionary shared by the whole file.
+ *
+ *   header   magic (int), dictionary length (int), dictionary
+ *   block    row count (int), raw length (int), compressed length (int), deflated bytes
+ *   end      0 (int) and a line break, before the {@link SnapshotTrailer}
+ *
+ * Inside a block the fields are stored by column, so that similar bytes are
+ * next to each other for the deflater:
+ *
+ *   rows, string count, ID column length, deadline column length (varints)
+ *   strings     the distinct descriptions of the block, UTF-8 with a varint length
+ *   IDs         the difference to the ID before, zigzag varints
+ *   flags       one byte per task: priority ordinal (bits 0-1), completed,
+ *               has a deadline, deadline has nanoseconds
+ *   deadlines   seconds since the epoch (UTC) as the difference to the
+ *               deadline before, zigzag varints, then the nanoseconds if any
+ *   references  the index of each task's description among the strings
+ *
+ * So a priority costs two bits, a deadline a few bytes, a description that
+ * repeats in the block one byte or two. The dictionary holds the descriptions
+ * found most often in a sample of the tasks, laid out like the strings of a
+ * block, so descriptions repeating across blocks are found in it.
+ *
+ * Each block is decoded without the others, so a load decodes them in
+ * parallel on the common fork-join pool. The descriptions of blocks that
+ * repeat some are interned over the whole load, so a recurring description
+ * is held once.
+ */
+final class TaskBlocks
+{
+    static final int MAGIC = 0x54445A31; // "TDZ1"
+    static final int BLOCK_ROWS = 4096;
+
+    private static final int MAX_DICTIONARY = 32 * 1024; // the deflate window
+    private static final int DICTIONARY_SAMPLE = 1 << 16;
+    private static final int BLOCK_HEADER = 12;
+
+    private static final int PRIORITY_MASK = 0x03;
+    private static final int COMPLETED = 0x04;
+    private static final int DEADLINE = 0x08;
+    private static final int NANOS = 0x10;
+
+    private TaskBlocks()
+    {
+    }
+
+    /**
+     * A snapshot of the given tasks in blocks. The states are taken by the
+     * caller, so the tasks may change while the snapshot is written.
+     */
+    static TaskLog.Snapshot snapshot(TaskState[] tasks)
+    {
+        return out -> write(tasks, out);
+    }
+
+    /**
+     * A deflated block.
+     */
+    private record Block(int rows, int rawLength, byte[] bytes)
+    {
+    }
+
+    /**
+     * Writes the tasks, compressing as many blocks at a time in parallel as
+     * the common pool has threads, times four.
+     *
+     * @return the number of tasks written.
+     */
+    static long write(TaskState[] tasks, OutputStream out) throws IOException
+    {
+        byte[] dictionary = dictionary(tasks);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(dictionary.length);
+        data.write(dictionary);
+
+        int blocks = (tasks.length + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        int window = Math.max(1, ForkJoinPool.getCommonPoolParallelism() * 4);
+        for (int first = 0; first < blocks; first += window)
+        {
+            Block[] encoded = new Block[Math.min(window, blocks - first)];
+            int offset = first;
+            inParallel(encoded.length, i ->
+            {
+                int from = (offset + i) * BLOCK_ROWS;
+                encoded[i] = encode(tasks, from, Math.min(from + BLOCK_ROWS, tasks.length), dictionary);
+            });
+            for (Block block : encoded)
+            {
+                data.writeInt(block.rows());
+                data.writeInt(block.rawLength());
+                data.writeInt(block.bytes().length);
+                data.write(block.bytes());
+            }
+        }
+        data.writeInt(0);
+        data.writeByte('\n');
+        data.flush();
+        return tasks.length;
+    }
+
+    /**
+     * Chooses the descriptions for the dictionary: those found most often in
+     * an even sample of the tasks, the most frequent last, where the deflater
+     * reaches them with the shortest distances.
+     */
+    static byte[] dictionary(TaskState[] tasks)
+    {
+        HashMap<String, Integer> counts = new HashMap<>();
+        int step = Math.max(1, tasks.length / DICTIONARY_SAMPLE);
+        for (int i = 0; i < tasks.length; i += step)
+        {
+            counts.merge(tasks[i].description(), 1, Integer::sum);
+        }
+        List<Map.Entry<String, Integer>> frequent = new ArrayList<>(counts.entrySet());
+        frequent.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        for (Map.Entry<String, Integer> description : frequent)
+        {
+            entry.reset();
+            writeString(entry, description.getKey());
+            if (size + entry.size() > MAX_DICTIONARY)
+                continue;
+            chosen.add(entry.toByteArray());
+            size += entry.size();
+        }
+
+        byte[] dictionary = new byte[size];
+        int position = size;
+        for (byte[] bytes : chosen)
+        {
+            position -= bytes.length;
+            System.arraycopy(bytes, 0, dictionary, position, bytes.length);
+        }
+        return dictionary;
+    }
+
+    private static Block encode(TaskState[] tasks, int from, int to, byte[] dictionary)
+    {
+        HashMap<String, Integer> strings = new HashMap<>();
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream ids = new ByteArrayOutputStream();
+        byte[] flags = new byte[to - from];
+        ByteArrayOutputStream deadlines = new ByteArrayOutputStream();
+        ByteArrayOutputStream references = new ByteArrayOutputStream();
+
+        long previousId = 0;
+        long previousSeconds = 0;
+        for (int i = from; i < to; i++)
+        {
+            TaskState task = tasks[i];
+            long id = task.id();
+            writeVarLong(ids, zigzag(id - previousId));
+            previousId = id;
+
+            int flag = task.priority().ordinal() | (task.completed() ? COMPLETED : 0);
+            LocalDateTime deadline = task.deadline();
+            if (deadline != null)
+            {
+                flag |= DEADLINE;
+                long seconds = deadline.toEpochSecond(ZoneOffset.UTC);
+                writeVarLong(deadlines, zigzag(seconds - previousSeconds));
+                previousSeconds = seconds;
+                if (deadline.getNano() != 0)
+                {
+                    flag |= NANOS;
+                    writeVarLong(deadlines, deadline.getNano());
+                }
+            }
+            flags[i - from] = (byte) flag;
+
+            String description = task.description();
+            Integer reference = strings.get(description);
+            if (reference == null)
+            {
+                reference = strings.size();
+                strings.put(description, reference);
+                writeString(stringBytes, description);
+            }
+            writeVarLong(references, reference);
+        }
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(stringBytes.size() + ids.size() + flags.length
+                + deadlines.size() + references.size() + 32);
+        writeVarLong(raw, to - from);
+        writeVarLong(raw, strings.size());
+        writeVarLong(raw, ids.size());
+        writeVarLong(raw, deadlines.size());
+        raw.writeBytes(stringBytes.toByteArray());
+        raw.writeBytes(ids.toByteArray());
+        raw.writeBytes(flags);
+        raw.writeBytes(deadlines.toByteArray());
+        raw.writeBytes(references.toByteArray());
+        byte[] input = raw.toByteArray();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            if (dictionary.length > 0)
+                deflater.setDictionary(dictionary);
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(input.length / 4 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            while (!deflater.finished())
+            {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return new Block(to - from, input.length, compressed.toByteArray());
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Where a block is in the file.
+     */
+    private record Location(long position, int rows, int rawLength, int length)
+    {
+    }
+
+    /**
+     * Appends the tasks of a snapshot to a list, in file order. Blocks are
+     * decoded in parallel when there is more than one and more than one CPU,
+     * or when the system property todolist.load.parallel says so.
+     *
+     * @param file The snapshot.
+     * @param size The number of bytes before its trailer.
+     * @param tasks The list to append to.
+     * @throws IOException if the file cannot be read or is damaged.
+     */
+    static void read(File file, long size, List<Task> tasks) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            ByteBuffer header = readFully(channel, 0, 8);
+            if (header.getInt() != MAGIC)
+                throw new StreamCorruptedException("Not a compressed tasks file: " + file.getAbsolutePath());
+            int dictionaryLength = header.getInt();
+            if (dictionaryLength < 0 || dictionaryLength > MAX_DICTIONARY)
+                throw new StreamCorruptedException("Dictionary of " + dictionaryLength + " bytes");
+            byte[] dictionary = readFully(channel, 8, dictionaryLength).array();
+
+            List<Location> locations = new ArrayList<>();
+            long position = 8 + dictionaryLength;
+            long rows = 0;
+            while (true)
+            {
+                if (position + 4 > size)
+                    throw new EOFException("The tasks file ends inside a block: " + file.getAbsolutePath());
+                ByteBuffer block = readFully(channel, position, (int) Math.min(BLOCK_HEADER, size - position));
+                int count = block.getInt();
+                if (count == 0)
+                    break;
+                if (block.remaining() < BLOCK_HEADER - 4)
+                    throw new EOFException("The tasks file ends inside a block: " + file.getAbsolutePath());
+                int rawLength = block.getInt();
+                int length = block.getInt();
+                if (count < 0 || rawLength < 0 || length < 0 || position + BLOCK_HEADER + length > size)
+                    throw new StreamCorruptedException("Damaged block at " + position + " in " + file.getAbsolutePath());
+                locations.add(new Location(position + BLOCK_HEADER, count, rawLength, length));
+                position += BLOCK_HEADER + length;
+                rows += count;
+            }
+            if (tasks instanceof ArrayList<Task> list)
+                list.ensureCapacity((int) Math.min(list.size() + rows, Integer.MAX_VALUE - 8));
+
+            Task[][] decoded = new Task[locations.size()][];
+            Map<String, String> interned = new ConcurrentHashMap<>();
+            IntConsumer decode = i ->
+            {
+                Location location = locations.get(i);
+                try
+                {
+                    byte[] bytes = readFully(channel, location.position(), location.length()).array();
+                    decoded[i] = decode(bytes, location, dictionary, interned);
+                }
+                catch (IOException ex)
+                {
+                    throw new UncheckedIOException(ex);
+                }
+            };
+            try
+            {
+                if (parallel(locations.size()))
+                {
+                    inParallel(locations.size(), decode);
+                }
+                else
+                {
+                    for (int i = 0; i < locations.size(); i++)
+                    {
+                        decode.accept(i);
+                    }
+                }
+            }
+            catch (UncheckedIOException ex)
+            {
+                throw ex.getCause();
+            }
+            for (Task[] block : decoded)
+            {
+                tasks.addAll(Arrays.asList(block));
+            }
+        }
+    }
+
+    private static boolean parallel(int blocks)
+    {
+        String forced = System.getProperty("todolist.load.parallel");
+        if (forced != null)
+            return Boolean.parseBoolean(forced) && blocks > 1;
+        return blocks > 1 && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    private static Task[] decode(byte[] bytes, Location location, byte[] dictionary, Map<String, String> interned) throws IOException
+    {
+        byte[] raw = new byte[location.rawLength()];
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(bytes);
+            int filled = 0;
+            while (filled < raw.length)
+            {
+                int inflated = inflater.inflate(raw, filled, raw.length - filled);
+                if (inflated == 0)
+                {
+                    if (inflater.needsDictionary())
+                        inflater.setDictionary(dictionary);
+                    else if (inflater.finished() || inflater.needsInput())
+                        throw new StreamCorruptedException("Block at " + location.position() + " is shorter than stated");
+                }
+                filled += inflated;
+            }
+        }
+        catch (DataFormatException | IllegalArgumentException ex)
+        {
+            throw new StreamCorruptedException("Damaged block at " + location.position() + ": " + ex.getMessage());
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        try
+        {
+            ByteBuffer in = ByteBuffer.wrap(raw);
+            int rows = (int) readVarLong(in);
+            int stringCount = (int) readVarLong(in);
+            int idsLength = (int) readVarLong(in);
+            int deadlinesLength = (int) readVarLong(in);
+            if (rows != location.rows())
+                throw new StreamCorruptedException("Block at " + location.position() + " holds " + rows + " rows, not " + location.rows());
+
+            // A block without a repeated description is not worth interning
+            boolean intern = stringCount < rows;
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++)
+            {
+                int length = (int) readVarLong(in);
+                String description = new String(raw, in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+                String known = intern ? interned.putIfAbsent(description, description) : null;
+                strings[i] = known != null ? known : description;
+            }
+            ByteBuffer ids = in.slice(in.position(), idsLength);
+            int flagsAt = in.position() + idsLength;
+            ByteBuffer deadlines = in.slice(flagsAt + rows, deadlinesLength);
+            ByteBuffer references = in.slice(flagsAt + rows + deadlinesLength, raw.length - flagsAt - rows - deadlinesLength);
+
+            Priority[] priorities = Priority.values();
+            Task[] tasks = new Task[rows];
+            long id = 0;
+            long seconds = 0;
+            for (int i = 0; i < rows; i++)
+            {
+                id += unzigzag(readVarLong(ids));
+                int flag = raw[flagsAt + i];
+                LocalDateTime deadline = null;
+                if ((flag & DEADLINE) != 0)
+                {
+                    seconds += unzigzag(readVarLong(deadlines));
+                    int nanos = (flag & NANOS) != 0 ? (int) readVarLong(deadlines) : 0;
+                    deadline = LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+                }
+                Task task = new Task(strings[(int) readVarLong(references)], priorities[flag & PRIORITY_MASK], deadline);
+                task.setId(id);
+                task.setCompleted((flag & COMPLETED) != 0);
+                tasks[i] = task;
+            }
+            return tasks;
+        }
+        catch (RuntimeException ex) // out of bounds, a bad priority or date
+        {
+            throw new StreamCorruptedException("Damaged block at " + location.position() + ": " + ex);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("The tasks file was truncated");
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Runs action(0) .. action(count - 1) on the common fork-join pool.
+     */
+    private static void inParallel(int count, IntConsumer action)
+    {
+        ForkJoinPool.commonPool().invoke(new ForEach(action, 0, count));
+    }
+
+    /**
+     * Runs the action for lo..hi-1, splitting in halves until one index is left.
+     */
+    @SuppressWarnings("serial") // never serialized
+    private static final class ForEach extends RecursiveAction
+    {
+        private final IntConsumer action;
+        private final int lo;
+        private final int hi;
+
+        ForEach(IntConsumer action, int lo, int hi)
+        {
+            this.action = action;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (hi - lo > 1)
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ForEach(action, lo, mid), new ForEach(action, mid, hi));
+            }
+            else if (hi > lo)
+            {
+                action.accept(lo);
+            }
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Varint longer than 64 bits");
+    }
+}
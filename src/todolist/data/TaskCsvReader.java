@@ -0,0 +1,537 @@
+package todolist.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader for the tasks CSV format.
+ *
+ * The input is scanned once, byte by byte, through a fixed buffer. The fields
+ * of the current record are copied into a reusable record buffer and kept as
+ * offsets into it, so reading a record allocates nothing but the description
+ * string. Priority, deadline and completion are decoded straight from the bytes
+ * by looking at the shape of the field instead of trying parsers one after
+ * another and catching their exceptions.
+ *
+ * Quoting follows RFC 4180: a field starting with a double quote may contain
+ * commas, line breaks and doubled quotes. Unquoted fields are trimmed.
+ */
+public class TaskCsvReader implements Closeable
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter SPACE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final InputStream in;
+    private final Consumer<String> warnings;
+    private final byte[] buffer;
+    private long consumed;
+    private long end = Long.MAX_VALUE;
+    private int position;
+    private int limit;
+
+    private byte[] record = new byte[256];
+    private int recordLength;
+    private int[] fieldStart = new int[8];
+    private int[] fieldEnd = new int[8];
+    private int fieldCount;
+    private boolean endedInQuotes;
+
+    /**
+     * Reads CSV with the warnings about invalid lines written to System.err.
+     *
+     * @param in The CSV input.
+     */
+    public TaskCsvReader(InputStream in)
+    {
+        this(in, System.err::println);
+    }
+
+    /**
+     * @param in The CSV input.
+     * @param warnings Receives the warnings about invalid lines.
+     */
+    TaskCsvReader(InputStream in, Consumer<String> warnings)
+    {
+        this(in, warnings, BUFFER_SIZE);
+    }
+
+    /**
+     * @param in The CSV input.
+     * @param warnings Receives the warnings about invalid lines.
+     * @param bufferSize The read buffer size, small when reading a single record.
+     */
+    TaskCsvReader(InputStream in, Consumer<String> warnings, int bufferSize)
+    {
+        this.in = in;
+        this.warnings = warnings;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Reads the next valid task, skipping invalid lines with a warning.
+     *
+     * @return the next task, or null at the end of the input.
+     * @throws IOException if reading the underlying stream fails.
+     */
+    public Task readTask() throws IOException
+    {
+        while (nextRecord())
+        {
+            Task task = toTask(0);
+            if (task != null)
+                return task;
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the input ended inside a quoted field.
+     */
+    boolean endedInQuotes()
+    {
+        return endedInQuotes;
+    }
+
+    /**
+     * @return the number of bytes read so far, which is the position of the
+     *         next record in the input when called between records.
+     */
+    long offset()
+    {
+        return consumed + position;
+    }
+
+    /**
+     * Ends the input at the record starting at the given offset, such as the
+     * trailer of a snapshot (see {@link SnapshotTrailer}).
+     */
+    void stopAt(long offset)
+    {
+        end = offset;
+    }
+
+    /**
+     * Reads the next record into the field table.
+     *
+     * @return false at the end of the input.
+     * @throws IOException if reading the underlying stream fails.
+     */
+    boolean nextRecord() throws IOException
+    {
+        recordLength = 0;
+        fieldCount = 0;
+        if (offset() >= end)
+            return false;
+
+        int b = read();
+        if (b < 0)
+            return false;
+
+        int start = 0;
+        int quotedEnd = -1;
+        while (true)
+        {
+            if (b < 0 || b == '\n' || b == '\r' || b == ',')
+            {
+                endField(start, quotedEnd);
+                if (b != ',')
+                {
+                    if (b == '\r' && peek() == '\n')
+                        read();
+                    return true;
+                }
+                start = recordLength;
+                quotedEnd = -1;
+            }
+            else if (b == '"' && quotedEnd < 0 && isBlank(start, recordLength))
+            {
+                // quoted field: copy everything up to the closing quote, "" is an escaped quote
+                recordLength = start;
+                while ((b = read()) >= 0)
+                {
+                    if (b == '"')
+                    {
+                        if (peek() != '"')
+                            break;
+                        read();
+                    }
+                    append(b);
+                }
+                if (b < 0)
+                    endedInQuotes = true;
+                quotedEnd = recordLength;
+            }
+            else if (quotedEnd < 0)
+            {
+                append(b);
+            }
+            // anything between a closing quote and the next separator is ignored
+            b = read();
+        }
+    }
+
+    private void endField(int start, int quotedEnd)
+    {
+        int end = recordLength;
+        if (quotedEnd >= 0)
+        {
+            end = quotedEnd;
+        }
+        else
+        {
+            while (start < end && (record[start] & 0xFF) <= ' ')
+                start++;
+            while (end > start && (record[end - 1] & 0xFF) <= ' ')
+                end--;
+        }
+
+        if (fieldCount == fieldStart.length)
+        {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private boolean isBlank(int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if ((record[i] & 0xFF) > ' ')
+                return false;
+        }
+        return true;
+    }
+
+    private void append(int b)
+    {
+        if (recordLength == record.length)
+            record = Arrays.copyOf(record, record.length * 2);
+        record[recordLength++] = (byte) b;
+    }
+
+    private int read() throws IOException
+    {
+        if (position == limit && !fill())
+            return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    private int peek() throws IOException
+    {
+        if (position == limit && !fill())
+            return -1;
+        return buffer[position] & 0xFF;
+    }
+
+    private boolean fill() throws IOException
+    {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0)
+            return false;
+        consumed += limit;
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * @return the number of fields in the current record.
+     */
+    int fieldCount()
+    {
+        return fieldCount;
+    }
+
+    /**
+     * @return the first character of a field, or 0 if the field is empty.
+     */
+    char firstChar(int field)
+    {
+        return fieldStart[field] < fieldEnd[field] ? (char) record[fieldStart[field]] : 0;
+    }
+
+    /**
+     * @return the priority of the current record, MEDIUM if it is invalid.
+     */
+    Priority recordPriority()
+    {
+        Priority priority = fieldCount > 1 ? parsePriority(1) : null;
+        return priority == null ? Priority.MEDIUM : priority;
+    }
+
+    /**
+     * @return the deadline of the current record, or null if it has none or an invalid one.
+     */
+    LocalDateTime recordDeadline()
+    {
+        return fieldCount > 2 && fieldLength(2) > 0 ? parseDeadline(2) : null;
+    }
+
+    /**
+     * @return the completion of the current record, false if it has none.
+     */
+    boolean recordCompleted()
+    {
+        return fieldCount > 3 && parseCompleted(3);
+    }
+
+    /**
+     * @return the ID of the current record, or 0 if it has no valid one.
+     */
+    long recordId()
+    {
+        return fieldCount > 4 ? parseId(4) : 0;
+    }
+
+    /**
+     * @return the length in bytes of a field.
+     */
+    int fieldLength(int field)
+    {
+        return fieldEnd[field] - fieldStart[field];
+    }
+
+    /**
+     * @return the current record as text, for warning messages.
+     */
+    String recordText()
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < fieldCount; i++)
+        {
+            if (i > 0)
+                text.append(',');
+            text.append(fieldText(i));
+        }
+        return text.toString();
+    }
+
+    private String fieldText(int field)
+    {
+        return new String(record, fieldStart[field], fieldLength(field), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds a task from the fields of the current record, starting at the given field.
+     * The fields are description, priority, optional deadline, optional completion
+     * and optional ID. A missing or invalid ID is left 0.
+     * An invalid priority defaults to MEDIUM and an invalid deadline is left null.
+     *
+     * @param first Index of the description field.
+     * @return the task, or null if the record has too few fields.
+     */
+    Task toTask(int first)
+    {
+        if (fieldCount - first < 2)
+        {
+            warnings.accept("Skipping invalid line (too few fields): " + recordText());
+            return null;
+        }
+
+        String description = fieldText(first);
+
+        Priority priority = parsePriority(first + 1);
+        if (priority == null)
+        {
+            warnings.accept("Invalid priority in line, defaulting to MEDIUM: " + recordText());
+            priority = Priority.MEDIUM;
+        }
+
+        LocalDateTime deadline = null;
+        if (fieldCount > first + 2 && fieldLength(first + 2) > 0)
+        {
+            deadline = parseDeadline(first + 2);
+            if (deadline == null)
+                warnings.accept("Invalid deadline format, leaving null: " + recordText());
+        }
+
+        boolean completed = fieldCount > first + 3 && parseCompleted(first + 3);
+
+        Task task = new Task(description, priority, deadline);
+        task.setCompleted(completed);
+        if (fieldCount > first + 4)
+            task.setId(parseId(first + 4));
+        return task;
+    }
+
+    /**
+     * Matches the priority by its length and bytes, ignoring surrounding brackets.
+     */
+    private Priority parsePriority(int field)
+    {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        if (start < end && record[start] == '[')
+            start++;
+        if (end > start && record[end - 1] == ']')
+            end--;
+
+        switch (end - start)
+        {
+            case 3: return matches(start, "LOW") ? Priority.LOW : null;
+            case 4: return matches(start, "HIGH") ? Priority.HIGH : null;
+            case 6: return matches(start, "MEDIUM") ? Priority.MEDIUM : null;
+            default: return null;
+        }
+    }
+
+    private boolean matches(int start, String word)
+    {
+        for (int i = 0; i < word.length(); i++)
+        {
+            if (record[start + i] != word.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the deadline from its shape: yyyy-MM-dd, yyyy-MM-dd HH:mm,
+     * yyyy-MM-ddTHH:mm or yyyy-MM-ddTHH:mm:ss. Any other shape, such as a
+     * deadline with fractional seconds, goes through the regular parsers.
+     *
+     * @return the deadline, or null if the field is not a valid date.
+     */
+    private LocalDateTime parseDeadline(int field)
+    {
+        int s = fieldStart[field];
+        int length = fieldLength(field);
+
+        if ((length == 10 || length == 16 || length == 19)
+                && record[s + 4] == '-' && record[s + 7] == '-')
+        {
+            int year = digits(s, 4);
+            int month = digits(s + 5, 2);
+            int day = digits(s + 8, 2);
+            int hour = 0;
+            int minute = 0;
+            int second = 0;
+
+            if (length >= 16)
+            {
+                byte separator = record[s + 10];
+                if ((separator != 'T' && (separator != ' ' || length != 16)) || record[s + 13] != ':')
+                    return parseDeadlineText(fieldText(field));
+                hour = digits(s + 11, 2);
+                minute = digits(s + 14, 2);
+                if (length == 19)
+                {
+                    if (record[s + 16] != ':')
+                        return parseDeadlineText(fieldText(field));
+                    second = digits(s + 17, 2);
+                }
+            }
+
+            if ((year | month | day | hour | minute | second) < 0)
+                return null;
+            try
+            {
+                return LocalDateTime.of(year, month, day, hour, minute, second);
+            }
+            catch (DateTimeException ex)
+            {
+                // out of range values, the lenient pattern parser may still resolve them
+                return parseDeadlineText(fieldText(field));
+            }
+        }
+        return parseDeadlineText(fieldText(field));
+    }
+
+    /**
+     * @return the decimal value of the digits, or -1 if any of them is not a digit.
+     */
+    private int digits(int start, int count)
+    {
+        int value = 0;
+        for (int i = start; i < start + count; i++)
+        {
+            int digit = record[i] - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Slow path for deadlines that do not have one of the common shapes, also
+     * used for deadlines typed by the user.
+     * Tries yyyy-MM-dd HH:mm, ISO date-time and ISO date in that order.
+     *
+     * @return the deadline, or null if no format matches.
+     */
+    public static LocalDateTime parseDeadlineText(String text)
+    {
+        try
+        {
+            return LocalDateTime.parse(text, SPACE_FORMAT);
+        }
+        catch (DateTimeParseException ex1)
+        {
+            try
+            {
+                return LocalDateTime.parse(text);
+            }
+            catch (DateTimeParseException ex2)
+            {
+                try
+                {
+                    return LocalDate.parse(text).atStartOfDay();
+                }
+                catch (DateTimeParseException ex3)
+                {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Same rule as {@link Boolean#parseBoolean(String)}: only "true", in any case, is true.
+     */
+    private boolean parseCompleted(int field)
+    {
+        if (fieldLength(field) != 4)
+            return false;
+        int s = fieldStart[field];
+        return (record[s] | 0x20) == 't' && (record[s + 1] | 0x20) == 'r'
+                && (record[s + 2] | 0x20) == 'u' && (record[s + 3] | 0x20) == 'e';
+    }
+
+    /**
+     * @return the positive decimal value of the field, or 0 if it is not one.
+     */
+    private long parseId(int field)
+    {
+        int length = fieldLength(field);
+        if (length == 0 || length > 18)
+            return 0;
+        long value = 0;
+        for (int i = fieldStart[field]; i < fieldEnd[field]; i++)
+        {
+            int digit = record[i] - '0';
+            if (digit < 0 || digit > 9)
+                return 0;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
@@ -0,0 +1,179 @@
+package todolist.data;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The undo and redo history of a {@link Database}, within a memory budget.
+ *
+ * Every version of the tasks is a {@link PersistentTaskMap} holding the state
+ * of each task changed since the history started; a task it does not hold is
+ * in its state from before its first change, kept in the base map. A change
+ * puts the new states into the current version, which copies O(log n) nodes
+ * and shares everything else with the versions before, so a step costs a
+ * few hundred bytes however many tasks there are, not a copy of the list.
+ * Moving to another version compares the two maps, skipping the subtrees
+ * they share, and returns the states of the tasks that differ.
+ *
+ * The bytes of the nodes and states each step allocated are counted. When
+ * the total with the base map passes the budget, the oldest versions are
+ * dropped, then the ones that could be redone. With nothing left to undo or
+ * redo the history starts over from the current tasks, which frees the base.
+ */
+final class TaskHistory
+{
+    /**
+     * A version of the tasks and the bytes allocated to reach it.
+     */
+    private record Version(PersistentTaskMap states, long bytes)
+    {
+    }
+
+    private final long budget;
+    private PersistentTaskMap base;
+    private long baseBytes;
+    private final ArrayList<Version> versions = new ArrayList<>();
+    private int current;
+    private long bytes;
+
+    /**
+     * @param budget The most bytes the history may keep, about.
+     */
+    TaskHistory(long budget)
+    {
+        this.budget = budget;
+        clear();
+    }
+
+    private void clear()
+    {
+        base = PersistentTaskMap.EMPTY;
+        baseBytes = 0;
+        versions.clear();
+        versions.add(new Version(PersistentTaskMap.EMPTY, 0));
+        current = 0;
+        bytes = 0;
+    }
+
+    /**
+     * Records one step: the tasks as they were before it and after it. The
+     * versions that could be redone are dropped. A step that changed nothing,
+     * like setting the deadline a task already has, is not recorded.
+     *
+     * @param before The states of the changed tasks before, absent for added ones.
+     * @param after Their states after, absent for removed ones, in the same order.
+     */
+    synchronized void changed(List<TaskState> before, List<TaskState> after)
+    {
+        if (before.equals(after))
+            return;
+        long[] allocated = {0};
+        for (TaskState state : before)
+        {
+            if (base.get(state.id()) == null)
+                base = base.put(state, allocated);
+        }
+        baseBytes += allocated[0];
+
+        allocated[0] = 0;
+        PersistentTaskMap states = versions.get(current).states();
+        for (TaskState state : after)
+        {
+            states = states.put(state, allocated);
+        }
+        while (versions.size() > current + 1)
+        {
+            bytes -= versions.remove(versions.size() - 1).bytes();
+        }
+        versions.add(new Version(states, allocated[0]));
+        current++;
+        bytes += allocated[0];
+        trim();
+    }
+
+    /**
+     * Drops versions until the history fits its budget.
+     */
+    private void trim()
+    {
+        while (bytes + baseBytes > budget && current > 0)
+        {
+            bytes -= versions.remove(0).bytes();
+            current--;
+        }
+        while (bytes + baseBytes > budget && versions.size() > current + 1)
+        {
+            bytes -= versions.remove(versions.size() - 1).bytes();
+        }
+        if (versions.size() == 1)
+            clear();
+    }
+
+    /**
+     * Steps back one version.
+     *
+     * @return the states to give the tasks, empty if there is nothing to undo.
+     */
+    synchronized List<TaskState> undo()
+    {
+        if (current == 0)
+            return List.of();
+        current--;
+        return states(versions.get(current + 1), versions.get(current));
+    }
+
+    /**
+     * Steps forward one undone version.
+     *
+     * @return the states to give the tasks, empty if there is nothing to redo.
+     */
+    synchronized List<TaskState> redo()
+    {
+        if (current == versions.size() - 1)
+            return List.of();
+        current++;
+        return states(versions.get(current - 1), versions.get(current));
+    }
+
+    /**
+     * @return the states in the target version of the tasks that differ from the source version.
+     */
+    private List<TaskState> states(Version source, Version target)
+    {
+        Set<Long> ids = new HashSet<>();
+        source.states().diff(target.states(), ids::add);
+        List<TaskState> states = new ArrayList<>(ids.size());
+        for (long id : ids)
+        {
+            TaskState state = target.states().get(id);
+            states.add(state != null ? state : base.get(id));
+        }
+        return states;
+    }
+
+    /**
+     * @return the number of steps that can be undone.
+     */
+    synchronized int undoSteps()
+    {
+        return current;
+    }
+
+    /**
+     * @return the number of steps that can be redone.
+     */
+    synchronized int redoSteps()
+    {
+        return versions.size() - 1 - current;
+    }
+
+    /**
+     * @return about the bytes the history keeps.
+     */
+    synchronized long bytes()
+    {
+        return bytes + baseBytes;
+    }
+}
@@ -0,0 +1,151 @@
+package todolist.data;
+
+import java.util.Arrays;
+
+/**
+ * Hash index from task ID to {@link Task}.
+ *
+ * Keys are primitive longs kept in an open addressing table with linear
+ * probing, so a lookup neither boxes the key nor follows entry objects.
+ * Removed entries are left as tombstones, which keeps removal O(1); they are
+ * dropped when the table is rebuilt.
+ */
+class TaskIdMap
+{
+    private static final Task TOMBSTONE = new Task("", Priority.LOW, null);
+
+    private long[] keys;
+    private Task[] values;
+    private int mask;
+    private int size;
+    private int used; // live entries plus tombstones
+
+    TaskIdMap()
+    {
+        this(16);
+    }
+
+    TaskIdMap(int expected)
+    {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new Task[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(long id)
+    {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the task with the given ID, or null.
+     */
+    Task get(long id)
+    {
+        for (int i = hash(id) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            if (keys[i] == id && values[i] != TOMBSTONE)
+                return values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Indexes a task by its ID, replacing a task with the same ID.
+     */
+    void put(Task task)
+    {
+        if ((used + 1) * 2 > keys.length)
+            rebuild(size + 1);
+
+        long id = task.getId();
+        int free = -1;
+        int i = hash(id) & mask;
+        for (; values[i] != null; i = (i + 1) & mask)
+        {
+            if (values[i] == TOMBSTONE)
+            {
+                if (free < 0)
+                    free = i;
+            }
+            else if (keys[i] == id)
+            {
+                values[i] = task;
+                return;
+            }
+        }
+
+        if (free < 0)
+        {
+            free = i;
+            used++;
+        }
+        keys[free] = id;
+        values[free] = task;
+        size++;
+    }
+
+    /**
+     * Removes the task with the given ID, leaving a tombstone in its slot.
+     *
+     * @return the removed task, or null if there was none.
+     */
+    Task remove(long id)
+    {
+        for (int i = hash(id) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            if (keys[i] == id && values[i] != TOMBSTONE)
+            {
+                Task task = values[i];
+                values[i] = TOMBSTONE;
+                size--;
+                return task;
+            }
+        }
+        return null;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+        used = 0;
+    }
+
+    /**
+     * Rehashes the live entries into a table sized for the given count.
+     */
+    private void rebuild(int expected)
+    {
+        long[] oldKeys = keys;
+        Task[] oldValues = values;
+
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new Task[capacity];
+        mask = capacity - 1;
+        size = 0;
+        used = 0;
+
+        for (int i = 0; i < oldValues.length; i++)
+        {
+            if (oldValues[i] != null && oldValues[i] != TOMBSTONE)
+            {
+                int j = hash(oldKeys[i]) & mask;
+                while (values[j] != null)
+                    j = (j + 1) & mask;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+                size++;
+                used++;
+            }
+        }
+    }
+}
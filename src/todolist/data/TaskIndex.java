@@ -0,0 +1,351 @@
+package todolist.data;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Secondary indexes over the tasks, kept up to date on every add and remove.
+ *
+ * Tasks are bucketed by {@link Priority} (the enum has only three values) and
+ * kept in a {@link TreeMap} by deadline, with the tasks without a deadline in a
+ * bucket of their own. Producing a sorted view is then a walk over the indexes
+ * instead of a full sort, and adding a task costs one tree lookup.
+ *
+ * The views follow the comparators of {@link Database#sortTasks(SortBy, SortOrder)}:
+ * ascending by priority or by deadline with tasks without deadline last, and the
+ * exact reverse for descending (so tasks without deadline come first). Tasks
+ * with the same key stay in the order they were added, as with a stable sort.
+ *
+ * For {@link TaskQuery} each priority also has its own deadline tree, so a
+ * query restricted to some priorities and a deadline range only visits the
+ * matching tasks.
+ *
+ * A task must be removed before its priority or deadline is changed and added
+ * again afterwards.
+ */
+class TaskIndex
+{
+    private final EnumMap<Priority, LinkedHashSet<Task>> byPriority = new EnumMap<>(Priority.class);
+    private final TreeMap<LocalDateTime, LinkedHashSet<Task>> byDeadline = new TreeMap<>();
+    private final LinkedHashSet<Task> noDeadline = new LinkedHashSet<>();
+    private final EnumMap<Priority, TreeMap<LocalDateTime, LinkedHashSet<Task>>> deadlinesByPriority = new EnumMap<>(Priority.class);
+    private final EnumMap<Priority, LinkedHashSet<Task>> noDeadlineByPriority = new EnumMap<>(Priority.class);
+    private int size;
+
+    TaskIndex()
+    {
+        for (Priority priority : Priority.values())
+        {
+            byPriority.put(priority, new LinkedHashSet<>());
+            deadlinesByPriority.put(priority, new TreeMap<>());
+            noDeadlineByPriority.put(priority, new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Indexes a task. O(log n) in the number of distinct deadlines.
+     */
+    void add(Task task)
+    {
+        byPriority.get(task.getPriority()).add(task);
+        if (task.getDeadline() == null)
+        {
+            noDeadline.add(task);
+            noDeadlineByPriority.get(task.getPriority()).add(task);
+        }
+        else
+        {
+            byDeadline.computeIfAbsent(task.getDeadline(), key -> new LinkedHashSet<>()).add(task);
+            deadlinesByPriority.get(task.getPriority()).computeIfAbsent(task.getDeadline(), key -> new LinkedHashSet<>()).add(task);
+        }
+        size++;
+    }
+
+    void addAll(Collection<Task> tasks)
+    {
+        for (Task task : tasks)
+        {
+            add(task);
+        }
+    }
+
+    /**
+     * Removes a task from the indexes. O(log n) in the number of distinct deadlines.
+     */
+    void remove(Task task)
+    {
+        if (!byPriority.get(task.getPriority()).remove(task))
+            return;
+
+        if (task.getDeadline() == null)
+        {
+            noDeadline.remove(task);
+            noDeadlineByPriority.get(task.getPriority()).remove(task);
+        }
+        else
+        {
+            removeFromBucket(byDeadline, task);
+            removeFromBucket(deadlinesByPriority.get(task.getPriority()), task);
+        }
+        size--;
+    }
+
+    private static void removeFromBucket(TreeMap<LocalDateTime, LinkedHashSet<Task>> tree, Task task)
+    {
+        LinkedHashSet<Task> bucket = tree.get(task.getDeadline());
+        bucket.remove(task);
+        if (bucket.isEmpty())
+            tree.remove(task.getDeadline());
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Lists the tasks in an order that, added one by one to an empty index,
+     * gives every bucket the order it has here, so all the views agree. The
+     * order they were last added in is such an order, but it is not kept: a
+     * task is taken once it leads both its priority bucket and its deadline
+     * bucket, and one always does. O(n) plus the lookups of the buckets.
+     *
+     * @return all tasks.
+     */
+    List<Task> inAddedOrder()
+    {
+        Map<LocalDateTime, Iterator<Task>> deadlineIterators = new HashMap<>();
+        Map<LocalDateTime, Task> deadlineHeads = new HashMap<>();
+        Iterator<Task> withoutDeadline = noDeadline.iterator();
+        if (withoutDeadline.hasNext())
+        {
+            deadlineIterators.put(null, withoutDeadline);
+            deadlineHeads.put(null, withoutDeadline.next());
+        }
+        for (Map.Entry<LocalDateTime, LinkedHashSet<Task>> entry : byDeadline.entrySet())
+        {
+            Iterator<Task> iterator = entry.getValue().iterator();
+            deadlineIterators.put(entry.getKey(), iterator);
+            deadlineHeads.put(entry.getKey(), iterator.next());
+        }
+
+        Priority[] priorities = Priority.values();
+        List<Iterator<Task>> priorityIterators = new ArrayList<>(priorities.length);
+        Task[] priorityHeads = new Task[priorities.length];
+        for (int i = 0; i < priorities.length; i++)
+        {
+            Iterator<Task> iterator = byPriority.get(priorities[i]).iterator();
+            priorityIterators.add(iterator);
+            priorityHeads[i] = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        List<Task> order = new ArrayList<>(size);
+        while (order.size() < size)
+        {
+            boolean taken = false;
+            for (int i = 0; i < priorities.length; i++)
+            {
+                Task head = priorityHeads[i];
+                while (head != null && deadlineHeads.get(head.getDeadline()) == head)
+                {
+                    order.add(head);
+                    Iterator<Task> bucket = deadlineIterators.get(head.getDeadline());
+                    deadlineHeads.put(head.getDeadline(), bucket.hasNext() ? bucket.next() : null);
+                    head = priorityIterators.get(i).hasNext() ? priorityIterators.get(i).next() : null;
+                    priorityHeads[i] = head;
+                    taken = true;
+                }
+            }
+            if (!taken)
+                throw new IllegalStateException("The task index is inconsistent");
+        }
+        return order;
+    }
+
+    /**
+     * Replaces the contents of a list with all tasks in the requested order.
+     *
+     * @param sortBy The attribute to order by.
+     * @param sortOrder The direction.
+     * @param view The list to fill.
+     */
+    void view(SortBy sortBy, SortOrder sortOrder, List<Task> view)
+    {
+        view.clear();
+        boolean ascending = sortOrder == SortOrder.ASCENDING;
+
+        switch (sortBy)
+        {
+            case PRIORITY:
+                Priority[] priorities = Priority.values();
+                for (int i = 0; i < priorities.length; i++)
+                {
+                    view.addAll(byPriority.get(priorities[ascending ? i : priorities.length - 1 - i]));
+                }
+                break;
+            case DEADLINE:
+                if (!ascending)
+                    view.addAll(noDeadline);
+                for (LinkedHashSet<Task> bucket : (ascending ? byDeadline : byDeadline.descendingMap()).values())
+                {
+                    view.addAll(bucket);
+                }
+                if (ascending)
+                    view.addAll(noDeadline);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown sort option");
+        }
+    }
+
+    /**
+     * Appends the tasks matching a query to a list, in the query's order, up to
+     * its limit.
+     *
+     * Only the deadline trees of the requested priorities are walked, and only
+     * inside the requested deadline range: a query with limit k costs
+     * O(log n + k) plus the tasks skipped for completion or description.
+     *
+     * @param query The query.
+     * @param result The list to append to.
+     */
+    void query(TaskQuery query, List<Task> result)
+    {
+        if (query.limit == 0 || query.priorities.isEmpty())
+            return;
+        if (query.deadlineFrom != null && query.deadlineBefore != null && !query.deadlineFrom.isBefore(query.deadlineBefore))
+            return;
+
+        boolean ascending = query.sortOrder == SortOrder.ASCENDING;
+        Priority[] priorities = Priority.values();
+        List<Iterator<Task>> sources = new ArrayList<>(priorities.length);
+        for (int i = 0; i < priorities.length; i++)
+        {
+            Priority priority = priorities[ascending ? i : priorities.length - 1 - i];
+            if (query.priorities.contains(priority))
+                sources.add(walk(priority, query, ascending));
+        }
+
+        int found = 0;
+        if (query.sortBy == SortBy.PRIORITY)
+        {
+            for (Iterator<Task> source : sources)
+            {
+                while (source.hasNext())
+                {
+                    Task task = source.next();
+                    if (query.matchesResidual(task))
+                    {
+                        result.add(task);
+                        if (++found == query.limit)
+                            return;
+                    }
+                }
+            }
+            return;
+        }
+
+        // Deadline order: merge the per-priority walks, earlier sources win ties
+        Task[] heads = new Task[sources.size()];
+        for (int i = 0; i < heads.length; i++)
+        {
+            heads[i] = sources.get(i).hasNext() ? sources.get(i).next() : null;
+        }
+        while (true)
+        {
+            int next = -1;
+            for (int i = 0; i < heads.length; i++)
+            {
+                if (heads[i] != null && (next < 0 || comesBefore(heads[i], heads[next], ascending)))
+                    next = i;
+            }
+            if (next < 0)
+                return;
+
+            Task task = heads[next];
+            heads[next] = sources.get(next).hasNext() ? sources.get(next).next() : null;
+            if (query.matchesResidual(task))
+            {
+                result.add(task);
+                if (++found == query.limit)
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Whether a comes strictly before b in deadline order, tasks without a
+     * deadline being last when ascending and first when descending.
+     */
+    private static boolean comesBefore(Task a, Task b, boolean ascending)
+    {
+        LocalDateTime x = a.getDeadline();
+        LocalDateTime y = b.getDeadline();
+        if (x == null || y == null)
+            return ascending ? x != null && y == null : x == null && y != null;
+        return ascending ? x.isBefore(y) : x.isAfter(y);
+    }
+
+    /**
+     * The tasks of one priority inside the query's deadline range, in deadline
+     * order; tasks without a deadline are included only without a range.
+     */
+    private Iterator<Task> walk(Priority priority, TaskQuery query, boolean ascending)
+    {
+        NavigableMap<LocalDateTime, LinkedHashSet<Task>> tree = deadlinesByPriority.get(priority);
+        if (query.deadlineFrom != null)
+            tree = tree.tailMap(query.deadlineFrom, true);
+        if (query.deadlineBefore != null)
+            tree = tree.headMap(query.deadlineBefore, false);
+        if (!ascending)
+            tree = tree.descendingMap();
+
+        LinkedHashSet<Task> withoutDeadline = query.hasDeadlineRange() ? null : noDeadlineByPriority.get(priority);
+        return new Walk(ascending ? null : withoutDeadline, tree.values().iterator(), ascending ? withoutDeadline : null);
+    }
+
+    /**
+     * Iterates over an optional set of tasks, the tasks of a sequence of
+     * buckets, then another optional set.
+     */
+    private static final class Walk implements Iterator<Task>
+    {
+        private final Iterator<LinkedHashSet<Task>> buckets;
+        private final Collection<Task> last;
+        private Iterator<Task> current;
+        private boolean lastStarted;
+
+        Walk(Collection<Task> first, Iterator<LinkedHashSet<Task>> buckets, Collection<Task> last)
+        {
+            this.buckets = buckets;
+            this.last = last;
+            this.current = first != null ? first.iterator() : Collections.emptyIterator();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!current.hasNext())
+            {
+                if (buckets.hasNext())
+                    current = buckets.next().iterator();
+                else if (!lastStarted && last != null)
+                {
+                    lastStarted = true;
+                    current = last.iterator();
+                }
+                else
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Task next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return current.next();
+        }
+    }
+}
@@ -0,0 +1,816 @@
+package todolist.data;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Append-only mutation log kept next to the task snapshot file.
+ *
+ * Instead of rewriting the whole snapshot after every change, each add, remove
+ * and toggle is appended as one small record. On load the records are replayed
+ * on top of the last snapshot, and once the log grows past a threshold it is
+ * folded into a new snapshot (compaction) on a background thread.
+ *
+ * Every record is one line: an operation letter, a comma and the CSV line of
+ * the task involved, as produced by {@link Task#AsCsvLine()}.
+ *
+ *   A,line   the task was added
+ *   R,line   the task was removed
+ *   T,line   the completion flag of the task was toggled (line after the toggle)
+ *
+ * A toggle is replayed by setting the completion it records, not by flipping
+ * it, so replaying it on a snapshot that already holds it changes nothing. A
+ * background compaction writes copies of the tasks taken when it started; the
+ * rows of a task table may still contain changes made after that, whose
+ * records are in the new log.
+ *
+ * A snapshot ends with a {@link SnapshotTrailer} holding its row count and
+ * checksum, and is fsynced before it is renamed into place. The snapshot it
+ * replaces is kept as the previous generation, with the records that lead
+ * from it to the new one. If the snapshot fails its checksum at startup, the
+ * previous generation is loaded instead and those records are replayed first,
+ * and the next compaction writes a good snapshot again.
+ *
+ * Files used inside the data directory (for a snapshot called tasks.csv):
+ *
+ *   tasks.log            records written since the last compaction started
+ *   tasks.log.1          records being folded into the next snapshot
+ *   tasks.log.1.done     records already contained in tasks.csv.tmp
+ *   tasks.log.1.repair   the same, for the snapshot replacing a damaged one
+ *   tasks.csv.tmp        the snapshot being written
+ *   tasks.csv.prev       the previous snapshot, a hard link where possible
+ *   tasks.log.prev       records leading from tasks.csv.prev to tasks.csv
+ *   tasks.csv.bad        a copy of the last snapshot that failed its checksum
+ */
+public class TaskLog
+{
+    public static final char ADD = 'A';
+    public static final char REMOVE = 'R';
+    public static final char TOGGLE = 'T';
+
+    static final long DEFAULT_COMPACT_THRESHOLD = 1024 * 1024; // bytes
+
+    private final File snapshotFile;
+    private final File logFile;
+    private final File pendingFile;
+    private final File doneFile;
+    private final File tmpFile;
+    private final File previousFile;
+    private final File previousLogFile;
+    private final File repairFile;
+    private final File badFile;
+    private final long compactThreshold;
+    private final Consumer<String> warnings;
+    private final ExecutorService compactor;
+
+    private FileOutputStream logOut;
+    private BufferedOutputStream writer;
+    private long logBytes;
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private Future<?> pending;
+
+    private File source;
+    private long sourceLength;
+    private long sourceRows = -1;
+    private volatile boolean fallback;
+
+    /**
+     * Creates the log for the given snapshot file, with its warnings written
+     * to System.err.
+     *
+     * @param snapshotFile The CSV snapshot the log records apply to.
+     * @param compactThreshold Log size in bytes after which a compaction is started.
+     */
+    public TaskLog(File snapshotFile, long compactThreshold)
+    {
+        this(snapshotFile, compactThreshold, System.err::println);
+    }
+
+    /**
+     * Creates the log for the given snapshot file.
+     *
+     * @param snapshotFile The CSV snapshot the log records apply to.
+     * @param compactThreshold Log size in bytes after which a compaction is started.
+     * @param warnings Receives the warnings about damaged files and records and failed writes.
+     */
+    public TaskLog(File snapshotFile, long compactThreshold, Consumer<String> warnings)
+    {
+        this.snapshotFile = snapshotFile;
+        this.logFile = sibling(".log");
+        this.pendingFile = new File(logFile.getPath() + ".1");
+        this.doneFile = new File(pendingFile.getPath() + ".done");
+        this.tmpFile = sibling(".tmp");
+        this.previousFile = new File(snapshotFile.getPath() + ".prev");
+        this.previousLogFile = new File(logFile.getPath() + ".prev");
+        this.repairFile = new File(pendingFile.getPath() + ".repair");
+        this.badFile = new File(snapshotFile.getPath() + ".bad");
+        this.source = snapshotFile;
+        this.compactThreshold = compactThreshold;
+        this.warnings = warnings;
+        this.logBytes = logFile.length();
+        this.compactor = Executors.newSingleThreadExecutor(r ->
+        {
+            Thread thread = new Thread(r, "task-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private File sibling(String suffix)
+    {
+        String name = snapshotFile.getName();
+        int dot = name.lastIndexOf('.');
+        if (suffix.equals(".tmp") || dot < 0)
+            return new File(snapshotFile.getParentFile(), name + suffix);
+        return new File(snapshotFile.getParentFile(), name.substring(0, dot) + suffix);
+    }
+
+    /**
+     * Writes the rows of a new snapshot file.
+     */
+    interface Snapshot
+    {
+        /**
+         * @return the number of rows written.
+         */
+        long writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Takes the states of the tasks on the calling thread, so a snapshot
+     * written from them on another thread holds the tasks as they are now.
+     */
+    static TaskState[] states(List<Task> tasks)
+    {
+        TaskState[] states = new TaskState[tasks.size()];
+        for (int i = 0; i < states.length; i++)
+        {
+            states[i] = TaskState.of(tasks.get(i));
+        }
+        return states;
+    }
+
+    /**
+     * A snapshot of the CSV lines of the given task states.
+     */
+    static Snapshot rows(TaskState[] tasks)
+    {
+        return out ->
+        {
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+            for (TaskState task : tasks)
+            {
+                writer.println(task.toTask().AsCsvLine());
+            }
+            writer.flush();
+            if (writer.checkError())
+                throw new IOException("Error writing snapshot");
+            return tasks.length;
+        };
+    }
+
+    /**
+     * Finishes or rolls back a compaction that was interrupted by a crash and
+     * checks the snapshot. Must be called before the snapshot is read, from
+     * {@link #snapshotToRead()}.
+     *
+     * If the records of tasks.log.1 were already marked as contained in the new
+     * snapshot, the new snapshot is moved into place. Otherwise the half written
+     * snapshot is discarded and the records are replayed from tasks.log.1.
+     *
+     * A snapshot failing its checksum is copied to tasks.csv.bad and, if there
+     * is a previous generation, that one is read instead.
+     */
+    public void recover()
+    {
+        try
+        {
+            if (doneFile.exists())
+            {
+                if (tmpFile.exists())
+                {
+                    keepPrevious();
+                    Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                keepPreviousLog();
+            }
+            else if (repairFile.exists())
+            {
+                if (tmpFile.exists())
+                    Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                dropPrevious();
+            }
+            else
+            {
+                Files.deleteIfExists(tmpFile.toPath());
+            }
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("Error recovering interrupted compaction of: " + snapshotFile.getAbsolutePath());
+            ex.printStackTrace();
+        }
+        check();
+    }
+
+    /**
+     * Verifies the trailer of the snapshot and chooses the file to read.
+     */
+    private void check()
+    {
+        source = snapshotFile;
+        sourceLength = snapshotFile.length();
+        sourceRows = -1;
+        fallback = false;
+        if (sourceLength == 0)
+            return;
+
+        try
+        {
+            SnapshotTrailer trailer = SnapshotTrailer.read(snapshotFile);
+            if (trailer == null)
+                return; // written by hand or before trailers
+            sourceLength = trailer.dataLength;
+            sourceRows = trailer.rows;
+            if (trailer.matches(snapshotFile))
+                return;
+
+            warnings.accept("The tasks file failed its checksum: " + snapshotFile.getAbsolutePath());
+            Files.copy(snapshotFile.toPath(), badFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            SnapshotTrailer previous = previousFile.exists() ? SnapshotTrailer.read(previousFile) : null;
+            if (!previousFile.exists() || (previous != null && !previous.matches(previousFile)))
+            {
+                warnings.accept("There is no good previous generation, reading what is left. A copy was kept as: "
+                        + badFile.getAbsolutePath());
+                return;
+            }
+
+            warnings.accept("Reading the previous generation instead. A copy of the damaged file was kept as: "
+                    + badFile.getAbsolutePath());
+            source = previousFile;
+            sourceLength = previous != null ? previous.dataLength : previousFile.length();
+            sourceRows = previous != null ? previous.rows : -1;
+            fallback = true;
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("Error checking the tasks file: " + snapshotFile.getAbsolutePath());
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the snapshot file to read, chosen by {@link #recover()}.
+     */
+    File snapshotToRead()
+    {
+        return source;
+    }
+
+    /**
+     * @return the number of bytes of {@link #snapshotToRead()} holding rows,
+     *         which ends before the trailer.
+     */
+    long snapshotLength()
+    {
+        return sourceLength;
+    }
+
+    /**
+     * @return the number of rows in the trailer of {@link #snapshotToRead()}, -1 if it has none.
+     */
+    long snapshotRows()
+    {
+        return sourceRows;
+    }
+
+    /**
+     * Keeps the current snapshot as the previous generation. A hard link
+     * costs nothing; where links are not supported the file is copied. If
+     * neither works there is no previous generation, which only matters
+     * should the new snapshot be damaged.
+     */
+    private void keepPrevious() throws IOException
+    {
+        Files.deleteIfExists(previousFile.toPath());
+        if (!snapshotFile.exists())
+            return;
+        try
+        {
+            Files.createLink(previousFile.toPath(), snapshotFile.toPath());
+        }
+        catch (UnsupportedOperationException | IOException linkFailed)
+        {
+            try
+            {
+                Files.copy(snapshotFile.toPath(), previousFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (IOException ex)
+            {
+                warnings.accept("Cannot keep the previous tasks file: " + ex.getMessage());
+                Files.deleteIfExists(previousFile.toPath());
+            }
+        }
+    }
+
+    /**
+     * Keeps tasks.log.1.done as the records leading from the previous
+     * generation to the snapshot, or drops it if there is no previous one.
+     */
+    private void keepPreviousLog() throws IOException
+    {
+        if (previousFile.exists())
+        {
+            Files.move(doneFile.toPath(), previousLogFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        else
+        {
+            Files.deleteIfExists(previousLogFile.toPath());
+            Files.delete(doneFile.toPath());
+        }
+    }
+
+    /**
+     * Ends a repair: the snapshot is good again and the previous generation,
+     * which led to the damaged one, is dropped.
+     */
+    private void dropPrevious() throws IOException
+    {
+        Files.deleteIfExists(previousFile.toPath());
+        Files.deleteIfExists(previousLogFile.toPath());
+        Files.delete(repairFile.toPath());
+    }
+
+    /**
+     * Applies all logged records, oldest first, to the tasks read from the snapshot.
+     * Records are matched to tasks by ID through a {@link TaskIdMap}; removed
+     * tasks are only marked while replaying and dropped from the list in one pass
+     * at the end, so replaying many removals stays linear. An added task
+     * replaces a task with the same ID still in the list.
+     *
+     * @param tasks The tasks loaded from the snapshot, with their IDs assigned.
+     * @return the number of records applied.
+     */
+    public int replay(List<Task> tasks)
+    {
+        TaskIdMap ids = new TaskIdMap(tasks.size());
+        for (Task task : tasks)
+        {
+            ids.put(task);
+        }
+        Set<Task> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        int applied = replay((op, task) ->
+        {
+            switch (op)
+            {
+                case ADD ->
+                {
+                    // an edit logs a removal and an addition; a compaction may
+                    // hold the task between the two, so the addition replaces it
+                    Task old = task.getId() != 0 ? ids.get(task.getId()) : null;
+                    if (old != null)
+                        removed.add(old);
+                    tasks.add(task);
+                    ids.put(task);
+                }
+                case REMOVE ->
+                {
+                    Task target = find(task, task.isCompleted(), tasks, ids, removed);
+                    if (target != null)
+                    {
+                        ids.remove(target.getId());
+                        removed.add(target);
+                    }
+                }
+                default ->
+                {
+                    Task target = find(task, !task.isCompleted(), tasks, ids, removed);
+                    if (target != null)
+                        target.setCompleted(task.isCompleted());
+                }
+            }
+        });
+        if (!removed.isEmpty())
+            tasks.removeIf(removed::contains);
+        return applied;
+    }
+
+    /**
+     * Receives the records of the log while it is replayed.
+     */
+    interface Replay
+    {
+        /**
+         * @param op {@link #ADD}, {@link #REMOVE} or {@link #TOGGLE}.
+         * @param task The task of the record; for a toggle, in its state after the toggle.
+         */
+        void apply(char op, Task task);
+    }
+
+    /**
+     * Passes all logged records, oldest first, to a receiver. Torn and
+     * unknown records are skipped with a warning. When the previous generation
+     * is read, the records leading from it to the damaged snapshot come first.
+     *
+     * @return the number of records passed.
+     */
+    int replay(Replay target)
+    {
+        int applied = fallback ? replay(previousLogFile, target) : 0;
+        return applied + replay(pendingFile, target) + replay(logFile, target);
+    }
+
+    private int replay(File file, Replay target)
+    {
+        if (!file.exists())
+            return 0;
+
+        int applied = 0;
+        bytesRead.addAndGet(file.length());
+        try (TaskCsvReader reader = new TaskCsvReader(new FileInputStream(file), warnings))
+        {
+            while (reader.nextRecord())
+            {
+                if (reader.fieldLength(0) != 1 || reader.fieldCount() < 3)
+                {
+                    // a torn last record after a crash, nothing after it was written
+                    warnings.accept("Skipping invalid log record: " + reader.recordText());
+                    continue;
+                }
+
+                Task task = reader.toTask(1);
+                if (task == null)
+                    continue;
+                char op = reader.firstChar(0);
+                if (op != ADD && op != REMOVE && op != TOGGLE)
+                {
+                    warnings.accept("Skipping unknown log record: " + reader.recordText());
+                    continue;
+                }
+                target.apply(op, task);
+                applied++;
+            }
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("Error reading log file: " + file.getAbsolutePath());
+            ex.printStackTrace();
+        }
+        return applied;
+    }
+
+    /**
+     * Finds the task a record refers to: by ID, or for records written before
+     * tasks had IDs, the first remaining task with the same fields and the
+     * given completion.
+     */
+    private static Task find(Task record, boolean completed, List<Task> tasks, TaskIdMap ids, Set<Task> removed)
+    {
+        if (record.getId() != 0)
+            return ids.get(record.getId());
+
+        for (Task task : tasks)
+        {
+            if (!removed.contains(task)
+                    && task.getDescription().equals(record.getDescription())
+                    && task.getPriority() == record.getPriority()
+                    && Objects.equals(task.getDeadline(), record.getDeadline())
+                    && task.isCompleted() == completed)
+                return task;
+        }
+        return null;
+    }
+
+    /**
+     * Appends one record to the log. The record is buffered until {@link #flush()},
+     * {@link #sync()} or the next compaction. It is written in UTF-8, as the log
+     * is read, and its bytes count toward the compaction threshold.
+     *
+     * @param op The operation: {@link #ADD}, {@link #REMOVE} or {@link #TOGGLE}.
+     * @param task The task the operation applies to, in its state after a toggle.
+     */
+    public void append(char op, Task task)
+    {
+        byte[] record = (op + "," + task.AsCsvLine() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        try
+        {
+            if (writer == null)
+            {
+                logOut = new FileOutputStream(logFile, true);
+                writer = new BufferedOutputStream(logOut);
+            }
+            writer.write(record);
+            logBytes += record.length;
+            bytesWritten.addAndGet(record.length);
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("IO Error in appending to the tasks log.");
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Hands the buffered records to the operating system.
+     */
+    public void flush()
+    {
+        if (writer == null)
+            return;
+        try
+        {
+            writer.flush();
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("IO Error in writing the tasks log.");
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Hands the buffered records to the operating system and waits until they
+     * are on the storage device, so they survive a power loss.
+     */
+    public void sync()
+    {
+        if (writer == null)
+            return;
+        try
+        {
+            writer.flush();
+            logOut.getFD().sync();
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("IO Error in writing the tasks log.");
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of bytes of snapshots and logs read so far.
+     */
+    long bytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    /**
+     * Counts bytes read from the snapshot.
+     */
+    void read(long bytes)
+    {
+        bytesRead.addAndGet(bytes);
+    }
+
+    /**
+     * @return the number of bytes of snapshots and log records written so far.
+     */
+    long bytesWritten()
+    {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return true when the log has grown past the compaction threshold.
+     */
+    public boolean needsCompaction()
+    {
+        return logBytes >= compactThreshold;
+    }
+
+    /**
+     * @return true while a background compaction is running, when
+     *         {@link #compactAsync(Snapshot)} would not start another.
+     */
+    boolean compacting()
+    {
+        return pending != null && !pending.isDone();
+    }
+
+    /**
+     * Starts a compaction on the background thread unless one is already running.
+     * The states of the tasks are copied before returning, under the same lock
+     * as the records are appended, so the snapshot holds the tasks as they
+     * were when the log was rotated; the caller may keep changing them.
+     *
+     * @param tasks The current tasks, in the order they should be written.
+     */
+    public void compactAsync(List<Task> tasks)
+    {
+        if (!compacting())
+            compactAsync(rows(states(tasks)));
+    }
+
+    /**
+     * Starts a compaction of a snapshot on the background thread unless one is
+     * already running. The rows it writes may only change by the records
+     * logged after this call, which are replayed on top.
+     *
+     * @param snapshot Writes the rows of the new snapshot.
+     */
+    void compactAsync(Snapshot snapshot)
+    {
+        if (compacting())
+            return;
+
+        if (!rotate())
+            return;
+        pending = compactor.submit(() -> commitSnapshot(snapshot));
+    }
+
+    /**
+     * Writes a new snapshot on the calling thread and empties the log.
+     * Waits for a running background compaction first.
+     *
+     * @param tasks The current tasks, in the order they should be written.
+     */
+    public void compactNow(List<Task> tasks)
+    {
+        compactNow(rows(states(tasks)));
+    }
+
+    /**
+     * Writes a snapshot on the calling thread and empties the log.
+     * Waits for a running background compaction first.
+     *
+     * @param snapshot Writes the rows of the new snapshot.
+     */
+    void compactNow(Snapshot snapshot)
+    {
+        awaitPending();
+        if (rotate())
+            commitSnapshot(snapshot);
+    }
+
+    /**
+     * Waits for a running compaction and closes the log file.
+     */
+    public void close()
+    {
+        awaitPending();
+        closeWriter();
+        compactor.shutdown();
+    }
+
+    private void awaitPending()
+    {
+        if (pending == null)
+            return;
+        try
+        {
+            pending.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex)
+        {
+            ex.getCause().printStackTrace();
+        }
+        pending = null;
+    }
+
+    private void closeWriter()
+    {
+        if (writer == null)
+            return;
+        try
+        {
+            writer.flush();
+            logOut.getFD().sync(); // the records stay needed until the next snapshot is in place
+            writer.close();
+        }
+        catch (IOException ex)
+        {
+            ex.printStackTrace();
+        }
+        writer = null;
+        logOut = null;
+    }
+
+    /**
+     * Moves the active log to tasks.log.1 so new records go to a fresh file.
+     * If an earlier compaction failed and left tasks.log.1 behind, the active
+     * log is appended to it instead, so tasks.log.1 always holds every record
+     * missing from the snapshot.
+     */
+    private boolean rotate()
+    {
+        closeWriter();
+        try
+        {
+            if (!pendingFile.exists())
+            {
+                if (logFile.exists())
+                    Files.move(logFile.toPath(), pendingFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                else
+                    pendingFile.createNewFile();
+            }
+            else if (logFile.exists())
+            {
+                try (OutputStream out = new FileOutputStream(pendingFile, true))
+                {
+                    Files.copy(logFile.toPath(), out);
+                }
+                Files.delete(logFile.toPath());
+            }
+            logBytes = 0;
+            return true;
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("IO Error in rotating the tasks log.");
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the snapshot with its trailer to tasks.csv.tmp, marks tasks.log.1
+     * as contained in it and moves it into place, keeping the old snapshot and
+     * tasks.log.1 as the previous generation. Each step is a single rename or
+     * link, so {@link #recover()} can tell after a crash which files hold the
+     * records.
+     *
+     * A snapshot replacing a damaged one is marked with tasks.log.1.repair
+     * instead, and the previous generation is dropped once it is in place.
+     */
+    private void commitSnapshot(Snapshot snapshot)
+    {
+        try
+        {
+            try (FileOutputStream out = new FileOutputStream(tmpFile, false))
+            {
+                BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+                CRC32C checksum = new CRC32C();
+                long rows = snapshot.writeTo(new CheckedOutputStream(buffered, checksum));
+                buffered.write(SnapshotTrailer.line(rows, checksum.getValue()));
+                buffered.flush();
+                out.getFD().sync();
+                bytesWritten.addAndGet(out.getChannel().size());
+            }
+
+            if (fallback)
+            {
+                Files.move(pendingFile.toPath(), repairFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+                dropPrevious();
+                fallback = false;
+            }
+            else
+            {
+                Files.move(pendingFile.toPath(), doneFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                keepPrevious();
+                Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+                keepPreviousLog();
+            }
+        }
+        catch (IOException ex)
+        {
+            warnings.accept("IO Error in saving tasks data: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Makes the renames in the data directory durable. Not every platform can
+     * open a directory; there the renames are left to the file system.
+     */
+    private void syncDirectory()
+    {
+        File directory = snapshotFile.getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+        catch (IOException ex)
+        {
+            // not supported here
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package todolist.data;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+
+/**
+ * A filtered, ordered and limited selection of tasks, run with
+ * {@link Database#query(TaskQuery)}.
+ *
+ * The priority and deadline conditions are answered from the indexes, so only
+ * tasks inside the requested priorities and deadline range are visited; the
+ * completion and description conditions are checked on the visited tasks.
+ * With a limit the walk stops after that many matches, so "the 10 nearest
+ * deadlines among incomplete HIGH tasks" does not sort or copy the whole list.
+ *
+ * Results are ordered by the requested attribute, then by the other one:
+ * by priority, then deadline (tasks without a deadline last), or by deadline,
+ * then priority. Descending reverses both; tasks with the same priority and
+ * deadline stay in the order they were added.
+ *
+ *   new TaskQuery().priority(Priority.HIGH).completed(false)
+ *                  .orderBy(SortBy.DEADLINE, SortOrder.ASCENDING).limit(10)
+ */
+public class TaskQuery
+{
+    EnumSet<Priority> priorities = EnumSet.allOf(Priority.class);
+    Boolean completed;
+    LocalDateTime deadlineFrom;
+    LocalDateTime deadlineBefore;
+    String text;
+    SortBy sortBy = SortBy.PRIORITY;
+    SortOrder sortOrder = SortOrder.ASCENDING;
+    int limit = Integer.MAX_VALUE;
+
+    /**
+     * Keeps only tasks with one of the given priorities.
+     */
+    public TaskQuery priority(Priority first, Priority... others)
+    {
+        priorities = EnumSet.of(first, others);
+        return this;
+    }
+
+    /**
+     * Keeps only completed (true) or incomplete (false) tasks.
+     */
+    public TaskQuery completed(boolean completed)
+    {
+        this.completed = completed;
+        return this;
+    }
+
+    /**
+     * Keeps only tasks with a deadline at or after the given time. Called
+     * again, the later of the times is kept, so both conditions hold.
+     */
+    public TaskQuery deadlineFrom(LocalDateTime from)
+    {
+        if (deadlineFrom == null || from.isAfter(deadlineFrom))
+            deadlineFrom = from;
+        return this;
+    }
+
+    /**
+     * Keeps only tasks with a deadline before the given time. Called again,
+     * the earlier of the times is kept.
+     */
+    public TaskQuery deadlineBefore(LocalDateTime before)
+    {
+        if (deadlineBefore == null || before.isBefore(deadlineBefore))
+            deadlineBefore = before;
+        return this;
+    }
+
+    /**
+     * Keeps only incomplete tasks whose deadline is before the given time.
+     */
+    public TaskQuery overdue(LocalDateTime now)
+    {
+        return deadlineBefore(now).completed(false);
+    }
+
+    /**
+     * Keeps only tasks whose description contains the text, ignoring case.
+     */
+    public TaskQuery descriptionContains(String text)
+    {
+        this.text = text.isEmpty() ? null : text;
+        return this;
+    }
+
+    public TaskQuery orderBy(SortBy sortBy, SortOrder sortOrder)
+    {
+        this.sortBy = sortBy;
+        this.sortOrder = sortOrder;
+        return this;
+    }
+
+    /**
+     * Returns at most the given number of tasks.
+     */
+    public TaskQuery limit(int limit)
+    {
+        if (limit < 0)
+            throw new IllegalArgumentException("limit must not be negative");
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @return whether any deadline condition is set, which excludes tasks without a deadline.
+     */
+    boolean hasDeadlineRange()
+    {
+        return deadlineFrom != null || deadlineBefore != null;
+    }
+
+    /**
+     * Checks the conditions that are not answered by the indexes.
+     */
+    boolean matchesResidual(Task task)
+    {
+        if (completed != null && task.isCompleted() != completed)
+            return false;
+        return text == null || containsIgnoreCase(task.getDescription(), text);
+    }
+
+    /**
+     * Checks every condition, without the indexes.
+     */
+    public boolean matches(Task task)
+    {
+        if (!priorities.contains(task.getPriority()))
+            return false;
+        LocalDateTime deadline = task.getDeadline();
+        if (hasDeadlineRange())
+        {
+            if (deadline == null)
+                return false;
+            if (deadlineFrom != null && deadline.isBefore(deadlineFrom))
+                return false;
+            if (deadlineBefore != null && !deadline.isBefore(deadlineBefore))
+                return false;
+        }
+        return matchesResidual(task);
+    }
+
+    private static boolean containsIgnoreCase(String haystack, String needle)
+    {
+        int last = haystack.length() - needle.length();
+        for (int i = 0; i <= last; i++)
+        {
+            if (haystack.regionMatches(true, i, needle, 0, needle.length()))
+                return true;
+        }
+        return false;
+    }
+}
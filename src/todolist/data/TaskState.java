@@ -0,0 +1,63 @@
+package todolist.data;
+
+import java.time.LocalDateTime;
+
+/**
+ * The fields of a task at one point in time, or that there was no task with
+ * the ID. Unlike {@link Task} it never changes, so versions of the task
+ * history can share it.
+ */
+record TaskState(long id, String description, Priority priority, LocalDateTime deadline, boolean completed)
+{
+    /**
+     * @return the current state of a task.
+     */
+    static TaskState of(Task task)
+    {
+        return new TaskState(task.getId(), task.getDescription(), task.getPriority(), task.getDeadline(), task.isCompleted());
+    }
+
+    /**
+     * @return the state of an ID without a task.
+     */
+    static TaskState absent(long id)
+    {
+        return new TaskState(id, null, null, null, false);
+    }
+
+    /**
+     * @return whether there is a task in this state.
+     */
+    boolean present()
+    {
+        return description != null;
+    }
+
+    /**
+     * @return the same state with the other completion.
+     */
+    TaskState toggled()
+    {
+        return new TaskState(id, description, priority, deadline, !completed);
+    }
+
+    /**
+     * @return a new task in this state.
+     */
+    Task toTask()
+    {
+        Task task = new Task(description, priority, deadline);
+        task.setId(id);
+        task.setCompleted(completed);
+        return task;
+    }
+
+    /**
+     * @return about the bytes this state keeps alive: the record, and its
+     *         description and deadline as if they were not shared.
+     */
+    long bytes()
+    {
+        return 32 + (description == null ? 0 : 48 + description.length()) + (deadline == null ? 0 : 48);
+    }
+}
@@ -0,0 +1,69 @@
+package todolist.data;
+
+import java.util.List;
+
+/**
+ * Persistence backend of the {@link Database}.
+ *
+ * The database keeps the tasks in memory and tells the store about every
+ * change as it happens, so a store can persist a single change cheaply
+ * instead of rewriting all tasks. {@link #save(List)} is called when a full,
+ * consistent copy must be on disk, for example on exit.
+ */
+public interface TaskStore
+{
+    /**
+     * Reads all stored tasks into the given list. The list is kept as the
+     * store's view of the current tasks, stores may read it when compacting.
+     *
+     * @param tasks The list to fill, in storage order.
+     */
+    void load(List<Task> tasks);
+
+    /**
+     * @param task A task that was just added.
+     */
+    void added(Task task);
+
+    /**
+     * @param task A task that was just removed.
+     */
+    void removed(Task task);
+
+    /**
+     * @param task A task whose completion flag was just toggled, in its new state.
+     */
+    void completionChanged(Task task);
+
+    /**
+     * Hands changes buffered since the last flush to the operating system.
+     */
+    void flush();
+
+    /**
+     * Waits until the changes flushed so far are on the storage device.
+     */
+    void sync();
+
+    /**
+     * Writes all tasks, in the given order, so nothing depends on earlier changes.
+     *
+     * @param tasks The current tasks.
+     */
+    void save(List<Task> tasks);
+
+    /**
+     * @return the number of bytes read from the store's files so far.
+     */
+    long bytesRead();
+
+    /**
+     * @return the number of bytes written to the store's files so far.
+     */
+    long bytesWritten();
+
+    /**
+     * Waits for background work and releases open files.
+     */
+    void close();
+}
@@ -0,0 +1,567 @@
+package todolist.data;
+
+import java.io.Closeable;
+import java.util.*;
+
+/**
+ * Tasks kept without a full list of {@link Task} objects, for the database
+ * modes that load tasks.csv differently: on demand ({@link LazyTaskFile}) or
+ * in columns ({@link ColumnarTaskTable}).
+ *
+ * Tasks are addressed by position: the rows read at load, in file order, then
+ * the tasks added later. The current order is an array of positions and
+ * removed positions are only marked. Once sorted, added tasks are inserted in
+ * their place by a binary search. Lists handed out are views over an order
+ * array that is replaced, never changed in place, so they do not follow later
+ * changes; while no view shares it, an insertion shifts the array in place.
+ *
+ * Sorting works on primitive keys of the positions: a counting sort over the
+ * priority levels, or a stable sort by deadline. Tasks with equal keys keep
+ * their position order, as they keep their insertion order in the indexes of
+ * a full load. IDs are looked up through the positions sorted by ID, built at
+ * the first lookup, and a hash map of the positions given out after it.
+ */
+abstract class TaskTable implements Closeable
+{
+    /** Deadline key of a task without a deadline, after every other key. */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private int[] order = new int[0];
+    private int size;
+    private final BitSet removed = new BitSet();
+    private int[] byId;
+    private final HashMap<Long, Integer> newer = new HashMap<>();
+    private boolean changed;
+    private long maxId;
+    private SortBy sortBy;
+    private SortOrder sortOrder;
+    private boolean shared; // a view reads the order array
+
+    /**
+     * Orders two positions, like a comparator without boxing.
+     */
+    interface PositionOrder
+    {
+        int compare(int a, int b);
+    }
+
+    /**
+     * @return the number of positions given out, removed ones included.
+     */
+    abstract int positions();
+
+    abstract long id(int position);
+
+    /**
+     * @return the ordinal of the priority at a position.
+     */
+    abstract int priority(int position);
+
+    /**
+     * @return the deadline at a position in epoch seconds, or {@link #NO_DEADLINE}.
+     */
+    abstract long deadlineKey(int position);
+
+    /**
+     * @return the completion at a position.
+     */
+    abstract boolean completed(int position);
+
+    /**
+     * @return the task at a position, decoded or as a view.
+     */
+    abstract Task decode(int position);
+
+    /**
+     * Stores an added task.
+     *
+     * @return its position, the next one.
+     */
+    abstract int store(Task task);
+
+    /**
+     * Called before the task at a position is changed through {@link #forChange}.
+     */
+    void changing(int position)
+    {
+    }
+
+    /**
+     * Called when the task at a position is removed.
+     */
+    void removing(int position)
+    {
+    }
+
+    /**
+     * Builds real tasks for every position, for the operations of the
+     * database that need them all. Views handed out before and after
+     * return the same task objects.
+     *
+     * @return the live tasks, in position order.
+     */
+    abstract List<Task> materialize();
+
+    /**
+     * Captures the current tasks as a snapshot for the {@link TaskLog}. The
+     * snapshot can be written on another thread while the table keeps changing.
+     */
+    abstract TaskLog.Snapshot snapshot();
+
+    /**
+     * Makes the current order the loaded positions 0..count-1.
+     *
+     * @param count The number of loaded tasks.
+     * @param maxId The highest ID among them.
+     */
+    void loaded(int count, long maxId)
+    {
+        this.maxId = maxId;
+        order = new int[count];
+        for (int p = 0; p < count; p++)
+        {
+            order[p] = p;
+        }
+        size = count;
+        shared = false;
+    }
+
+    /**
+     * @return whether any task was added, removed or changed since loading.
+     */
+    synchronized boolean changed()
+    {
+        return changed;
+    }
+
+    /**
+     * @return the highest task ID loaded or added, 0 if there is none.
+     */
+    synchronized long maxId()
+    {
+        return maxId;
+    }
+
+    boolean isRemoved(int position)
+    {
+        return removed.get(position);
+    }
+
+    /**
+     * @return a copy of the current order.
+     */
+    int[] currentOrder()
+    {
+        return Arrays.copyOf(order, size);
+    }
+
+    /**
+     * @return the tasks in their current order, as a read-only list.
+     */
+    synchronized List<Task> view()
+    {
+        shared = true;
+        return new View(order, size);
+    }
+
+    /**
+     * @return all tasks in the order of their rows, which is the order they
+     *         were added in and the one equal keys keep when sorting.
+     */
+    synchronized List<Task> inAddedOrder()
+    {
+        int[] positions = livePositions();
+        return new View(positions, positions.length);
+    }
+
+    /**
+     * @return all tasks in the given order, without changing the current order.
+     */
+    synchronized List<Task> sorted(SortBy sortBy, SortOrder sortOrder)
+    {
+        int[] positions = sortedPositions(sortBy, sortOrder);
+        return new View(positions, positions.length);
+    }
+
+    /**
+     * Replaces the current order with the given one.
+     */
+    synchronized void sort(SortBy sortBy, SortOrder sortOrder)
+    {
+        order = sortedPositions(sortBy, sortOrder);
+        size = order.length;
+        shared = false;
+        this.sortBy = sortBy;
+        this.sortOrder = sortOrder;
+    }
+
+    /**
+     * Looks up a task by its ID.
+     *
+     * @return the task, or null if there is no task with that ID.
+     */
+    synchronized Task get(long id)
+    {
+        int position = position(id);
+        return position < 0 ? null : decode(position);
+    }
+
+    /**
+     * Looks up a task that is about to be changed.
+     *
+     * @return the task, or null if there is no task with that ID.
+     */
+    synchronized Task forChange(long id)
+    {
+        int position = position(id);
+        if (position < 0)
+            return null;
+        changing(position);
+        changed = true;
+        return decode(position);
+    }
+
+    /**
+     * Adds a task with its ID already assigned to the current order: after
+     * the tasks it ties with once sorted, at the end before that.
+     */
+    synchronized void add(Task task)
+    {
+        int position = store(task);
+        maxId = Math.max(maxId, task.getId());
+        if (byId != null)
+            newer.put(task.getId(), position);
+
+        int index = sortBy == null ? size : upperBound(position);
+        if (size == order.length || (shared && index < size))
+        {
+            // views only read below their own size, anything else needs a new array
+            int[] grown = new int[size == order.length ? Math.max(16, size + (size >> 1)) : order.length];
+            System.arraycopy(order, 0, grown, 0, index);
+            System.arraycopy(order, index, grown, index + 1, size - index);
+            order = grown;
+            shared = false;
+        }
+        else
+        {
+            System.arraycopy(order, index, order, index + 1, size - index);
+        }
+        order[index] = position;
+        size++;
+        changed = true;
+    }
+
+    /**
+     * Finds where a task is in the current order.
+     *
+     * @return its index, or -1 if there is no task with that ID.
+     */
+    synchronized int indexOf(long id)
+    {
+        int position = position(id);
+        if (position < 0)
+            return -1;
+        if (sortBy == null)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                if (order[i] == position)
+                    return i;
+            }
+            return -1;
+        }
+        // the newest tasks are last among the tasks they tie with
+        int low = lowerBound(position);
+        for (int i = upperBound(position) - 1; i >= low; i--)
+        {
+            if (order[i] == position)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares two positions in the current sort order.
+     */
+    private int compareSorted(int a, int b)
+    {
+        int result = sortBy == SortBy.PRIORITY
+                ? Integer.compare(priority(a), priority(b))
+                : Long.compare(deadlineKey(a), deadlineKey(b));
+        return sortOrder == SortOrder.ASCENDING ? result : -result;
+    }
+
+    /**
+     * @return the index of the first task in the current order sorting after the position.
+     */
+    private int upperBound(int position)
+    {
+        int low = 0;
+        int high = size;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (compareSorted(order[mid], position) <= 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first task in the current order not sorting before the position.
+     */
+    private int lowerBound(int position)
+    {
+        int low = 0;
+        int high = size;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (compareSorted(order[mid], position) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Removes tasks by ID, compacting the current order once.
+     *
+     * @return the removed tasks, unknown IDs are ignored.
+     */
+    synchronized List<Task> removeAll(long... ids)
+    {
+        List<Task> gone = new ArrayList<>();
+        BitSet dropped = new BitSet();
+        for (long id : ids)
+        {
+            int position = position(id);
+            if (position < 0)
+                continue;
+            gone.add(decode(position));
+            removing(position);
+            removed.set(position);
+            dropped.set(position);
+            newer.remove(id);
+        }
+        if (gone.isEmpty())
+            return gone;
+
+        int[] kept = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++)
+        {
+            if (!dropped.get(order[i]))
+                kept[count++] = order[i];
+        }
+        order = kept;
+        size = count;
+        shared = false;
+        changed = true;
+        return gone;
+    }
+
+    /**
+     * Applies a record of the {@link TaskLog} while loading. An added task
+     * replaces a live task with the same ID, as {@link TaskLog#replay(List)} does.
+     */
+    synchronized void replay(char op, Task task)
+    {
+        switch (op)
+        {
+            case TaskLog.ADD ->
+            {
+                // a new ID is above all others, only an edit needs the lookup
+                if (task.getId() <= maxId && position(task.getId()) >= 0)
+                    removeAll(task.getId());
+                add(task);
+            }
+            case TaskLog.REMOVE -> removeAll(task.getId());
+            default ->
+            {
+                Task target = forChange(task.getId());
+                if (target != null)
+                    target.setCompleted(task.isCompleted());
+            }
+        }
+    }
+
+    /**
+     * @return the position of the live task with the given ID, or -1.
+     */
+    int position(long id)
+    {
+        Integer recent = newer.get(id);
+        if (recent != null)
+            return recent;
+
+        int count;
+        if (byId == null)
+        {
+            count = positions();
+            int[] sorted = new int[count];
+            for (int p = 0; p < count; p++)
+            {
+                sorted[p] = p;
+            }
+            sort(sorted, (a, b) -> Long.compare(id(a), id(b)));
+            byId = sorted;
+        }
+        count = byId.length;
+
+        // the last position with the ID wins, as in the ID index of a full load
+        int low = 0;
+        int high = count;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (id(byId[mid]) <= id)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        if (low == 0 || id(byId[low - 1]) != id || removed.get(byId[low - 1]))
+            return -1;
+        return byId[low - 1];
+    }
+
+    /**
+     * @return the live positions, in position order.
+     */
+    int[] livePositions()
+    {
+        int total = positions();
+        int[] live = new int[total - removed.cardinality()];
+        int count = 0;
+        for (int p = removed.nextClearBit(0); p < total; p = removed.nextClearBit(p + 1))
+        {
+            live[count++] = p;
+        }
+        return live;
+    }
+
+    private int[] sortedPositions(SortBy sortBy, SortOrder sortOrder)
+    {
+        boolean ascending = sortOrder == SortOrder.ASCENDING;
+        int[] live = livePositions();
+
+        switch (sortBy)
+        {
+            case PRIORITY:
+                // counting sort over the priority levels keeps equal tasks in position order
+                int levels = Priority.values().length;
+                int[] starts = new int[levels + 1];
+                for (int p : live)
+                {
+                    starts[rank(priority(p), levels, ascending) + 1]++;
+                }
+                for (int i = 0; i < levels; i++)
+                {
+                    starts[i + 1] += starts[i];
+                }
+                int[] result = new int[live.length];
+                for (int p : live)
+                {
+                    result[starts[rank(priority(p), levels, ascending)]++] = p;
+                }
+                return result;
+            case DEADLINE:
+                sortByDeadline(live, ascending);
+                return live;
+            default:
+                throw new IllegalArgumentException("Unknown sort option");
+        }
+    }
+
+    private static int rank(int priority, int levels, boolean ascending)
+    {
+        return ascending ? priority : levels - 1 - priority;
+    }
+
+    /**
+     * Sorts positions by deadline, keeping position order for equal deadlines.
+     * Tasks without a deadline come last ascending and first descending.
+     */
+    void sortByDeadline(int[] positions, boolean ascending)
+    {
+        if (ascending)
+            sort(positions, (a, b) -> Long.compare(deadlineKey(a), deadlineKey(b)));
+        else
+            sort(positions, (a, b) -> Long.compare(deadlineKey(b), deadlineKey(a)));
+    }
+
+    /**
+     * Stable merge sort of positions.
+     */
+    static void sort(int[] positions, PositionOrder order)
+    {
+        mergeSort(positions.clone(), positions, 0, positions.length, order);
+    }
+
+    /**
+     * Sorts src[low..high) into dest[low..high); both start with the same contents.
+     */
+    private static void mergeSort(int[] src, int[] dest, int low, int high, PositionOrder order)
+    {
+        if (high - low < 16)
+        {
+            for (int i = low + 1; i < high; i++)
+            {
+                int value = dest[i];
+                int j = i;
+                while (j > low && order.compare(dest[j - 1], value) > 0)
+                {
+                    dest[j] = dest[j - 1];
+                    j--;
+                }
+                dest[j] = value;
+            }
+            return;
+        }
+
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, order);
+        mergeSort(dest, src, mid, high, order);
+        for (int i = low, left = low, right = mid; i < high; i++)
+        {
+            if (right >= high || (left < mid && order.compare(src[left], src[right]) <= 0))
+                dest[i] = src[left++];
+            else
+                dest[i] = src[right++];
+        }
+    }
+
+    /**
+     * A read-only list over an array of positions.
+     */
+    final class View extends AbstractList<Task> implements RandomAccess
+    {
+        private final int[] positions;
+        private final int size;
+
+        View(int[] positions, int size)
+        {
+            this.positions = positions;
+            this.size = size;
+        }
+
+        @Override
+        public Task get(int index)
+        {
+            Objects.checkIndex(index, size);
+            synchronized (TaskTable.this)
+            {
+                return decode(positions[index]);
+            }
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+}
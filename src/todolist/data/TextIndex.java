@@ -0,0 +1,373 @@
+package todolist.data;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Inverted index from the words of task descriptions to task IDs.
+ *
+ * Descriptions are split into lower-case runs of letters and digits. Every
+ * word maps to the IDs of the tasks containing it, in a growable long array.
+ * Words are kept in a {@link TreeMap} so prefix queries are a range lookup.
+ *
+ * The index only proposes candidates. Each candidate is checked against the
+ * task's current description, so entries left behind by removed tasks or
+ * edited descriptions are harmless. Removing a task only counts it as stale.
+ * Once stale entries outnumber the live tasks they are purged in one pass.
+ *
+ * The index is saved next to the tasks and loaded at startup. It is used only
+ * if its fingerprint, computed from every task's ID and description, matches
+ * the loaded tasks. Otherwise it is rebuilt.
+ */
+class TextIndex
+{
+    private static final int MAGIC = 0x54495831; // "TIX1"
+
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+    private int stale;
+
+    /**
+     * Task IDs containing one word, in the order they were added.
+     */
+    private static final class Postings
+    {
+        long[] ids = new long[2];
+        int size;
+
+        void add(long id)
+        {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * A search term: a whole word, or a prefix when written with a trailing '*'.
+     */
+    private record Term(String word, boolean prefix)
+    {
+        boolean matches(CharSequence token)
+        {
+            if (prefix)
+                return token.length() >= word.length() && startsWith(token, word);
+            return token.length() == word.length() && startsWith(token, word);
+        }
+
+        private static boolean startsWith(CharSequence token, String word)
+        {
+            for (int i = 0; i < word.length(); i++)
+            {
+                if (token.charAt(i) != word.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Indexes the words of a task's description.
+     */
+    void add(Task task)
+    {
+        for (String word : words(task.getDescription()))
+        {
+            words.computeIfAbsent(word, key -> new Postings()).add(task.getId());
+        }
+    }
+
+    /**
+     * Indexes the words a task's new description has and its old one had not.
+     */
+    void descriptionChanged(Task task, String oldDescription)
+    {
+        Set<String> old = words(oldDescription);
+        for (String word : words(task.getDescription()))
+        {
+            if (!old.contains(word))
+                words.computeIfAbsent(word, key -> new Postings()).add(task.getId());
+        }
+        stale++;
+    }
+
+    /**
+     * Notes that a task was removed, purging the index when stale entries
+     * outnumber the live tasks.
+     */
+    void removed(TaskIdMap ids)
+    {
+        if (++stale > ids.size())
+            purge(ids);
+    }
+
+    /**
+     * Drops the IDs of tasks that no longer exist, and the words left without tasks.
+     */
+    private void purge(TaskIdMap ids)
+    {
+        Iterator<Postings> iterator = words.values().iterator();
+        while (iterator.hasNext())
+        {
+            Postings postings = iterator.next();
+            int kept = 0;
+            for (int i = 0; i < postings.size; i++)
+            {
+                if (ids.get(postings.ids[i]) != null)
+                    postings.ids[kept++] = postings.ids[i];
+            }
+            postings.size = kept;
+            if (kept == 0)
+                iterator.remove();
+        }
+        stale = 0;
+    }
+
+    void rebuild(Collection<Task> tasks)
+    {
+        words.clear();
+        stale = 0;
+        for (Task task : tasks)
+        {
+            add(task);
+        }
+    }
+
+    /**
+     * Finds the tasks whose description contains every term of the query.
+     * Terms are words; a term ending in '*' matches any word starting with it.
+     *
+     * The term with the fewest candidate IDs drives the search and every
+     * candidate is checked against the other terms, so the cost follows the
+     * rarest term rather than the number of tasks.
+     *
+     * @param query The terms, separated by spaces.
+     * @param ids The live tasks by ID.
+     * @param limit The most tasks to return.
+     * @return the matching tasks, in the order they were indexed.
+     */
+    List<Task> search(String query, TaskIdMap ids, int limit)
+    {
+        List<Term> terms = terms(query);
+        List<Task> result = new ArrayList<>();
+        if (terms.isEmpty() || limit <= 0)
+            return result;
+
+        // choose the term with the fewest candidates
+        Collection<Postings> driver = null;
+        long driverSize = Long.MAX_VALUE;
+        for (Term term : terms)
+        {
+            Collection<Postings> candidates = candidates(term, driverSize);
+            if (candidates == null)
+                continue; // more candidates than the current driver
+            long size = 0;
+            for (Postings postings : candidates)
+            {
+                size += postings.size;
+            }
+            if (size == 0)
+                return result;
+            if (size < driverSize)
+            {
+                driver = candidates;
+                driverSize = size;
+            }
+        }
+
+        Term[] all = terms.toArray(new Term[0]);
+        Set<Task> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        StringBuilder token = new StringBuilder();
+        for (Postings postings : driver)
+        {
+            for (int i = 0; i < postings.size; i++)
+            {
+                Task task = ids.get(postings.ids[i]);
+                if (task == null || !matchesAll(task.getDescription(), all, token) || !found.add(task))
+                    continue;
+                result.add(task);
+                if (result.size() == limit)
+                    return result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The posting lists a term can match, or null if they hold more than
+     * {@code atMost} IDs in total.
+     */
+    private Collection<Postings> candidates(Term term, long atMost)
+    {
+        if (!term.prefix())
+        {
+            Postings postings = words.get(term.word());
+            return postings == null ? List.of() : List.of(postings);
+        }
+
+        List<Postings> matching = new ArrayList<>();
+        long size = 0;
+        for (Postings postings : words.subMap(term.word(), true, term.word() + Character.MAX_VALUE, false).values())
+        {
+            matching.add(postings);
+            size += postings.size;
+            if (size >= atMost)
+                return null;
+        }
+        return matching;
+    }
+
+    private static boolean matchesAll(String description, Term[] terms, StringBuilder token)
+    {
+        boolean[] matched = new boolean[terms.length];
+        int remaining = terms.length;
+        int i = 0;
+        while (i < description.length())
+        {
+            token.setLength(0);
+            i = nextToken(description, i, token);
+            if (token.length() == 0)
+                break;
+            for (int t = 0; t < terms.length; t++)
+            {
+                if (!matched[t] && terms[t].matches(token))
+                {
+                    matched[t] = true;
+                    if (--remaining == 0)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the next lower-case word at or after position start to token.
+     *
+     * @return the position after the word.
+     */
+    private static int nextToken(String text, int start, StringBuilder token)
+    {
+        int i = start;
+        while (i < text.length() && !Character.isLetterOrDigit(text.charAt(i)))
+            i++;
+        while (i < text.length() && Character.isLetterOrDigit(text.charAt(i)))
+            token.append(Character.toLowerCase(text.charAt(i++)));
+        return i;
+    }
+
+    private static Set<String> words(String text)
+    {
+        Set<String> words = new LinkedHashSet<>();
+        StringBuilder token = new StringBuilder();
+        int i = 0;
+        while (i < text.length())
+        {
+            token.setLength(0);
+            i = nextToken(text, i, token);
+            if (token.length() > 0)
+                words.add(token.toString());
+        }
+        return words;
+    }
+
+    private static List<Term> terms(String query)
+    {
+        List<Term> terms = new ArrayList<>();
+        for (String part : query.trim().split("\\s+"))
+        {
+            boolean prefix = part.endsWith("*");
+            List<String> tokens = new ArrayList<>(words(part));
+            for (int i = 0; i < tokens.size(); i++)
+            {
+                terms.add(new Term(tokens.get(i), prefix && i == tokens.size() - 1));
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * An order independent hash of every task's ID and description.
+     */
+    static long fingerprint(Collection<Task> tasks)
+    {
+        long sum = tasks.size();
+        for (Task task : tasks)
+        {
+            long h = (task.getId() * 31 + task.getDescription().hashCode()) * 0x9E3779B97F4A7C15L;
+            sum += h ^ (h >>> 29);
+        }
+        return sum;
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it over the old one.
+     *
+     * @param file The index file.
+     * @param fingerprint The {@link #fingerprint} of the tasks it was built from.
+     */
+    void save(File file, long fingerprint, TaskIdMap ids) throws IOException
+    {
+        if (stale > 0)
+            purge(ids);
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024)))
+        {
+            out.writeInt(MAGIC);
+            out.writeLong(fingerprint);
+            out.writeInt(words.size());
+            for (Map.Entry<String, Postings> entry : words.entrySet())
+            {
+                Postings postings = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(postings.size);
+                for (int i = 0; i < postings.size; i++)
+                {
+                    out.writeLong(postings.ids[i]);
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the index with the one saved in a file, if the file was saved
+     * for tasks with the given fingerprint.
+     *
+     * @return true if the file was loaded.
+     */
+    boolean load(File file, long fingerprint)
+    {
+        if (!file.isFile())
+            return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024)))
+        {
+            if (in.readInt() != MAGIC || in.readLong() != fingerprint)
+                return false;
+
+            words.clear();
+            stale = 0;
+            int count = in.readInt();
+            for (int w = 0; w < count; w++)
+            {
+                String word = in.readUTF();
+                Postings postings = new Postings();
+                postings.size = in.readInt();
+                postings.ids = new long[Math.max(postings.size, 2)];
+                for (int i = 0; i < postings.size; i++)
+                {
+                    postings.ids[i] = in.readLong();
+                }
+                words.put(word, postings);
+            }
+            return true;
+        }
+        catch (IOException ex)
+        {
+            words.clear();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package todolist.data;
+
+import java.util.function.Consumer;
+
+/**
+ * A hashed hierarchical timing wheel: timers are kept in slots by when they
+ * are due, so scheduling, cancelling and firing a timer cost O(1) whatever
+ * the number of timers, and a tick only looks at the one slot that is due.
+ *
+ * Time is counted in ticks. There are 6 levels of 64 slots: level 0 holds the
+ * timers due within the current 64 ticks, one slot per tick, level 1 those
+ * within the current 64 * 64 ticks, one slot per 64 ticks, and so on. The
+ * level of a timer is given by the highest bit in which its due tick differs
+ * from the current one. When the current tick enters the range of a slot of
+ * a higher level, its timers are cascaded into the lower levels. With one
+ * tick per second the levels reach about 2000 years; timers due later than
+ * that wait in the last level and are cascaded again.
+ *
+ * Each slot is a doubly linked list of its timers. The wheel is not thread
+ * safe, its owner synchronizes.
+ */
+final class TimingWheel
+{
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 6;
+    private static final int DUE = LEVELS * SLOTS; // the timers due at the next advance
+
+    /**
+     * A timer in the wheel, due at a tick. Subclasses carry what it is for.
+     */
+    static class Timer
+    {
+        long due;
+        private int slot = -1;
+        private Timer previous;
+        private Timer next;
+
+        /**
+         * @return whether the timer is in a wheel.
+         */
+        boolean isScheduled()
+        {
+            return slot >= 0;
+        }
+    }
+
+    private final Timer[] slots = new Timer[DUE + 1];
+    private long current;
+    private int size;
+
+    /**
+     * @param now The current tick.
+     */
+    TimingWheel(long now)
+    {
+        current = now;
+    }
+
+    /**
+     * @return the number of timers in the wheel.
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Adds a timer, due at its {@link Timer#due} tick. A timer due now or
+     * earlier fires at the next {@link #advance(long, Consumer)}.
+     */
+    void schedule(Timer timer)
+    {
+        if (timer.isScheduled())
+            cancel(timer);
+        link(timer);
+        size++;
+    }
+
+    /**
+     * Removes a timer. Does nothing if it is not in the wheel.
+     */
+    void cancel(Timer timer)
+    {
+        if (!timer.isScheduled())
+            return;
+        unlink(timer);
+        size--;
+    }
+
+    /**
+     * Moves the wheel to the given tick and fires every timer due by then,
+     * in the order of their ticks. A fired timer is out of the wheel when it
+     * is passed on, so the consumer can schedule it again.
+     *
+     * @param now The current tick, the wheel never goes back.
+     * @param expired Receives the timers that fired.
+     */
+    void advance(long now, Consumer<Timer> expired)
+    {
+        fire(DUE, expired);
+        while (current < now)
+        {
+            if (size == 0)
+            {
+                current = now;
+                break;
+            }
+            current++;
+            for (int level = LEVELS - 1; level > 0; level--)
+            {
+                if ((current & ((1L << (level * SLOT_BITS)) - 1)) == 0)
+                    cascade(level * SLOTS + (int) ((current >>> (level * SLOT_BITS)) & (SLOTS - 1)));
+            }
+            fire((int) (current & (SLOTS - 1)), expired);
+            fire(DUE, expired);
+        }
+    }
+
+    /**
+     * Puts the timers of a slot of a higher level into the lower levels.
+     */
+    private void cascade(int slot)
+    {
+        Timer timer = slots[slot];
+        slots[slot] = null;
+        while (timer != null)
+        {
+            Timer next = timer.next;
+            link(timer);
+            timer = next;
+        }
+    }
+
+    private void fire(int slot, Consumer<Timer> expired)
+    {
+        Timer timer = slots[slot];
+        slots[slot] = null;
+        while (timer != null)
+        {
+            Timer next = timer.next;
+            timer.slot = -1;
+            timer.previous = null;
+            timer.next = null;
+            size--;
+            expired.accept(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Puts a timer at the head of the slot for its due tick.
+     */
+    private void link(Timer timer)
+    {
+        int slot;
+        if (timer.due <= current)
+        {
+            slot = DUE;
+        }
+        else
+        {
+            int level = Math.min((63 - Long.numberOfLeadingZeros(timer.due ^ current)) / SLOT_BITS, LEVELS - 1);
+            slot = level * SLOTS + (int) ((timer.due >>> (level * SLOT_BITS)) & (SLOTS - 1));
+        }
+        Timer head = slots[slot];
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = head;
+        if (head != null)
+            head.previous = timer;
+        slots[slot] = timer;
+    }
+
+    private void unlink(Timer timer)
+    {
+        if (timer.previous != null)
+            timer.previous.next = timer.next;
+        else
+            slots[timer.slot] = timer.next;
+        if (timer.next != null)
+            timer.next.previous = timer.previous;
+        timer.slot = -1;
+        timer.previous = null;
+        timer.next = null;
+    }
+}
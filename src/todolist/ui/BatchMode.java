@@ -0,0 +1,316 @@
+package todolist.ui;
+
+import todolist.data.*;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Runs commands against the database without the menu.
+ *
+ * Commands are read one per line; empty lines and lines starting with # are
+ * skipped. Changes are applied to the in-memory database, the change log is
+ * flushed every {@code saveEvery} changes (if positive) and all tasks are
+ * saved once at the end, if a command changed or sorted them since the last
+ * save. A run of only reading commands leaves the files alone.
+ *
+ *   add PRIORITY DEADLINE|- description...
+ *   remove ID [ID...]
+ *   toggle ID [ID...]
+ *   edit ID description...
+ *   deadline ID DEADLINE|-
+ *   sort priority|deadline [asc|desc]
+ *   list [--page N] [--limit N]
+ *   search WORD [WORD...]         every word must appear, WORD* matches a prefix
+ *   find [--priority P[,P...]] [--open|--done] [--from DEADLINE] [--before DEADLINE]
+ *        [--overdue] [--text WORD] [--sort priority|deadline [asc|desc]] [--limit N]
+ *   save
+ *   stats                         task counts, bytes read and written, operation times
+ */
+public class BatchMode
+{
+    private final Database dataBase;
+    private final PrintWriter out;
+    private final int saveEvery;
+    private final TaskRenderer renderer;
+    private int changes;
+    private boolean unsaved;
+    private int errors;
+
+    /**
+     * @param dataBase The database to run the commands against.
+     * @param out Where command output is written.
+     * @param saveEvery Flush the change log after this many changes, 0 to only save at the end.
+     */
+    public BatchMode(Database dataBase, PrintWriter out, int saveEvery)
+    {
+        this.dataBase = dataBase;
+        this.out = out;
+        this.saveEvery = saveEvery;
+        this.renderer = new TaskRenderer(out).recordTo(dataBase.metrics());
+    }
+
+    /**
+     * Runs every command of the input, then saves the tasks if they changed.
+     *
+     * @param in The commands, one per line.
+     * @return the number of commands that failed.
+     * @throws IOException if reading the input fails.
+     */
+    public int run(BufferedReader in) throws IOException
+    {
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null)
+        {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            execute(line, lineNumber);
+        }
+
+        if (unsaved)
+            save();
+        out.flush();
+        return errors;
+    }
+
+    /**
+     * Runs a single command.
+     *
+     * @param line The command line.
+     * @param lineNumber Its line number, for error messages.
+     */
+    public void execute(String line, int lineNumber)
+    {
+        String[] words = line.split("\\s+", 4);
+        try
+        {
+            switch (words[0].toLowerCase())
+            {
+                case "add" -> add(words);
+                case "remove" -> changed(dataBase.removeAll(ids(line)));
+                case "toggle" ->
+                {
+                    for (long id : ids(line))
+                    {
+                        if (!dataBase.toggle(id))
+                            error(lineNumber, "no task with ID " + id);
+                        else
+                            changed(1);
+                    }
+                }
+                case "edit" -> edit(line);
+                case "deadline" -> deadline(words);
+                case "search" -> search(line);
+                case "sort" -> sort(words);
+                case "list" -> list(line.split("\\s+"));
+                case "find" -> find(line.split("\\s+"));
+                case "save" -> save();
+                case "stats" -> renderer.stats(dataBase.metrics());
+                default -> error(lineNumber, "unknown command: " + words[0]);
+            }
+        }
+        catch (IllegalArgumentException ex)
+        {
+            error(lineNumber, ex.getMessage());
+        }
+        catch (IOException ex)
+        {
+            error(lineNumber, "output failed: " + ex.getMessage());
+        }
+    }
+
+    private void add(String[] words)
+    {
+        if (words.length < 4)
+            throw new IllegalArgumentException("usage: add PRIORITY DEADLINE|- description");
+
+        Priority priority = Priority.valueOf(words[1].toUpperCase());
+        LocalDateTime deadline = null;
+        if (!words[2].equals("-"))
+        {
+            deadline = TaskCsvReader.parseDeadlineText(words[2]);
+            if (deadline == null)
+                throw new IllegalArgumentException("invalid deadline: " + words[2]);
+        }
+
+        Task task = dataBase.add(new Task(words[3], priority, deadline));
+        out.println("added " + task.getId());
+        changed(1);
+    }
+
+    private void edit(String line)
+    {
+        String[] words = line.split("\\s+", 3);
+        if (words.length < 3)
+            throw new IllegalArgumentException("usage: edit ID description");
+
+        long id = Long.parseLong(words[1]);
+        if (!dataBase.setDescription(id, words[2]))
+            throw new IllegalArgumentException("no task with ID " + id);
+        changed(1);
+    }
+
+    private void deadline(String[] words)
+    {
+        if (words.length != 3)
+            throw new IllegalArgumentException("usage: deadline ID DEADLINE|-");
+
+        long id = Long.parseLong(words[1]);
+        LocalDateTime deadline = null;
+        if (!words[2].equals("-"))
+        {
+            deadline = TaskCsvReader.parseDeadlineText(words[2]);
+            if (deadline == null)
+                throw new IllegalArgumentException("invalid deadline: " + words[2]);
+        }
+        if (!dataBase.setDeadline(id, deadline))
+            throw new IllegalArgumentException("no task with ID " + id);
+        changed(1);
+    }
+
+    private void search(String line) throws IOException
+    {
+        String[] words = line.split("\\s+", 2);
+        if (words.length < 2)
+            throw new IllegalArgumentException("usage: search WORD [WORD...]");
+
+        List<Task> tasks = dataBase.search(words[1], Integer.MAX_VALUE);
+        renderer.withIds(tasks, 0, tasks.size());
+    }
+
+    private static long[] ids(String line)
+    {
+        String[] words = line.split("\\s+");
+        if (words.length < 2)
+            throw new IllegalArgumentException("usage: " + words[0] + " ID [ID...]");
+
+        long[] ids = new long[words.length - 1];
+        for (int i = 1; i < words.length; i++)
+        {
+            ids[i - 1] = Long.parseLong(words[i]); // NumberFormatException is an IllegalArgumentException
+        }
+        return ids;
+    }
+
+    private void sort(String[] words)
+    {
+        if (words.length < 2)
+            throw new IllegalArgumentException("usage: sort priority|deadline [asc|desc]");
+
+        SortBy sortBy = SortBy.valueOf(words[1].toUpperCase());
+        SortOrder sortOrder = words.length > 2 && words[2].toLowerCase().startsWith("desc")
+                ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+        dataBase.sortTasks(sortBy, sortOrder);
+        unsaved = true; // the snapshot keeps the tasks in this order
+    }
+
+    /**
+     * Writes the tasks as "[id] task", all of them or one page of --limit tasks.
+     */
+    private void list(String[] words) throws IOException
+    {
+        int page = 1;
+        int limit = 0;
+        for (int i = 1; i < words.length; i++)
+        {
+            if (words[i].equals("--page") && i + 1 < words.length)
+                page = Integer.parseInt(words[++i]);
+            else if (words[i].equals("--limit") && i + 1 < words.length)
+                limit = Integer.parseInt(words[++i]);
+            else
+                throw new IllegalArgumentException("usage: list [--page N] [--limit N]");
+        }
+        if (page < 1 || limit < 0)
+            throw new IllegalArgumentException("page must be at least 1 and limit at least 0");
+
+        List<Task> tasks = dataBase.getTasks();
+        int from = limit > 0 ? (int) Math.min(tasks.size(), (long) (page - 1) * limit) : 0;
+        int to = limit > 0 ? Math.min(tasks.size(), from + limit) : tasks.size();
+        renderer.withIds(tasks, from, to);
+    }
+
+    /**
+     * Writes the tasks matching the options as "[id] task", see {@link TaskQuery}.
+     */
+    private void find(String[] words) throws IOException
+    {
+        TaskQuery query = new TaskQuery();
+        for (int i = 1; i < words.length; i++)
+        {
+            switch (words[i])
+            {
+                case "--priority" ->
+                {
+                    String[] names = value(words, ++i).split(",");
+                    Priority[] others = new Priority[names.length - 1];
+                    for (int j = 1; j < names.length; j++)
+                    {
+                        others[j - 1] = Priority.valueOf(names[j].toUpperCase());
+                    }
+                    query.priority(Priority.valueOf(names[0].toUpperCase()), others);
+                }
+                case "--open" -> query.completed(false);
+                case "--done" -> query.completed(true);
+                case "--from" -> query.deadlineFrom(deadline(value(words, ++i)));
+                case "--before" -> query.deadlineBefore(deadline(value(words, ++i)));
+                case "--overdue" -> query.overdue(LocalDateTime.now());
+                case "--text" -> query.descriptionContains(value(words, ++i));
+                case "--limit" -> query.limit(Integer.parseInt(value(words, ++i)));
+                case "--sort" ->
+                {
+                    SortBy sortBy = SortBy.valueOf(value(words, ++i).toUpperCase());
+                    SortOrder sortOrder = SortOrder.ASCENDING;
+                    if (i + 1 < words.length && !words[i + 1].startsWith("--"))
+                        sortOrder = words[++i].toLowerCase().startsWith("desc") ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+                    query.orderBy(sortBy, sortOrder);
+                }
+                default -> throw new IllegalArgumentException("unknown find option: " + words[i]);
+            }
+        }
+
+        List<Task> tasks = dataBase.query(query);
+        renderer.withIds(tasks, 0, tasks.size());
+    }
+
+    private static String value(String[] words, int index)
+    {
+        if (index >= words.length)
+            throw new IllegalArgumentException(words[index - 1] + " needs a value");
+        return words[index];
+    }
+
+    private static LocalDateTime deadline(String text)
+    {
+        LocalDateTime deadline = TaskCsvReader.parseDeadlineText(text);
+        if (deadline == null)
+            throw new IllegalArgumentException("invalid deadline: " + text);
+        return deadline;
+    }
+
+    private void save()
+    {
+        dataBase.saveTasks();
+        unsaved = false;
+    }
+
+    private void changed(int count)
+    {
+        int before = changes;
+        changes += count;
+        if (count > 0)
+            unsaved = true;
+        if (saveEvery > 0 && changes / saveEvery != before / saveEvery)
+            dataBase.flushTasks();
+    }
+
+    private void error(int lineNumber, String message)
+    {
+        errors++;
+        out.flush();
+        System.err.println("Line " + lineNumber + ": " + message);
+    }
+}
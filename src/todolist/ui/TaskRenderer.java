@@ -0,0 +1,154 @@
+package todolist.ui;
+
+import todolist.data.DatabaseMetrics;
+import todolist.data.LatencyHistogram;
+import todolist.data.Priority;
+import todolist.data.Task;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * Writes task listings in large blocks.
+ *
+ * Lines are formatted into one reusable buffer with {@link Task#appendTo} and
+ * handed to the writer whenever the buffer fills, instead of one println and
+ * several temporary strings per task. Output is flushed at the end of each
+ * listing, so it interleaves correctly with other console output. The time
+ * of each listing can be recorded in the metrics of the database.
+ */
+public class TaskRenderer
+{
+    private static final int BLOCK = 32 * 1024;
+
+    private final Writer out;
+    private final StringBuilder buffer = new StringBuilder(BLOCK + 512);
+    private char[] chars = new char[BLOCK + 512];
+    private DatabaseMetrics metrics;
+
+    /**
+     * @param out Where the listings are written.
+     */
+    public TaskRenderer(Writer out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * @return a renderer writing to System.out through a 64 KB buffer.
+     */
+    public static TaskRenderer forConsole()
+    {
+        return new TaskRenderer(new BufferedWriter(new OutputStreamWriter(System.out, System.out.charset()), 64 * 1024));
+    }
+
+    /**
+     * Records the time of every listing as a render in the given metrics.
+     *
+     * @return this renderer.
+     */
+    public TaskRenderer recordTo(DatabaseMetrics metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Writes tasks from..to-1 as "N. task", numbered from 1 at the start of the list.
+     *
+     * @param tasks The tasks.
+     * @param from The index of the first task to write.
+     * @param to The index after the last task to write.
+     * @param blankLines Whether to put an empty line before every task.
+     */
+    public void numbered(List<Task> tasks, int from, int to, boolean blankLines) throws IOException
+    {
+        long start = System.nanoTime();
+        for (int i = from; i < to; i++)
+        {
+            if (blankLines)
+                buffer.append('\n');
+            buffer.append(i + 1).append(". ");
+            tasks.get(i).appendTo(buffer).append('\n');
+            drainIfFull();
+        }
+        flush();
+        rendered(start);
+    }
+
+    /**
+     * Writes tasks from..to-1 as "[id] task".
+     */
+    public void withIds(List<Task> tasks, int from, int to) throws IOException
+    {
+        long start = System.nanoTime();
+        for (int i = from; i < to; i++)
+        {
+            Task task = tasks.get(i);
+            buffer.append('[').append(task.getId()).append("] ");
+            task.appendTo(buffer).append('\n');
+            drainIfFull();
+        }
+        flush();
+        rendered(start);
+    }
+
+    private void rendered(long start)
+    {
+        if (metrics != null)
+            metrics.record(DatabaseMetrics.Operation.RENDER, start);
+    }
+
+    /**
+     * Writes the task counts, the bytes read and written and a latency table
+     * of every operation, times in milliseconds.
+     */
+    public void stats(DatabaseMetrics metrics) throws IOException
+    {
+        buffer.append(String.format("Tasks: %,d (%,d open, %,d completed)%n",
+                metrics.getTasks(), metrics.getOpenTasks(), metrics.getCompletedTasks()));
+        for (Priority priority : Priority.values())
+        {
+            buffer.append(String.format("  %-8s %,10d open %,10d completed%n", priority,
+                    metrics.tasks(priority, false), metrics.tasks(priority, true)));
+        }
+        buffer.append(String.format("Bytes read: %,d, written: %,d%n%n", metrics.getBytesRead(), metrics.getBytesWritten()));
+
+        buffer.append(String.format("%-8s %10s %10s %10s %10s %10s %10s %10s%n",
+                "(ms)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        for (DatabaseMetrics.Operation operation : DatabaseMetrics.Operation.values())
+        {
+            LatencyHistogram latency = metrics.latency(operation);
+            buffer.append(String.format("%-8s %,10d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+                    operation.name().toLowerCase(), latency.count(), latency.mean() / 1e6,
+                    latency.percentile(50) / 1e6, latency.percentile(90) / 1e6, latency.percentile(99) / 1e6,
+                    latency.percentile(99.9) / 1e6, latency.max() / 1e6));
+        }
+        flush();
+    }
+
+    /**
+     * Writes the buffered text and flushes the writer.
+     */
+    public void flush() throws IOException
+    {
+        drain();
+        out.flush();
+    }
+
+    private void drainIfFull() throws IOException
+    {
+        if (buffer.length() >= BLOCK)
+            drain();
+    }
+
+    private void drain() throws IOException
+    {
+        int length = buffer.length();
+        if (chars.length < length)
+            chars = new char[length];
+        buffer.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+        buffer.setLength(0);
+    }
+}
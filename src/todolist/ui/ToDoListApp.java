@@ -1,19 +1,110 @@
 package todolist.ui;
 
-import todolist.data.Database;
+import todolist.data.*;
+import todolist.web.TaskApiServer;
 
-import java.io.IOException;
+import java.io.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Scanner;
 
+/**
+ * The console front end: the menu reads choices from a single Scanner on
+ * System.in and calls the {@link Database} API, which does no console I/O.
+ */
 public class ToDoListApp
 {
     Database DataBase;
     Scanner keyboard;
+    TaskRenderer renderer;
+    int pageSize; // tasks per page in the listings, 0 for all
+    int page;
 
     public ToDoListApp()
     {
-        DataBase = new Database();
+        this(20, 1);
+    }
+
+    /**
+     * The changes made in the menu are synced to disk in the background, after
+     * the delay in milliseconds given by the system property todolist.persist.delay
+     * (200 by default) or once todolist.persist.changes of them (100) are waiting.
+     * Deadlines are reminded of todolist.remind.minutes (15) before they pass
+     * and when they pass. The undo history may use todolist.undo.budget
+     * megabytes (16). The reminders and the JMX metrics are started in the
+     * background, see {@link #startDeferred()}. Warnings of the database are
+     * shown in the console between the menus.
+     *
+     * @param pageSize How many tasks the listings show at a time, 0 for all.
+     * @param page The page to show first, counted from 1.
+     */
+    public ToDoListApp(int pageSize, int page)
+    {
+        DataBase = new Database("csv_data", System.out::println);
+        DataBase.persistInBackground(Long.getLong("todolist.persist.delay", 200),
+                Integer.getInteger("todolist.persist.changes", 100));
+        DataBase.keepHistory(Long.getLong("todolist.undo.budget", 16) << 20);
         keyboard = new Scanner(System.in);
+        renderer = TaskRenderer.forConsole().recordTo(DataBase.metrics());
+        this.pageSize = pageSize;
+        this.page = page - 1;
+        startDeferred();
+    }
+
+    /**
+     * Starts the deadline reminders and publishes the metrics over JMX on a
+     * background thread. Neither is needed for the first prompt, and the
+     * platform MBean server alone loads more classes than the rest of the
+     * start, so the tasks are listed without waiting for them. Changes made
+     * meanwhile are picked up by the reminders when they start.
+     */
+    private void startDeferred()
+    {
+        Thread thread = new Thread(() ->
+        {
+            DataBase.remindDeadlines(Duration.ofMinutes(Long.getLong("todolist.remind.minutes", 15)), ToDoListApp::remind);
+            DataBase.metrics().register();
+        }, "deferred-start");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Undoes the last change made in the menu, or by an undo that is redone.
+     */
+    public void undo()
+    {
+        int changed = DataBase.undo();
+        if (changed == 0)
+            System.out.println("\nNothing to undo.");
+        else
+            System.out.println("\nUndone, " + changed + " task(s) changed back. "
+                    + DataBase.undoSteps() + " more step(s) can be undone.");
+        Pause();
+    }
+
+    /**
+     * Does the last undone change again.
+     */
+    public void redo()
+    {
+        int changed = DataBase.redo();
+        if (changed == 0)
+            System.out.println("\nNothing to redo.");
+        else
+            System.out.println("\nRedone, " + changed + " task(s) changed. "
+                    + DataBase.redoSteps() + " more step(s) can be redone.");
+        Pause();
+    }
+
+    /**
+     * Prints a deadline reminder, from the reminder thread, in between the menu.
+     */
+    private static void remind(Task task, DeadlineReminders.Kind kind)
+    {
+        String label = kind == DeadlineReminders.Kind.OVERDUE ? "Overdue" : "Due soon";
+        System.out.println("\n[" + label + "] " + task);
     }
 
     public void Menu()
@@ -30,32 +121,516 @@ public class ToDoListApp
             System.out.println("[4].......Sort Tasks");
             System.out.println("[5].......Mark Tasks as Complete/Incomplete");
             System.out.println("[6].......Exit App");
+            System.out.println("[7].......Statistics");
+            System.out.println("[8].......Undo");
+            System.out.println("[9].......Redo");
             System.out.print("\nEnter your choice: ");
             choice = keyboard.nextInt();
             keyboard.nextLine(); // Clear Buffer
 
             switch (choice)
             {
-                case 1 -> DataBase.addTask();
-                case 2 -> DataBase.viewTasks();
-                case 3 -> DataBase.removeTask();
-                case 4 -> DataBase.sortTasksMenu();
-                case 5 -> DataBase.toggleTaskCompletion();
+                case 1 -> addTask();
+                case 2 -> viewTasks();
+                case 3 -> removeTask();
+                case 4 -> sortTasksMenu();
+                case 5 -> toggleTaskCompletion();
                 case 6 -> System.out.println("Exiting...");
+                case 7 -> showStats();
+                case 8 -> undo();
+                case 9 -> redo();
                 default -> System.out.println("Invalid choice!");
             }
         }
         while(choice != 6);
     }
 
+    /**
+     * Asks for the description, priority and deadline of a new task, adds it
+     * in its place in the current order and shows it with its number.
+     */
+    public void addTask()
+    {
+        // === Task Description ===
+        System.out.println("---------------------");
+        System.out.print("\nEnter task description: ");
+        String description = keyboard.nextLine().trim();
+        while(description.isEmpty())
+        {
+            System.out.println("\nDescription cannot be empty.");
+            System.out.print("Enter again: ");
+            description = keyboard.nextLine().trim();
+        }
+
+        // === Task Priority ===
+        int choice;
+        Priority priority = Priority.LOW; // default
+        do
+        {
+            try
+            {
+                System.out.print("Enter task priority (1=HIGH, 2=MEDIUM, 3=LOW, empty = LOW): ");
+                String input = keyboard.nextLine().trim();
+
+                if (input.isEmpty())
+                {
+                    choice = 3;
+                }
+                else
+                {
+                    choice = Integer.parseInt(input);
+                }
+
+                switch (choice)
+                {
+                    case 1 -> priority = Priority.HIGH;
+                    case 2 -> priority = Priority.MEDIUM;
+                    case 3 -> priority = Priority.LOW;
+                    default ->
+                    {
+                        System.out.println("\nInvalid input! Please enter 1, 2, or 3.");
+                        choice = -1; // force repeat
+                    }
+                }
+            }
+            catch (NumberFormatException ex) // with nextInt we have InputMismatchException but with nextLine we have NumberFormatException
+            {
+                System.out.println("\nInvalid input! Please enter a number (1, 2, or 3), or leave empty for LOW.");
+                choice = -1; // force repeat
+            }
+        }
+        while(choice <= 0 || choice > 3);
+
+        // === Task Deadline ===
+        System.out.print("Enter deadline (yyyy-mm-ddTHH:mm) or leave empty for none: ");
+        String deadlineInput = keyboard.nextLine().trim();
+
+        LocalDateTime deadline = null;
+        if (!deadlineInput.isEmpty())
+        {
+            // "yyyy-MM-dd HH:mm", ISO (with T) or "yyyy-MM-dd"
+            deadline = TaskCsvReader.parseDeadlineText(deadlineInput);
+            if (deadline == null)
+                System.out.println("Invalid deadline format. Task will have no deadline.");
+        }
+
+        // === Create Task ===
+        // goes straight into its place in the current order, only it is shown
+        Task task = DataBase.add(new Task(description, priority, deadline));
+        int index = DataBase.indexOf(task.getId());
+        System.out.println("\n---------------------");
+        System.out.println("Task added!");
+        if (DataBase.getSortBy() != null && DataBase.getSortOrder() != null)
+            System.out.println("Tasks sorted by " + DataBase.getSortBy() + " (" + DataBase.getSortOrder() + ")");
+        System.out.println("\n" + (index + 1) + ". " + task);
+        if (pageSize > 0)
+            page = index / pageSize; // the next listing opens on it
+        Pause();
+    }
+
+    /**
+     * Displays the tasks in their current order, one page at a time.
+     */
+    public void viewTasks()
+    {
+        System.out.println("\nYour tasks: ");
+        System.out.println("=====================================================================");
+
+        if (DataBase.getSortBy() != null && DataBase.getSortOrder() != null)
+            System.out.println("Tasks sorted by " + DataBase.getSortBy() + " (" + DataBase.getSortOrder() + ")");
+
+        List<Task> tasks = DataBase.getTasks();
+        if (tasks.isEmpty())
+        {
+            System.out.println("Not tasks yet.");
+            Pause();
+            return;
+        }
+
+        while (true)
+        {
+            showPage(tasks, true);
+            if (pageCount(tasks.size()) == 1)
+            {
+                Pause();
+                return;
+            }
+            System.out.print("\nEnter n (next page), p (previous page) or <Enter> to continue: ");
+            if (!turnPage(keyboard.nextLine().trim(), tasks.size()))
+            {
+                System.out.println();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lists the tasks and removes the one the user picks by number.
+     */
+    public void removeTask()
+    {
+        List<Task> tasks = DataBase.getTasks();
+        if (tasks.isEmpty())
+        {
+            System.out.println("Not tasks to remove.");
+            return;
+        }
+
+        int choice = -1;
+        boolean listing = true;
+        do
+        {
+            if (listing)
+            {
+                System.out.println("\nSelect the number of the task you want to remove: ");
+                System.out.println("\n============================================================================");
+                showPage(tasks, false);
+                System.out.println("=============================================================================");
+            }
+            System.out.print("\nEnter the task number you want to remove" + pageHint(tasks.size()) + ": ");
+            String input = keyboard.nextLine().trim();
+
+            listing = turnPage(input, tasks.size());
+            if (listing)
+                continue;
+
+            try
+            {
+                choice = Integer.parseInt(input);
+                if (choice > 0 && choice <= tasks.size())
+                {
+                    DataBase.remove(tasks.get(choice - 1).getId());
+                    System.out.println("Task removed!");
+                }
+                else
+                {
+                    System.out.println("\nInvalid task number! Please try again.");
+                    choice = - 1;
+                }
+            }
+            catch (NumberFormatException ex)
+            {
+                System.out.println("\nInvalid input! Please enter a valid number.");
+            }
+        }
+        while(choice == -1);
+
+        Pause();
+    }
+
+    /**
+     * Asks for a sorting option, sorts the tasks and displays them.
+     */
+    public void sortTasksMenu()
+    {
+        int choice = -1;
+        do
+        {
+            System.out.println("\nChoose Sorting Option:");
+            System.out.println("----------------------");
+            System.out.println("1. Priority ascending");
+            System.out.println("2. Priority descending");
+            System.out.println("3. Deadline ascending");
+            System.out.println("4. Deadline descending");
+            System.out.println("----------------------");
+
+            System.out.print("Enter choice: ");
+            String input = keyboard.nextLine().trim();
+
+            try
+            {
+                choice = Integer.parseInt(input);
+                switch (choice)
+                {
+                    case 1 -> DataBase.sortTasks(SortBy.PRIORITY, SortOrder.ASCENDING);
+                    case 2 -> DataBase.sortTasks(SortBy.PRIORITY, SortOrder.DESCENDING);
+                    case 3 -> DataBase.sortTasks(SortBy.DEADLINE, SortOrder.ASCENDING);
+                    case 4 -> DataBase.sortTasks(SortBy.DEADLINE, SortOrder.DESCENDING);
+                    default ->
+                    {
+                        System.out.println("Invalid choice! Enter a number 1-4.");
+                        choice = -1;
+                    }
+                }
+            }
+            catch (NumberFormatException ex)
+            {
+                System.out.println("Invalid input! Please enter a number between 1 and 4.");
+            }
+        }
+        while(choice == -1);
+
+        viewTasks();
+    }
+
+    /**
+     * Lists the tasks and toggles the completion of the one the user picks.
+     */
+    public void toggleTaskCompletion()
+    {
+        List<Task> tasks = DataBase.getTasks();
+        if (tasks.isEmpty())
+        {
+            System.out.println("No tasks available.");
+            return;
+        }
+
+        int choice = -1;
+        boolean listing = true;
+        do
+        {
+            if (listing)
+            {
+                System.out.println("\nSelect the number of the task to mark complete/incomplete: \n");
+                System.out.println("=====================================================================================");
+                showPage(tasks, false);
+                System.out.println("=====================================================================================");
+            }
+            System.out.print("\nEnter task number" + pageHint(tasks.size()) + ": ");
+            String input = keyboard.nextLine().trim();
+
+            listing = turnPage(input, tasks.size());
+            if (listing)
+                continue;
+
+            try
+            {
+                choice = Integer.parseInt(input);
+                if (choice > 0 && choice <= tasks.size())
+                {
+                    Task task = tasks.get(choice - 1);
+                    DataBase.toggle(task.getId());
+                    System.out.println("\nTask \"" + task.getDescription() + "\" marked as " + (task.isCompleted() ? "completed" : "incomplete") + "!");
+                }
+                else
+                {
+                    System.out.println("\nInvalid task number! Try again.");
+                    choice = -1;
+                }
+            }
+            catch(NumberFormatException ex)
+            {
+                System.out.println("\nInvalid Input! Please enter a valid number.");
+            }
+        }
+        while(choice == -1);
+
+        Pause();
+    }
+
+    /**
+     * Writes the current page of the list, numbered from the start of the list.
+     * With a page size of 0 the whole list is one page.
+     */
+    private void showPage(List<Task> tasks, boolean blankLines)
+    {
+        int pages = pageCount(tasks.size());
+        page = Math.max(0, Math.min(page, pages - 1));
+        int from = pageSize > 0 ? page * pageSize : 0;
+        int to = pageSize > 0 ? Math.min(tasks.size(), from + pageSize) : tasks.size();
+
+        try
+        {
+            renderer.numbered(tasks, from, to, blankLines);
+        }
+        catch (IOException ex)
+        {
+            System.out.println("An error has occurred while displaying the tasks.");
+            ex.printStackTrace();
+        }
+
+        if (pages > 1)
+            System.out.println("\nPage " + (page + 1) + " of " + pages + " (tasks " + (from + 1) + "-" + to + " of " + tasks.size() + ")");
+    }
+
+    /**
+     * Shows the task counts, bytes read and written and the operation times
+     * of the database since the program started.
+     */
+    public void showStats()
+    {
+        System.out.println("\nStatistics:");
+        System.out.println("=====================================================================");
+        try
+        {
+            renderer.stats(DataBase.metrics());
+        }
+        catch (IOException ex)
+        {
+            System.out.println("An error has occurred while displaying the statistics.");
+            ex.printStackTrace();
+        }
+        Pause();
+    }
+
+    private int pageCount(int size)
+    {
+        return pageSize > 0 ? Math.max(1, (size + pageSize - 1) / pageSize) : 1;
+    }
+
+    private String pageHint(int size)
+    {
+        return pageCount(size) > 1 ? " (n/p for the next/previous page)" : "";
+    }
+
+    /**
+     * Moves to the next or previous page if the input is "n" or "p".
+     *
+     * @return true if the input was a page command.
+     */
+    private boolean turnPage(String input, int size)
+    {
+        if (input.equalsIgnoreCase("n"))
+        {
+            page = Math.min(page + 1, pageCount(size) - 1);
+            return true;
+        }
+        if (input.equalsIgnoreCase("p"))
+        {
+            page = Math.max(page - 1, 0);
+            return true;
+        }
+        return false;
+    }
+
     // Calling Save methods to save the data
     public void FinalJobs()
     {
         DataBase.saveTasks();
+        DataBase.close();
     }
-    public static void main(String[] args)
+
+    /**
+     * Runs commands without the menu, see {@link BatchMode} for the commands.
+     * Warnings of the database go to System.err like the command errors, so
+     * the output holds only the results.
+     *
+     *   --batch [--save-every N] [file]   commands from the file, or from stdin
+     *   command args...                   a single command given as arguments
+     *
+     * @return the exit status: 0 if every command succeeded.
+     */
+    public static int RunBatch(String[] args) throws IOException
+    {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)), false);
+
+        if (!args[0].equals("--batch"))
+        {
+            BatchMode batch = new BatchMode(new Database(), out, 0);
+            return batch.run(new BufferedReader(new StringReader(String.join(" ", args)))) == 0 ? 0 : 1;
+        }
+
+        int saveEvery = 0;
+        String file = null;
+        for (int i = 1; i < args.length; i++)
+        {
+            if (args[i].equals("--save-every") && i + 1 < args.length)
+                saveEvery = Integer.parseInt(args[++i]);
+            else
+                file = args[i];
+        }
+
+        BatchMode batch = new BatchMode(new Database(), out, saveEvery);
+        try (BufferedReader in = new BufferedReader(file == null
+                ? new InputStreamReader(System.in) : new FileReader(file)))
+        {
+            return batch.run(in) == 0 ? 0 : 1;
+        }
+    }
+
+    /**
+     * Serves the tasks over HTTP on 127.0.0.1 until the process is stopped,
+     * see {@link TaskApiServer}. The tasks are saved when the JVM shuts down.
+     * With the system property todolist.replication.port the changes are also
+     * streamed to followers connecting to that port, on the address in
+     * todolist.replication.host (127.0.0.1), keeping the latest
+     * todolist.replication.retained (65536) for followers that reconnect.
+     *
+     *   --serve [port] [max requests in flight]
+     */
+    public static void Serve(String[] args) throws IOException
     {
-        ToDoListApp Program = new ToDoListApp();
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+
+        Database dataBase = new Database();
+        dataBase.metrics().register();
+        Integer replicationPort = Integer.getInteger("todolist.replication.port");
+        if (replicationPort != null)
+        {
+            ReplicationLeader leader = dataBase.lead(System.getProperty("todolist.replication.host", "127.0.0.1"),
+                    replicationPort, Integer.getInteger("todolist.replication.retained", 1 << 16));
+            System.out.println("Replicating changes on port " + leader.getPort());
+        }
+        TaskApiServer server = new TaskApiServer(dataBase, port, maxInFlight);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        server.start();
+        System.out.println("Serving tasks on http://127.0.0.1:" + server.getPort() + "/tasks");
+    }
+
+    /**
+     * Follows a leader started with --serve and todolist.replication.port,
+     * keeping a copy of its tasks in the data directory (csv_replica), and
+     * serves them read-only over HTTP on 127.0.0.1 until the process is stopped.
+     *
+     *   --follow HOST:PORT [http port] [data directory]
+     */
+    public static void Follow(String[] args) throws IOException
+    {
+        if (args.length < 2 || args[1].lastIndexOf(':') < 0)
+            throw new IllegalArgumentException("usage: --follow HOST:PORT [http port] [data directory]");
+        String host = args[1].substring(0, args[1].lastIndexOf(':'));
+        int leaderPort = Integer.parseInt(args[1].substring(args[1].lastIndexOf(':') + 1));
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 8081;
+        String dirPath = args.length > 3 ? args[3] : "csv_replica";
+
+        Database dataBase = new Database(dirPath);
+        dataBase.persistInBackground(Long.getLong("todolist.persist.delay", 200),
+                Integer.getInteger("todolist.persist.changes", 100));
+        dataBase.metrics().register();
+        dataBase.follow(host, leaderPort);
+        TaskApiServer server = new TaskApiServer(dataBase, port, 10_000, true);
+        server.start();
+        System.out.println("Following " + host + ":" + leaderPort + ", serving a read-only copy on http://127.0.0.1:"
+                + server.getPort() + "/tasks");
+    }
+
+    /**
+     * Without arguments (or with only --page/--limit) runs the menu, otherwise
+     * serves the tasks, follows a leader or runs batch commands.
+     *
+     *   [--limit N] [--page N]   tasks per page in the menu listings (0 for all), first page shown
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length > 0 && args[0].equals("--serve"))
+        {
+            Serve(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--follow"))
+        {
+            Follow(args);
+            return;
+        }
+        if (args.length > 0 && !args[0].equals("--page") && !args[0].equals("--limit"))
+        {
+            System.exit(RunBatch(args));
+        }
+
+        int pageSize = 20;
+        int page = 1;
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            if (args[i].equals("--limit"))
+                pageSize = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("--page"))
+                page = Integer.parseInt(args[i + 1]);
+        }
+
+        ToDoListApp Program = new ToDoListApp(pageSize, page);
+        System.out.println("Data read successfully. Total tasks: " + Program.DataBase.size());
+        Program.viewTasks();
         Program.Menu();
         Program.FinalJobs();
         Program.keyboard.close();
@@ -0,0 +1,183 @@
+package todolist.web;
+
+import todolist.data.Task;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The little JSON the task API needs: writing tasks and reading flat request
+ * objects whose values are strings, numbers, booleans or null.
+ */
+public final class Json
+{
+    private Json()
+    {
+    }
+
+    /**
+     * Writes a task as a JSON object.
+     */
+    public static void writeTask(Appendable out, Task task) throws IOException
+    {
+        out.append("{\"id\":").append(Long.toString(task.getId()));
+        out.append(",\"description\":");
+        writeString(out, task.getDescription());
+        out.append(",\"priority\":\"").append(task.getPriority().name()).append('"');
+        out.append(",\"deadline\":");
+        if (task.getDeadline() == null)
+            out.append("null");
+        else
+            out.append('"').append(task.getDeadline().toString()).append('"');
+        out.append(",\"completed\":").append(Boolean.toString(task.isCompleted())).append('}');
+    }
+
+    /**
+     * Writes a string literal with the characters JSON requires escaped.
+     */
+    public static void writeString(Appendable out, String value) throws IOException
+    {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default ->
+                {
+                    if (c < 0x20)
+                        out.append(String.format("\\u%04x", (int) c));
+                    else
+                        out.append(c);
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Parses a flat JSON object. Values are returned as their text: strings
+     * unescaped, numbers and booleans as written, null as a null value.
+     *
+     * @throws IllegalArgumentException if the text is not such an object.
+     */
+    public static Map<String, String> parseObject(String text)
+    {
+        Parser parser = new Parser(text);
+        Map<String, String> values = new HashMap<>();
+
+        parser.expect('{');
+        if (!parser.consume('}'))
+        {
+            do
+            {
+                String key = parser.string();
+                parser.expect(':');
+                values.put(key, parser.value());
+            }
+            while (parser.consume(','));
+            parser.expect('}');
+        }
+        parser.skipWhitespace();
+        if (!parser.atEnd())
+            throw new IllegalArgumentException("Unexpected text after the JSON object");
+        return values;
+    }
+
+    private static final class Parser
+    {
+        private final String text;
+        private int position;
+
+        Parser(String text)
+        {
+            this.text = text;
+        }
+
+        void skipWhitespace()
+        {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+                position++;
+        }
+
+        boolean atEnd()
+        {
+            return position >= text.length();
+        }
+
+        boolean consume(char c)
+        {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == c)
+            {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c)
+        {
+            if (!consume(c))
+                throw new IllegalArgumentException("Expected '" + c + "' at position " + position);
+        }
+
+        String value()
+        {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == '"')
+                return string();
+
+            int start = position;
+            while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0)
+                position++;
+            String literal = text.substring(start, position);
+            if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("["))
+                throw new IllegalArgumentException("Only flat values are supported, at position " + start);
+            return literal.equals("null") ? null : literal;
+        }
+
+        String string()
+        {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length())
+            {
+                char c = text.charAt(position++);
+                if (c == '"')
+                    return value.toString();
+                if (c != '\\')
+                {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length())
+                    break;
+                char escaped = text.charAt(position++);
+                switch (escaped)
+                {
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' ->
+                    {
+                        if (position + 4 > text.length())
+                            throw new IllegalArgumentException("Bad unicode escape at position " + position);
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string");
+        }
+    }
+}
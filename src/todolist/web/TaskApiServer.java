@@ -0,0 +1,305 @@
+package todolist.web;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import todolist.data.*;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * HTTP/JSON front end of the database, listening on the loopback interface.
+ *
+ *   GET    /tasks[?offset=N&limit=N]    tasks in their current order
+ *   GET    /tasks/{id}                     one task
+ *   POST   /tasks                          add {"description", "priority", "deadline"}
+ *   DELETE /tasks/{id}                     remove
+ *   POST   /tasks/{id}/toggle              toggle completion
+ *   POST   /tasks/sort                     sort {"by": "priority|deadline", "order": "asc|desc"}
+ *
+ * Every request runs on its own virtual thread. Memory stays bounded with many
+ * clients: at most {@code maxInFlight} requests are handled at once (others get
+ * 503), request bodies are limited to {@link #MAX_BODY} bytes and lists are
+ * streamed to the client instead of being built in memory.
+ *
+ * A read-only server, for a replication follower, answers only the GET
+ * requests and 405 to the others.
+ */
+public class TaskApiServer
+{
+    static final int MAX_BODY = 16 * 1024;
+
+    private final Database dataBase;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final boolean readOnly;
+
+    /**
+     * @param dataBase The database to serve.
+     * @param port The port to listen on, 0 for any free port.
+     * @param maxInFlight How many requests may be handled at the same time.
+     * @throws IOException if the port cannot be bound.
+     */
+    public TaskApiServer(Database dataBase, int port, int maxInFlight) throws IOException
+    {
+        this(dataBase, port, maxInFlight, false);
+    }
+
+    /**
+     * @param dataBase The database to serve.
+     * @param port The port to listen on, 0 for any free port.
+     * @param maxInFlight How many requests may be handled at the same time.
+     * @param readOnly Whether to refuse the requests that change tasks.
+     * @throws IOException if the port cannot be bound.
+     */
+    public TaskApiServer(Database dataBase, int port, int maxInFlight, boolean readOnly) throws IOException
+    {
+        this.dataBase = dataBase;
+        this.readOnly = readOnly;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        server.createContext("/tasks", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * @return the port the server listens on.
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, waits up to the given delay for running ones
+     * and saves the tasks.
+     */
+    public void stop(int delaySeconds)
+    {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        dataBase.saveTasks();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        if (!inFlight.tryAcquire())
+        {
+            sendError(exchange, 503, "Too many requests in flight");
+            return;
+        }
+        try
+        {
+            route(exchange);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            sendError(exchange, 400, ex.getMessage());
+        }
+        catch (IOException ex)
+        {
+            exchange.close(); // the client went away
+        }
+        finally
+        {
+            inFlight.release();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException
+    {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        // path[0] is empty, path[1] is "tasks"
+
+        if (readOnly && !method.equals("GET"))
+        {
+            sendError(exchange, 405, "Read-only replica");
+            return;
+        }
+
+        if (path.length == 2)
+        {
+            switch (method)
+            {
+                case "GET" -> list(exchange);
+                case "POST" -> add(exchange);
+                default -> sendError(exchange, 405, "Method not allowed");
+            }
+        }
+        else if (path.length == 3 && path[2].equals("sort") && method.equals("POST"))
+        {
+            sort(exchange);
+        }
+        else if (path.length == 3)
+        {
+            long id = Long.parseLong(path[2]);
+            switch (method)
+            {
+                case "GET" -> sendTask(exchange, 200, dataBase.get(id));
+                case "DELETE" ->
+                {
+                    if (dataBase.remove(id))
+                    {
+                        dataBase.flushTasks();
+                        send(exchange, 204, null);
+                    }
+                    else
+                    {
+                        sendError(exchange, 404, "No task with ID " + id);
+                    }
+                }
+                default -> sendError(exchange, 405, "Method not allowed");
+            }
+        }
+        else if (path.length == 4 && path[3].equals("toggle") && method.equals("POST"))
+        {
+            long id = Long.parseLong(path[2]);
+            if (dataBase.toggle(id))
+                dataBase.flushTasks();
+            sendTask(exchange, 200, dataBase.get(id));
+        }
+        else
+        {
+            sendError(exchange, 404, "Not found");
+        }
+    }
+
+    private void list(HttpExchange exchange) throws IOException
+    {
+        Map<String, String> query = query(exchange.getRequestURI());
+        List<Task> tasks = dataBase.getTasks();
+        int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+        int limit = Integer.parseInt(query.getOrDefault("limit", Integer.toString(tasks.size())));
+        if (offset < 0 || limit < 0)
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        offset = Math.min(tasks.size(), offset);
+        int end = (int) Math.min(tasks.size(), (long) offset + limit);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0); // chunked, written as it is produced
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 16 * 1024))
+        {
+            out.write('[');
+            for (int i = offset; i < end; i++)
+            {
+                if (i > offset)
+                    out.write(',');
+                Json.writeTask(out, tasks.get(i));
+            }
+            out.write(']');
+        }
+    }
+
+    private void add(HttpExchange exchange) throws IOException
+    {
+        Map<String, String> body = Json.parseObject(readBody(exchange));
+
+        String description = body.get("description");
+        if (description == null || description.isBlank())
+            throw new IllegalArgumentException("description is required");
+
+        Priority priority = Priority.valueOf(body.getOrDefault("priority", "LOW").toUpperCase());
+
+        LocalDateTime deadline = null;
+        String deadlineText = body.get("deadline");
+        if (deadlineText != null && !deadlineText.isBlank())
+        {
+            deadline = TaskCsvReader.parseDeadlineText(deadlineText.trim());
+            if (deadline == null)
+                throw new IllegalArgumentException("invalid deadline: " + deadlineText);
+        }
+
+        Task task = dataBase.add(new Task(description.trim(), priority, deadline));
+        dataBase.flushTasks();
+        sendTask(exchange, 201, task);
+    }
+
+    private void sort(HttpExchange exchange) throws IOException
+    {
+        Map<String, String> body = Json.parseObject(readBody(exchange));
+        SortBy sortBy = SortBy.valueOf(body.getOrDefault("by", "priority").toUpperCase());
+        SortOrder sortOrder = body.getOrDefault("order", "asc").toLowerCase().startsWith("desc")
+                ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+        dataBase.sortTasks(sortBy, sortOrder);
+        send(exchange, 204, null);
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException
+    {
+        try (InputStream in = exchange.getRequestBody())
+        {
+            byte[] body = in.readNBytes(MAX_BODY + 1);
+            if (body.length > MAX_BODY)
+                throw new IllegalArgumentException("Request body larger than " + MAX_BODY + " bytes");
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> query(URI uri)
+    {
+        Map<String, String> values = new HashMap<>();
+        String query = uri.getQuery();
+        if (query == null)
+            return values;
+        for (String pair : query.split("&"))
+        {
+            int equals = pair.indexOf('=');
+            if (equals > 0)
+                values.put(pair.substring(0, equals), pair.substring(equals + 1));
+        }
+        return values;
+    }
+
+    private static void sendTask(HttpExchange exchange, int status, Task task) throws IOException
+    {
+        if (task == null)
+        {
+            sendError(exchange, 404, "No such task");
+            return;
+        }
+        StringBuilder json = new StringBuilder(128);
+        Json.writeTask(json, task);
+        send(exchange, status, json.toString());
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+    {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.writeString(json, message == null ? "" : message);
+        send(exchange, status, json.append('}').toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException
+    {
+        if (json == null)
+        {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+}